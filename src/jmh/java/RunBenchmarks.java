@@ -0,0 +1,20 @@
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs the JMH benchmarks. Accepts the regular JMH command line options, e.g. a regex to select the benchmarks to run.
+ */
+public class RunBenchmarks {
+
+    public static void main(String[] args) throws Exception {
+        final var options = new OptionsBuilder()
+                .parent(new CommandLineOptions(args))
+                // Always report the allocation rate, so that allocation regressions show up next to the timings
+                .addProfiler(GCProfiler.class)
+                .build();
+
+        new Runner(options).run();
+    }
+}
@@ -0,0 +1,149 @@
+package nl.javadev.grpc.tracing.example;
+
+import io.grpc.ManagedChannel;
+import io.grpc.Server;
+import io.grpc.inprocess.InProcessChannelBuilder;
+import io.grpc.inprocess.InProcessServerBuilder;
+import io.grpc.stub.StreamObserver;
+import io.opencensus.trace.Span;
+import io.vavr.concurrent.Future;
+import io.vavr.control.Option;
+import nl.javadev.grpc.tracing.example.PriceServiceOuterClass.GetPricesForProductsRequest;
+import nl.javadev.grpc.tracing.example.PriceServiceOuterClass.GetPricesForProductsResponse;
+import nl.javadev.grpc.tracing.example.PriceServiceOuterClass.ProductPrice;
+import nl.javadev.grpc.tracing.example.ProductServiceGrpc.ProductServiceBlockingStub;
+import nl.javadev.grpc.tracing.example.ProductServiceOuterClass.GetProductsWithPriceAndStockDetailsRequest;
+import nl.javadev.grpc.tracing.example.ProductServiceOuterClass.GetProductsWithPriceAndStockDetailsResponse;
+import nl.javadev.grpc.tracing.example.StockLevelServiceOuterClass.GetCurrentStockLevelsForProductsRequest;
+import nl.javadev.grpc.tracing.example.StockLevelServiceOuterClass.GetCurrentStockLevelsForProductsResponse;
+import nl.javadev.grpc.tracing.example.StockLevelServiceOuterClass.ProductStockLevel;
+import nl.javadev.grpc.tracing.util.Channels;
+import nl.javadev.grpc.tracing.util.ServiceExecutors;
+import nl.javadev.grpc.tracing.util.TracePropagation;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+/**
+ * Measures retrieving and enriching N products end-to-end, through in-process channels.
+ * The Price and Stock level service and the database respond immediately,
+ * so that only the overhead of the product service (futures, batching, tracing and gRPC) is measured.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class EnrichmentBenchmark {
+
+    @Param({"1", "10", "100", "10000"})
+    public int nrOfProducts;
+
+    private ServiceExecutors executors;
+    private Server server;
+    private ManagedChannel channel;
+    private ProductServiceBlockingStub productServiceClient;
+    private GetProductsWithPriceAndStockDetailsRequest request;
+
+    @Setup
+    public void setUp() throws IOException {
+        final var serverName = InProcessServerBuilder.generateName();
+        executors = ServiceExecutors.fromSystemProperties("benchmark");
+        // Traced like the channels and servers of the services, so without the tracing module of gRPC
+        channel = Channels.configure(InProcessChannelBuilder.forName(serverName)).build();
+
+        final var config = ProductServiceConfig.builder()
+                // No caching and no hedging, every request goes through the whole pipeline
+                .priceCacheTtlMillis(0)
+                .stockLevelCacheTtlMillis(0)
+                .maxHedgeRatio(0)
+                // Send a batch as soon as the request has added its products
+                .batchWindowMillis(0)
+                .build();
+
+        // All services share one in-process server, the product service calls the others through the same channel
+        server = TracePropagation.install(InProcessServerBuilder.forName(serverName))
+                .addService(new InstantPriceService())
+                .addService(new InstantStockLevelService())
+                .addService(new ProductService("benchmark", channel, channel, config, executors, new InMemoryProductRepository(executors)))
+                .build()
+                .start();
+
+        productServiceClient = ProductServiceGrpc.newBlockingStub(channel);
+        request = GetProductsWithPriceAndStockDetailsRequest.newBuilder()
+                .addAllProductIds(IntStream.rangeClosed(1, nrOfProducts)
+                        .mapToObj(String::valueOf)
+                        .collect(Collectors.toList()))
+                .build();
+    }
+
+    @TearDown
+    public void tearDown() {
+        channel.shutdownNow();
+        server.shutdownNow();
+        executors.shutdown();
+    }
+
+    @Benchmark
+    public GetProductsWithPriceAndStockDetailsResponse getProducts() {
+        return productServiceClient.getProductsWithPriceAndStockDetails(request);
+    }
+
+    @Benchmark
+    public int streamProducts() {
+        final var products = productServiceClient.streamProductsWithPriceAndStockDetails(request);
+        var nrOfProductsReceived = 0;
+        while (products.hasNext()) {
+            products.next();
+            nrOfProductsReceived++;
+        }
+        return nrOfProductsReceived;
+    }
+
+    private static class InstantPriceService extends PriceServiceGrpc.PriceServiceImplBase {
+        @Override
+        public void getPricesForProducts(final GetPricesForProductsRequest request,
+                                         final StreamObserver<GetPricesForProductsResponse> responseObserver) {
+            final var response = GetPricesForProductsResponse.newBuilder();
+            request.getProductIdsList().forEach(productId -> response.addPrices(ProductPrice.newBuilder()
+                    .setProductId(productId)
+                    .setPrice(12.34)
+                    .setCouldBeDetermined(true)));
+            responseObserver.onNext(response.build());
+            responseObserver.onCompleted();
+        }
+    }
+
+    private static class InstantStockLevelService extends StockLevelServiceGrpc.StockLevelServiceImplBase {
+        @Override
+        public void getCurrentStockLevelsForProducts(final GetCurrentStockLevelsForProductsRequest request,
+                                                     final StreamObserver<GetCurrentStockLevelsForProductsResponse> responseObserver) {
+            final var response = GetCurrentStockLevelsForProductsResponse.newBuilder();
+            request.getProductIdsList().forEach(productId -> response.addStockLevels(ProductStockLevel.newBuilder()
+                    .setProductId(productId)
+                    .setStockLevel(42)
+                    .setCouldBeDetermined(true)));
+            responseObserver.onNext(response.build());
+            responseObserver.onCompleted();
+        }
+    }
+
+    private static class InMemoryProductRepository implements ProductRepository {
+
+        private final ServiceExecutors executors;
+
+        private InMemoryProductRepository(final ServiceExecutors executors) {
+            this.executors = executors;
+        }
+
+        @Override
+        public Future<Option<BasicProductData>> findById(final String productId, final Span span) {
+            return Future.successful(executors.getCpu(),
+                    Option.of(new BasicProductData(productId, String.format("Description for product %s", productId))));
+        }
+    }
+}
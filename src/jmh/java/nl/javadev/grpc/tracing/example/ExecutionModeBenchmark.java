@@ -0,0 +1,123 @@
+package nl.javadev.grpc.tracing.example;
+
+import io.grpc.ManagedChannel;
+import io.grpc.Server;
+import io.grpc.Status;
+import io.grpc.inprocess.InProcessChannelBuilder;
+import io.grpc.inprocess.InProcessServerBuilder;
+import io.grpc.stub.StreamObserver;
+import nl.javadev.grpc.tracing.example.StockLevelServiceGrpc.StockLevelServiceStub;
+import nl.javadev.grpc.tracing.example.StockLevelServiceOuterClass.GetCurrentStockLevelForProductRequest;
+import nl.javadev.grpc.tracing.example.StockLevelServiceOuterClass.GetCurrentStockLevelForProductResponse;
+import nl.javadev.grpc.tracing.util.ExecutionMode;
+import nl.javadev.grpc.tracing.util.VirtualThreads;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Measures how long it takes to handle N concurrent calls of the (blocking) Stock level service,
+ * when every call is handled on a pool of platform threads or on its own virtual thread, see {@link ExecutionMode}.
+ * <p>
+ * Every call sleeps 20 - 320 ms, like the simulated warehouse management system, and hardly uses the CPU.
+ * So with platform threads the calls queue up for the threads of the pool, while with virtual threads they all sleep at the same time.
+ * The virtual mode requires Java 21 or newer, on older versions its setup fails (instead of silently falling back to platform threads).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(1)
+public class ExecutionModeBenchmark {
+
+    @Param({"PLATFORM", "VIRTUAL"})
+    public ExecutionMode executionMode;
+
+    @Param({"10000"})
+    public int concurrentCalls;
+
+    /**
+     * The size of the pool of platform threads, like the pool of a typical servlet container
+     */
+    @Param({"200"})
+    public int platformThreads;
+
+    private ExecutorService handlerExecutor;
+    private Server server;
+    private ManagedChannel channel;
+    private StockLevelServiceStub stockLevelServiceClient;
+
+    @Setup
+    public void setUp() throws IOException {
+        if (executionMode == ExecutionMode.VIRTUAL && !VirtualThreads.isSupported()) {
+            throw new IllegalStateException(String.format("Virtual threads are not supported by Java %s, run this benchmark on Java 21+",
+                    System.getProperty("java.version")));
+        }
+        handlerExecutor = executionMode == ExecutionMode.VIRTUAL
+                ? VirtualThreads.newVirtualThreadPerTaskExecutor("benchmark-handler")
+                : Executors.newFixedThreadPool(platformThreads);
+
+        final var serverName = InProcessServerBuilder.generateName();
+        server = InProcessServerBuilder.forName(serverName)
+                .executor(handlerExecutor)
+                .addService(new StockLevelService())
+                .build()
+                .start();
+        // The responses are handled right away by the thread that completes the call, so only the server threads are measured
+        channel = InProcessChannelBuilder.forName(serverName)
+                .directExecutor()
+                .build();
+        stockLevelServiceClient = StockLevelServiceGrpc.newStub(channel);
+    }
+
+    @TearDown
+    public void tearDown() {
+        channel.shutdownNow();
+        server.shutdownNow();
+        handlerExecutor.shutdownNow();
+    }
+
+    /**
+     * Starts all calls at once and waits until every one of them has been answered
+     *
+     * @return the number of calls that failed, which should be 0
+     */
+    @Benchmark
+    public int handleConcurrentCalls() throws InterruptedException {
+        final var allAnswered = new CountDownLatch(concurrentCalls);
+        final var failures = new AtomicInteger();
+        final var request = GetCurrentStockLevelForProductRequest.newBuilder()
+                .setProductId("1")
+                .build();
+
+        for (int i = 0; i < concurrentCalls; i++) {
+            stockLevelServiceClient.getCurrentStockLevelForProduct(request, new StreamObserver<>() {
+                @Override
+                public void onNext(final GetCurrentStockLevelForProductResponse response) {
+                }
+
+                @Override
+                public void onError(final Throwable t) {
+                    failures.incrementAndGet();
+                    allAnswered.countDown();
+                }
+
+                @Override
+                public void onCompleted() {
+                    allAnswered.countDown();
+                }
+            });
+        }
+
+        if (!allAnswered.await(5, TimeUnit.MINUTES)) {
+            throw Status.DEADLINE_EXCEEDED.withDescription("Not all calls were answered within 5 minutes").asRuntimeException();
+        }
+        return failures.get();
+    }
+}
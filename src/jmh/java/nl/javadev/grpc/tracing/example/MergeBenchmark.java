@@ -0,0 +1,53 @@
+package nl.javadev.grpc.tracing.example;
+
+import nl.javadev.grpc.tracing.example.PriceServiceOuterClass.ProductPrice;
+import nl.javadev.grpc.tracing.example.ProductServiceOuterClass.ProductWithDetails;
+import nl.javadev.grpc.tracing.example.StockLevelServiceOuterClass.ProductStockLevel;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures building a product with its price and stock details, as done for every enriched product
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MergeBenchmark {
+
+    private BasicProductData product;
+    private ProductPrice price;
+    private ProductStockLevel stockLevel;
+    private ProductStockLevel undeterminedStockLevel;
+
+    @Setup
+    public void setUp() {
+        product = new BasicProductData("1", "Description for product 1");
+        price = ProductPrice.newBuilder()
+                .setProductId("1")
+                .setPrice(12.34)
+                .setCouldBeDetermined(true)
+                .build();
+        stockLevel = ProductStockLevel.newBuilder()
+                .setProductId("1")
+                .setStockLevel(42)
+                .setCouldBeDetermined(true)
+                .build();
+        undeterminedStockLevel = ProductStockLevel.newBuilder()
+                .setProductId("1")
+                .build();
+    }
+
+    @Benchmark
+    public ProductWithDetails complete() {
+        return ProductService.productWithPriceAndStockDetails(product, price, stockLevel);
+    }
+
+    @Benchmark
+    public ProductWithDetails partial() {
+        return ProductService.productWithPriceAndStockDetails(product, price, undeterminedStockLevel);
+    }
+}
@@ -0,0 +1,134 @@
+package nl.javadev.grpc.tracing.util;
+
+import io.grpc.Metadata;
+import io.opencensus.trace.Sampler;
+import io.opencensus.trace.Span;
+import io.opencensus.trace.SpanContext;
+import io.opencensus.trace.Tracing;
+import io.opencensus.trace.propagation.SpanContextParseException;
+import io.opencensus.trace.samplers.Samplers;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures what creating and propagating spans costs, for each of the samplers
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TracingBenchmark {
+
+    @Param({"always", "probabilistic", "never"})
+    public String sampler;
+
+    private Span parentSpan;
+    private Metadata.Key<SpanContext> censusTracingHeader;
+
+    @Setup
+    public void setUp() {
+        final var traceConfig = Tracing.getTraceConfig();
+        traceConfig.updateActiveTraceParams(traceConfig.getActiveTraceParams().toBuilder()
+                .setSampler(createSampler(sampler))
+                .build());
+
+        parentSpan = Tracing.getTracer().spanBuilderWithExplicitParent("benchmark", null).startSpan();
+        censusTracingHeader = createCensusTracingHeader();
+    }
+
+    @TearDown
+    public void tearDown() {
+        parentSpan.end();
+    }
+
+    /**
+     * The header in the way that the tracing module of gRPC creates it:
+     * the span context is encoded when it is put in the headers, and parsed on every get
+     */
+    private static Metadata.Key<SpanContext> createCensusTracingHeader() {
+        final var binaryFormat = Tracing.getPropagationComponent().getBinaryFormat();
+        return Metadata.Key.of("grpc-trace-bin", new Metadata.BinaryMarshaller<>() {
+            @Override
+            public byte[] toBytes(final SpanContext spanContext) {
+                return binaryFormat.toByteArray(spanContext);
+            }
+
+            @Override
+            public SpanContext parseBytes(final byte[] serialized) {
+                try {
+                    return binaryFormat.fromByteArray(serialized);
+                } catch (SpanContextParseException e) {
+                    return SpanContext.INVALID;
+                }
+            }
+        });
+    }
+
+    private static Sampler createSampler(final String name) {
+        switch (name) {
+            case "always":
+                return Samplers.alwaysSample();
+            case "probabilistic":
+                return Samplers.probabilitySampler(0.1);
+            case "never":
+                return Samplers.neverSample();
+            default:
+                throw new IllegalArgumentException(String.format("Unknown sampler: %s", name));
+        }
+    }
+
+    /**
+     * A new trace with one child span, the sampling decision is made for every trace
+     */
+    @Benchmark
+    public Span startTraceWithChildSpan() {
+        final var rootSpan = Tracing.getTracer().spanBuilderWithExplicitParent("root", null).startSpan();
+        final var childSpan = TracingUtil.createNewChildSpan("child", rootSpan);
+        childSpan.end();
+        rootSpan.end();
+        return childSpan;
+    }
+
+    @Benchmark
+    public Span callInNewChildSpan() throws Exception {
+        return TracingUtil.wrapInNewChildSpan(parentSpan, "child", () -> parentSpan).call();
+    }
+
+    /**
+     * What the tracing module of gRPC does for every call: adding the span context to the headers and reading it back
+     */
+    @Benchmark
+    public SpanContext propagateWithCensusTracingModule() {
+        final var headers = new Metadata();
+        headers.discardAll(censusTracingHeader);
+        headers.put(censusTracingHeader, parentSpan.getContext());
+        return headers.get(censusTracingHeader);
+    }
+
+    /**
+     * What the {@link TracePropagationClientInterceptor} and {@link TracePropagationServerInterceptor} do for every call
+     */
+    @Benchmark
+    public SpanContext propagateBinary() {
+        return propagate(TracePropagation.Format.BINARY);
+    }
+
+    @Benchmark
+    public SpanContext propagateTraceparent() {
+        return propagate(TracePropagation.Format.TRACEPARENT);
+    }
+
+    @Benchmark
+    public SpanContext propagateBoth() {
+        return propagate(TracePropagation.Format.BOTH);
+    }
+
+    private SpanContext propagate(final TracePropagation.Format format) {
+        final var headers = new Metadata();
+        TracePropagation.inject(parentSpan.getContext(), headers, format);
+        return TracePropagation.extract(headers, format);
+    }
+}
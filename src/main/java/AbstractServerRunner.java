@@ -1,13 +1,50 @@
+import io.grpc.ManagedChannel;
 import io.grpc.Server;
 import io.grpc.ServerBuilder;
 import io.grpc.ServerServiceDefinition;
 import io.grpc.ServiceDescriptor;
-import io.opencensus.exporter.trace.stackdriver.StackdriverTraceConfiguration;
-import io.opencensus.exporter.trace.stackdriver.StackdriverTraceExporter;
+import io.grpc.netty.shaded.io.grpc.netty.NettyServerBuilder;
+import io.grpc.netty.shaded.io.netty.channel.nio.NioEventLoopGroup;
+import io.grpc.netty.shaded.io.netty.channel.socket.nio.NioServerSocketChannel;
+import io.grpc.netty.shaded.io.netty.util.concurrent.DefaultThreadFactory;
+import nl.javadev.grpc.tracing.util.ChannelConfig;
+import nl.javadev.grpc.tracing.util.Channels;
+import nl.javadev.grpc.tracing.util.ConcurrencyLimitConfig;
+import nl.javadev.grpc.tracing.util.ConcurrencyLimitServerInterceptor;
+import nl.javadev.grpc.tracing.util.ConfigFile;
+import nl.javadev.grpc.tracing.util.ExecutionMode;
+import nl.javadev.grpc.tracing.util.ForcedSamplingServerInterceptor;
+import nl.javadev.grpc.tracing.util.GrpcViews;
+import nl.javadev.grpc.tracing.util.HealthGrpc;
+import nl.javadev.grpc.tracing.util.InFlightCalls;
+import nl.javadev.grpc.tracing.util.PrometheusMetricsServer;
+import nl.javadev.grpc.tracing.util.Sampling;
+import nl.javadev.grpc.tracing.util.ServerConfig;
+import nl.javadev.grpc.tracing.util.ServiceHealth;
+import nl.javadev.grpc.tracing.util.SpanExporters;
+import nl.javadev.grpc.tracing.util.TracePropagation;
+import nl.javadev.grpc.tracing.util.VirtualThreads;
 
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.stream.Collectors;
 
 class AbstractServerRunner {
+    // All options can also be read from a properties file, with -Dconfig=services.properties (or the environment variable CONFIG_FILE).
+    // Loaded before the runner of a service reads any of its options
+    static {
+        final var configFile = ConfigFile.loadIntoSystemProperties();
+        if (configFile != null) {
+            System.out.println(String.format("Read the configuration from: %s", configFile.toAbsolutePath()));
+        }
+    }
+
     // Start all servers locally,
     final static String HOST = "localhost";
 
@@ -17,31 +54,176 @@ class AbstractServerRunner {
     final static int PRICE_SERVICE_PORT = 10_003;
     final static int STOCKLEVEL_SERVICE_PORT = 10_004;
 
-    static void runServer(final ServerBuilder serverBuilder) throws Exception {
-        // Start an exporter for every server instance
-        StackdriverTraceExporter.createAndRegister(StackdriverTraceConfiguration.builder().build());
+    // The metrics of a service are served on the port of the service + 1000, e.g. http://localhost:11001/metrics
+    final static int METRICS_PORT_OFFSET = 1_000;
 
-        final Server server = serverBuilder.build();
+    // The channels to the downstream services, which are closed after the server has drained
+    private final static Map<ManagedChannel, ChannelConfig> channels = new LinkedHashMap<>();
 
-        // Stop the server when the JVM exits
-        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
-            server.shutdown();
-            System.out.println(String.format("Stopped server on port: %s for service: %s",
-                    server.getPort(), getServiceNamesFromServer(server)));
-        }));
+    // What else is stopped after the channels have been closed, e.g. the executors and event loops
+    private final static List<Runnable> stopActions = new ArrayList<>();
+
+    /**
+     * The port a service listens on, which can be changed with e.g. -DpriceService.port=10013
+     * to start another instance of the same service
+     */
+    static int port(final String serviceName, final int defaultPort) {
+        return Integer.getInteger(String.format("%s.port", serviceName), defaultPort);
+    }
+
+    /**
+     * Creates a channel from a service to the instances of a downstream service.
+     * By default there is a single instance, more can be configured with e.g.
+     * -DproductService.priceServiceAddresses=localhost:10003,localhost:10013.
+     * The connections of the channel are configured by the calling service, see {@link ChannelConfig#fromSystemProperties(String)}
+     */
+    static ManagedChannel channel(final String serviceName, final String downstreamServiceName, final int downstreamServicePort) {
+        final var addresses = System.getProperty(String.format("%s.%sAddresses", serviceName, downstreamServiceName),
+                String.format("%s:%s", HOST, downstreamServicePort));
+        final var config = ChannelConfig.fromSystemProperties(serviceName);
+        final var channel = Channels.forAddresses(addresses, config);
+        channels.put(channel, config);
+        return channel;
+    }
+
+    /**
+     * Runs the action when the server has drained and its channels have been closed
+     */
+    static void afterStop(final Runnable action) {
+        stopActions.add(action);
+    }
+
+    /**
+     * Creates the builder of the server of a service, listening on its port (see {@link #port}),
+     * with the Netty event loops and the executor that handles the calls configured by {@link ServerConfig#fromSystemProperties}
+     */
+    static NettyServerBuilder serverBuilder(final String serviceName, final int defaultPort) {
+        final var config = ServerConfig.fromSystemProperties(serviceName);
+        final var port = port(serviceName, defaultPort);
+        final var serverBuilder = config.getHost().isBlank()
+                ? NettyServerBuilder.forPort(port)
+                : NettyServerBuilder.forAddress(new InetSocketAddress(config.getHost(), port));
+
+        // One boss thread accepts the connections, the worker threads read and write them (0 threads is the Netty default)
+        final var bossGroup = new NioEventLoopGroup(config.getBossThreads(), new DefaultThreadFactory(serviceName + "-boss", true));
+        final var workerGroup = new NioEventLoopGroup(config.getWorkerThreads(), new DefaultThreadFactory(serviceName + "-worker", true));
+        serverBuilder.channelType(NioServerSocketChannel.class)
+                .bossEventLoopGroup(bossGroup)
+                .workerEventLoopGroup(workerGroup);
+        afterStop(() -> {
+            bossGroup.shutdownGracefully(0, 5, TimeUnit.SECONDS);
+            workerGroup.shutdownGracefully(0, 5, TimeUnit.SECONDS);
+        });
+
+        // With -DexecutionMode=virtual every call is handled on its own virtual thread,
+        // so handlers that block (like the Stock level service) no longer tie up a platform thread
+        if (ExecutionMode.fromSystemProperties() == ExecutionMode.VIRTUAL) {
+            serverBuilder.executor(VirtualThreads.newVirtualThreadPerTaskExecutor(serviceName + "-handler"));
+        } else if (config.isDirectExecutor()) {
+            serverBuilder.directExecutor();
+        } else if (config.getExecutorThreads() > 0) {
+            final var threadNumber = new AtomicInteger();
+            final var executor = Executors.newFixedThreadPool(config.getExecutorThreads(), runnable -> {
+                final var thread = new Thread(runnable, String.format("%s-handler-%s", serviceName, threadNumber.incrementAndGet()));
+                thread.setDaemon(true);
+                return thread;
+            });
+            serverBuilder.executor(executor);
+            afterStop(executor::shutdown);
+        }
+        return serverBuilder;
+    }
 
+    static void runServer(final ServerBuilder serverBuilder, final String serviceName) throws Exception {
+        final var config = ServerConfig.fromSystemProperties(serviceName);
+
+        // Start an exporter for every server instance.
+        // By default to Stackdriver, see SpanExporters for the other options (e.g. -Dtracing.exporter=file)
+        // The exporter is closed when the server has stopped, which exports the spans that are still queued
+        final var spanExporter = SpanExporters.registerFromSystemProperties(serviceName, SpanExporters.Type.STACKDRIVER);
+
+        // Which traces are sampled can be configured with -Dtracing.sampler=..., see Sampling.
+        // A call with the x-force-sampling header is always sampled
+        Sampling.installFromSystemProperties();
+        serverBuilder.intercept(new ForcedSamplingServerInterceptor());
+
+        // The latencies, sizes and status codes of the calls are recorded by gRPC, per method (see GrpcViews).
+        // The calls that are in flight are counted by an interceptor
+        GrpcViews.registerAll();
+        serverBuilder.intercept(InFlightCalls.serverInterceptor());
+
+        // The calls that do not fit within the adaptive concurrency limit of the server are shed,
+        // which can be tuned with -D[serviceName].concurrencyLimit.algorithm=aimd|gradient etc., see ConcurrencyLimitConfig
+        final var concurrencyLimitConfig = ConcurrencyLimitConfig.fromSystemProperties(serviceName);
+        if (concurrencyLimitConfig.isEnabled()) {
+            serverBuilder.intercept(new ConcurrencyLimitServerInterceptor(serviceName, concurrencyLimitConfig));
+        }
+
+        // The clients keep their connections alive with pings, which can be tuned with -D[serviceName].permitKeepAliveTimeMillis=...
+        Channels.permitKeepAlive(serverBuilder, config.getPermitKeepAliveTimeMillis());
+
+        // The health of the services, with the standard gRPC health checking protocol
+        final var health = new ServiceHealth();
+        serverBuilder.addService(health);
+
+        // The span context of the caller is read from the grpc-trace-bin and/or traceparent header,
+        // which one can be configured with -Dtracing.propagation=binary|traceparent|both, see TracePropagation.
+        // Added last, so it is the first interceptor that handles a call
+        TracePropagation.install(serverBuilder);
+
+        final Server server = serverBuilder.build();
         server.start();
+        final var port = server.getPort();
+        health.ready(getServiceNamesFromServer(server));
         System.out.println(String.format("Started server on port: %s for service: %s",
-                server.getPort(), getServiceNamesFromServer(server)));
+                port, String.join(", ", getServiceNamesFromServer(server))));
+
+        // The port can be changed with e.g. -DproductService.metricsPort=...
+        // The health is served there as well, at /health/live and /health/ready
+        final var metricsServer = PrometheusMetricsServer.start(
+                Integer.getInteger(String.format("%s.metricsPort", serviceName), port + METRICS_PORT_OFFSET))
+                .serveHealth(health);
+        System.out.println(String.format("Serving metrics on: http://%s:%s/metrics", HOST, metricsServer.getPort()));
+
+        // Drain the server when the JVM is stopped (e.g. with Ctrl-C or SIGTERM)
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            drain(server, health, config);
+            channels.forEach((channel, channelConfig) -> Channels.shutdown(channel, channelConfig.getShutdownTimeoutMillis()));
+            stopActions.forEach(Runnable::run);
+            spanExporter.close();
+            metricsServer.close();
+            System.out.println(String.format("Stopped server on port: %s", port));
+        }, serviceName + "-shutdown"));
 
-        System.out.println("Press [ENTER] to stop this server");
-        System.in.read();
+        System.out.println("Press Ctrl-C to stop this server");
+        server.awaitTermination();
+    }
+
+    /**
+     * Reports the server as not ready, so the load balancers stop sending it calls, then stops accepting calls
+     * and waits for the calls that are still running, up to the drain timeout. The calls that are left after that are cancelled
+     */
+    private static void drain(final Server server, final ServiceHealth health, final ServerConfig config) {
+        health.drain();
+        try {
+            Thread.sleep(config.getDrainDelayMillis());
+            server.shutdown();
+            if (!server.awaitTermination(config.getDrainTimeoutMillis(), TimeUnit.MILLISECONDS)) {
+                System.out.println(String.format("Cancelling the calls that did not complete within %s ms", config.getDrainTimeoutMillis()));
+                server.shutdownNow();
+            }
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            server.shutdownNow();
+        }
     }
 
-    private static String getServiceNamesFromServer(Server server) {
+    private static List<String> getServiceNamesFromServer(Server server) {
         return server.getImmutableServices().stream()
                 .map(ServerServiceDefinition::getServiceDescriptor)
                 .map(ServiceDescriptor::getName)
-                .collect(Collectors.joining());
+                // The health service is added to every server
+                .filter(serviceName -> !serviceName.equals(HealthGrpc.SERVICE_NAME))
+                .collect(Collectors.toList());
     }
 }
@@ -0,0 +1,24 @@
+import nl.javadev.grpc.tracing.example.GatewayService;
+import nl.javadev.grpc.tracing.load.LocalCluster;
+
+/**
+ * Runs all four services in this JVM, for a colocated deployment with the lowest latency.
+ * The Product, Price and Stock level service are connected through in-process channels,
+ * only the Gateway service listens on a port (like {@link RunGatewayServiceServer}).
+ * The services are configured with the same options as when they are started separately.
+ */
+public class RunAllServices extends AbstractServerRunner {
+
+    public static void main(String[] args) throws Exception {
+        // The spans of all services are exported by the exporter of the Gateway service
+        final var cluster = LocalCluster.startWithoutGateway();
+        // Stopped once the Gateway service has drained, so the calls it is still handling can complete
+        afterStop(cluster::close);
+
+        runServer(
+                serverBuilder("gatewayService", GATEWAY_SERVICE_PORT)
+                        .addService(GatewayService.create(cluster.getProductServiceChannel(), GatewayService.passThroughFromSystemProperties())),
+                "gatewayService"
+        );
+    }
+}
@@ -1,10 +1,10 @@
-import io.grpc.ManagedChannelBuilder;
-import io.opencensus.exporter.trace.stackdriver.StackdriverTraceConfiguration;
-import io.opencensus.exporter.trace.stackdriver.StackdriverTraceExporter;
-import io.opencensus.trace.Span;
+import io.opencensus.common.Scope;
 import nl.javadev.grpc.tracing.example.GatewayServiceGrpc;
 import nl.javadev.grpc.tracing.example.GatewayServiceGrpc.GatewayServiceBlockingStub;
 import nl.javadev.grpc.tracing.example.GatewayServiceOuterClass.GetProductsRequest;
+import nl.javadev.grpc.tracing.util.Channels;
+import nl.javadev.grpc.tracing.util.Sampling;
+import nl.javadev.grpc.tracing.util.SpanExporters;
 import nl.javadev.grpc.tracing.util.TracingUtil;
 
 import java.util.UUID;
@@ -13,25 +13,23 @@ import java.util.stream.IntStream;
 class RunClient {
 
     public static void main(String[] args) throws Exception {
-        StackdriverTraceExporter.createAndRegister(StackdriverTraceConfiguration.builder().build());
+        final var spanExporter = SpanExporters.registerFromSystemProperties("client", SpanExporters.Type.STACKDRIVER);
+        Sampling.installFromSystemProperties();
 
-        final var channel = ManagedChannelBuilder
-                .forAddress(AbstractServerRunner.HOST, AbstractServerRunner.GATEWAY_SERVICE_PORT)
-                .usePlaintext().build();
+        final var channel = Channels.forAddress(AbstractServerRunner.HOST, AbstractServerRunner.GATEWAY_SERVICE_PORT);
 
         final var gatewayServiceClient = GatewayServiceGrpc.newBlockingStub(channel);
 
         // Make two calls, the first call takes a bit more time which may be confusing in the trace graph
         IntStream.rangeClosed(1, 2).forEach(i -> {
-            final var parentSpan = startSamplingSpan();
-
-            requestProducts(gatewayServiceClient);
-
-            parentSpan.end();
+            // The span is the active span while the products are requested, and ended afterwards
+            try (Scope ignored = startSamplingSpan()) {
+                requestProducts(gatewayServiceClient);
+            }
         });
 
-        System.out.println("\nWaiting 10 seconds to give the Stackdriver trace exporter a chance to upload the tracing information");
-        Thread.sleep(10_000);
+        // Uploads the tracing information that is still queued
+        spanExporter.close();
     }
 
     private static void requestProducts(final GatewayServiceBlockingStub gatewayServiceClient) {
@@ -48,9 +46,8 @@ class RunClient {
         System.out.println(String.format("\nReceived products:%n%s", response.getProductsList()));
     }
 
-    private static Span startSamplingSpan() {
+    private static Scope startSamplingSpan() {
         final var spanName = String.format("tracing-demo-%s", UUID.randomUUID());
-        final var makeSpanActive = true;
-        return TracingUtil.startNewParentSamplingSpan(spanName, makeSpanActive);
+        return TracingUtil.startScopedParentSamplingSpan(spanName);
     }
 }
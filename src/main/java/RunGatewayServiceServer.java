@@ -1,12 +1,14 @@
-import io.grpc.ServerBuilder;
 import nl.javadev.grpc.tracing.example.GatewayService;
 
 public class RunGatewayServiceServer extends AbstractServerRunner {
 
     public static void main(String[] args) throws Exception {
         runServer(
-                ServerBuilder.forPort(GATEWAY_SERVICE_PORT)
-                        .addService(new GatewayService(HOST, PRODUCT_SERVICE_PORT))
+                serverBuilder("gatewayService", GATEWAY_SERVICE_PORT)
+                        // Passing through the getProducts messages can be switched off with -DgatewayService.passThrough=false
+                        .addService(GatewayService.create(channel("gatewayService", "productService", PRODUCT_SERVICE_PORT),
+                                GatewayService.passThroughFromSystemProperties())),
+                "gatewayService"
         );
     }
 }
@@ -0,0 +1,74 @@
+import nl.javadev.grpc.tracing.load.LoadGenerator;
+import nl.javadev.grpc.tracing.load.LoadGeneratorConfig;
+import nl.javadev.grpc.tracing.load.LoadGeneratorConfig.Distribution;
+import nl.javadev.grpc.tracing.load.LoadGeneratorConfig.Target;
+import nl.javadev.grpc.tracing.load.LocalCluster;
+import nl.javadev.grpc.tracing.load.ServerStatsInterceptor;
+import nl.javadev.grpc.tracing.util.Channels;
+import nl.javadev.grpc.tracing.util.LocalSpanExporterHandler;
+import nl.javadev.grpc.tracing.util.Sampling;
+import nl.javadev.grpc.tracing.util.SpanExporters;
+
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Generates load on the services and reports the latencies, throughput and error rates.
+ * By default all services are started in this JVM, so no other processes are needed.
+ */
+class RunLoadGenerator {
+
+    public static void main(String[] args) throws Exception {
+        // The spans are only counted by default, so the load generator also runs offline.
+        // Use e.g. -Dtracing.exporter=stackdriver or -Dtracing.exporter=file to export them
+        final var spanExporter = SpanExporters.registerFromSystemProperties("loadGenerator", SpanExporters.Type.LOCAL);
+        // Sampling every request is expensive at high load, use e.g. -Dtracing.sampler=adaptive -Dtracing.tracesPerSecond=10
+        Sampling.installFromSystemProperties();
+
+        // The load can be configured with: -Dload.target=inProcess|localhost|remote, -Dload.concurrency=...,
+        // -Dload.requestsPerSecond=... (0 for closed-loop), -Dload.durationSeconds=..., -Dload.warmUpSeconds=...,
+        // -Dload.batchSize=..., -Dload.nrOfProducts=..., -Dload.distribution=uniform|zipf, -Dload.zipfExponent=...
+        // and -Dload.downstreamInstances=... (with -Dload.target=localhost)
+        final var defaults = LoadGeneratorConfig.defaults();
+        final var config = LoadGeneratorConfig.builder()
+                .target(Target.valueOf(toEnumName(System.getProperty("load.target", defaults.getTarget().name()))))
+                .concurrency(Integer.getInteger("load.concurrency", defaults.getConcurrency()))
+                .requestsPerSecond(Double.parseDouble(System.getProperty("load.requestsPerSecond",
+                        String.valueOf(defaults.getRequestsPerSecond()))))
+                .durationSeconds(Long.getLong("load.durationSeconds", defaults.getDurationSeconds()))
+                .warmUpSeconds(Long.getLong("load.warmUpSeconds", defaults.getWarmUpSeconds()))
+                .batchSize(Integer.getInteger("load.batchSize", defaults.getBatchSize()))
+                .nrOfProducts(Integer.getInteger("load.nrOfProducts", defaults.getNrOfProducts()))
+                .distribution(Distribution.valueOf(toEnumName(System.getProperty("load.distribution", defaults.getDistribution().name()))))
+                .zipfExponent(Double.parseDouble(System.getProperty("load.zipfExponent", String.valueOf(defaults.getZipfExponent()))))
+                .downstreamInstances(Integer.getInteger("load.downstreamInstances", defaults.getDownstreamInstances()))
+                .build();
+        System.out.println(String.format("Generating load: %s", config));
+
+        final var loadGenerator = new LoadGenerator(config);
+        final var serverStats = new ServerStatsInterceptor(loadGenerator::isRecording);
+
+        if (config.getTarget() == Target.REMOTE) {
+            final var channel = Channels.forAddress(AbstractServerRunner.HOST, AbstractServerRunner.GATEWAY_SERVICE_PORT);
+            // The latencies of the separately running services are not known here
+            loadGenerator.run(channel).print(System.out, List.of());
+            channel.shutdownNow();
+        } else {
+            try (LocalCluster cluster = LocalCluster.start(config.getTarget(), config.getDownstreamInstances(), serverStats)) {
+                loadGenerator.run(cluster.getGatewayServiceChannel()).print(System.out, serverStats.getStats());
+            }
+        }
+
+        // Exports the spans that are still queued
+        spanExporter.close();
+        if (spanExporter.getHandler() instanceof LocalSpanExporterHandler) {
+            System.out.println(String.format("%nExported spans: %s", ((LocalSpanExporterHandler) spanExporter.getHandler()).getExportedSpansByName()));
+        }
+        System.exit(0);
+    }
+
+    // E.g. inProcess -> IN_PROCESS
+    private static String toEnumName(final String value) {
+        return value.replaceAll("([a-z])([A-Z])", "$1_$2").toUpperCase(Locale.ROOT);
+    }
+}
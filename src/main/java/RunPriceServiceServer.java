@@ -1,12 +1,17 @@
-import io.grpc.ServerBuilder;
 import nl.javadev.grpc.tracing.example.PriceService;
+import nl.javadev.grpc.tracing.util.ServiceExecutors;
 
 public class RunPriceServiceServer extends AbstractServerRunner {
 
     public static void main(String[] args) throws Exception {
+        // The executors can be tuned with: -DpriceService.blockingThreads=..., -DpriceService.cpuThreads=... etc.
+        final var executors = ServiceExecutors.fromSystemProperties("priceService");
+        afterStop(executors::shutdown);
+
         runServer(
-                ServerBuilder.forPort(PRICE_SERVICE_PORT)
-                        .addService(new PriceService())
+                serverBuilder("priceService", PRICE_SERVICE_PORT)
+                        .addService(new PriceService(executors)),
+                "priceService"
         );
     }
 }
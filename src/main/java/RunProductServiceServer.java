@@ -1,12 +1,35 @@
-import io.grpc.ServerBuilder;
+import nl.javadev.grpc.tracing.example.CachingProductRepository;
 import nl.javadev.grpc.tracing.example.ProductService;
+import nl.javadev.grpc.tracing.example.ProductServiceConfig;
+import nl.javadev.grpc.tracing.util.ServiceExecutors;
+
+import java.util.List;
 
 public class RunProductServiceServer extends AbstractServerRunner {
 
     public static void main(String[] args) throws Exception {
+        // The batching, streaming, caching, hedging and circuit breakers can be tuned with -DproductService.*,
+        // see ProductServiceConfig.fromSystemProperties
+        final var config = ProductServiceConfig.fromSystemProperties();
+
+        // The executors can be tuned with: -DproductService.blockingThreads=..., -DproductService.cpuThreads=... etc.
+        final var executors = ServiceExecutors.fromSystemProperties("productService");
+        afterStop(executors::shutdown);
+
+        // The product cache can be warmed up with the hot products: -DproductService.warmUpProductIds=1,2,3
+        final var productRepository = ProductService.createProductRepository("productService", config, executors);
+        final var warmUpProductIds = System.getProperty("productService.warmUpProductIds", "");
+        if (productRepository instanceof CachingProductRepository && !warmUpProductIds.isBlank()) {
+            ((CachingProductRepository) productRepository).warmUp(List.of(warmUpProductIds.split(","))).await();
+        }
+
         runServer(
-                ServerBuilder.forPort(PRODUCT_SERVICE_PORT)
-                        .addService(new ProductService(HOST, PRICE_SERVICE_PORT, HOST, STOCKLEVEL_SERVICE_PORT))
+                serverBuilder("productService", PRODUCT_SERVICE_PORT)
+                        .addService(new ProductService("productService",
+                                channel("productService", "priceService", PRICE_SERVICE_PORT),
+                                channel("productService", "stockLevelService", STOCKLEVEL_SERVICE_PORT),
+                                config, executors, productRepository)),
+                "productService"
         );
     }
 }
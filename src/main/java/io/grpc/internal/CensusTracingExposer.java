@@ -0,0 +1,17 @@
+package io.grpc.internal;
+
+/**
+ * This class exposes switching off the tracing module that is built into gRPC for every channel and server builder.
+ * gRPC only offers this for the Netty builders (e.g. <code>InternalNettyChannelBuilder.setTracingEnabled</code>),
+ * not for the in-process builders, which would then still start a span of their own for every call.
+ */
+public class CensusTracingExposer {
+
+    public static void disableTracing(final AbstractManagedChannelImplBuilder<?> channelBuilder) {
+        channelBuilder.setTracingEnabled(false);
+    }
+
+    public static void disableTracing(final AbstractServerImplBuilder<?> serverBuilder) {
+        serverBuilder.setTracingEnabled(false);
+    }
+}
@@ -0,0 +1,33 @@
+package io.opencensus.exporter.trace.stackdriver;
+
+import com.google.auth.oauth2.GoogleCredentials;
+import com.google.cloud.ServiceOptions;
+import com.google.cloud.trace.v2.TraceServiceClient;
+import io.opencensus.trace.export.SpanExporter;
+
+import java.io.IOException;
+
+/**
+ * This class exposes the Stackdriver span exporter handler,
+ * so it can be put behind another handler instead of being registered directly by {@link StackdriverTraceExporter}.
+ */
+public class StackdriverExporterHandlerExposer {
+
+    /**
+     * Creates the handler in the same way as {@link StackdriverTraceExporter#createAndRegister} does, without registering it
+     */
+    public static SpanExporter.Handler createHandler(final StackdriverTraceConfiguration configuration) throws IOException {
+        final var projectId = configuration.getProjectId() != null
+                ? configuration.getProjectId()
+                : ServiceOptions.getDefaultProjectId();
+
+        if (configuration.getTraceServiceStub() != null) {
+            return new StackdriverV2ExporterHandler(projectId, TraceServiceClient.create(configuration.getTraceServiceStub()));
+        }
+
+        final var credentials = configuration.getCredentials() != null
+                ? configuration.getCredentials()
+                : GoogleCredentials.getApplicationDefault();
+        return StackdriverV2ExporterHandler.createWithCredentials(credentials, projectId);
+    }
+}
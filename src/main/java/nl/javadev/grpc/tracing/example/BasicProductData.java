@@ -0,0 +1,12 @@
+package nl.javadev.grpc.tracing.example;
+
+import lombok.Value;
+
+/**
+ * The basic data of a product, as stored in the database
+ */
+@Value
+public class BasicProductData {
+    private String id;
+    private String description;
+}
@@ -0,0 +1,172 @@
+package nl.javadev.grpc.tracing.example;
+
+import io.grpc.Context;
+import io.opencensus.trace.AttributeValue;
+import io.opencensus.trace.Span;
+import io.vavr.collection.List;
+import io.vavr.concurrent.Future;
+import io.vavr.concurrent.Promise;
+import io.vavr.control.Option;
+import io.vavr.control.Try;
+import nl.javadev.grpc.tracing.util.CacheMetrics;
+import nl.javadev.grpc.tracing.util.TracingUtil;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A caching layer in front of another product repository.
+ * <p>
+ * Products rarely change, so they are cached for a (long) time to live.
+ * Products that do not exist are cached as well, but for a shorter time (negative caching),
+ * so repeated lookups of unknown ids do not all reach the database.
+ * <p>
+ * Once a cached product has reached a configurable part of its time to live, the cached product is still returned,
+ * but it is refreshed in the background (refresh-ahead). So products that are requested frequently never expire.
+ * Concurrent lookups of a product that is not cached share a single load.
+ */
+public class CachingProductRepository implements ProductRepository {
+
+    private final ProductRepository delegate;
+    private final long timeToLiveNanos;
+    private final long negativeTimeToLiveNanos;
+    private final double refreshAheadFactor;
+    private final ExecutorService executor;
+    private final CacheMetrics metrics;
+
+    // Both guarded by this
+    private final LinkedHashMap<String, CachedProduct> cachedProducts;
+    private final Map<String, Future<Option<BasicProductData>>> loadsInFlight = new HashMap<>();
+
+    /**
+     * @param refreshAheadFactor the part of the time to live (0 - 1) after which a cached product is refreshed in the background,
+     *                           1 disables refreshing ahead
+     */
+    public CachingProductRepository(final String name,
+                                    final ProductRepository delegate,
+                                    final long timeToLiveMillis,
+                                    final long negativeTimeToLiveMillis,
+                                    final double refreshAheadFactor,
+                                    final int maxSize,
+                                    final ExecutorService executor) {
+        if (refreshAheadFactor <= 0 || refreshAheadFactor > 1) {
+            throw new IllegalArgumentException(String.format("The refresh ahead factor must be > 0 and <= 1, but was %s", refreshAheadFactor));
+        }
+        if (maxSize < 1) {
+            throw new IllegalArgumentException(String.format("The max size must be at least 1, but was %s", maxSize));
+        }
+        this.delegate = delegate;
+        this.timeToLiveNanos = TimeUnit.MILLISECONDS.toNanos(timeToLiveMillis);
+        this.negativeTimeToLiveNanos = TimeUnit.MILLISECONDS.toNanos(negativeTimeToLiveMillis);
+        this.refreshAheadFactor = refreshAheadFactor;
+        this.executor = executor;
+        this.metrics = new CacheMetrics(name);
+
+        // Access ordered, so the eldest entry is the least recently used one
+        this.cachedProducts = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(final Map.Entry<String, CachedProduct> eldest) {
+                if (size() > maxSize) {
+                    metrics.recordEviction();
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    @Override
+    public Future<Option<BasicProductData>> findById(final String productId, final Span span) {
+        final Option<BasicProductData> cachedResult;
+        final boolean refreshAhead;
+        final Future<Option<BasicProductData>> loadInFlight;
+        Promise<Option<BasicProductData>> newLoad = null;
+
+        synchronized (this) {
+            final var now = System.nanoTime();
+            final var cachedProduct = cachedProducts.get(productId);
+            if (cachedProduct != null && cachedProduct.expiresAtNanos - now > 0) {
+                cachedResult = cachedProduct.product;
+                refreshAhead = cachedProduct.refreshAtNanos - now <= 0 && !loadsInFlight.containsKey(productId);
+                loadInFlight = null;
+            } else {
+                cachedResult = null;
+                refreshAhead = false;
+                if (cachedProduct != null) {
+                    cachedProducts.remove(productId);
+                }
+                loadInFlight = loadsInFlight.get(productId);
+            }
+
+            if (refreshAhead || (cachedResult == null && loadInFlight == null)) {
+                newLoad = Promise.make(executor);
+                loadsInFlight.put(productId, newLoad.future());
+            }
+        }
+
+        if (newLoad != null) {
+            load(productId, newLoad, span);
+        }
+
+        if (cachedResult != null) {
+            metrics.recordHits(1);
+            span.addAnnotation("Cache hit", Map.of(
+                    "cache", AttributeValue.stringAttributeValue("products"),
+                    "productFound", AttributeValue.booleanAttributeValue(cachedResult.isDefined()),
+                    "refreshingAhead", AttributeValue.booleanAttributeValue(refreshAhead)));
+            return Future.successful(executor, cachedResult);
+        }
+
+        metrics.recordMisses(1);
+        return loadInFlight != null ? loadInFlight : newLoad.future();
+    }
+
+    /**
+     * Loads the given products into the cache, e.g. the most requested products at startup
+     */
+    public Future<Void> warmUp(final Iterable<String> productIds) {
+        final var span = TracingUtil.createNewChildSpan("warmUpProductCache", null);
+        return Future.sequence(executor, List.ofAll(productIds).map(productId -> findById(productId, span)))
+                .<Void>map(products -> null)
+                .onComplete(result -> span.end());
+    }
+
+    public CacheMetrics getMetrics() {
+        return metrics;
+    }
+
+    private void load(final String productId, final Promise<Option<BasicProductData>> promise, final Span span) {
+        Try.of(() -> delegate.findById(productId, span))
+                .getOrElseGet(failure -> Future.failed(executor, failure))
+                .onComplete(result -> {
+                    synchronized (this) {
+                        loadsInFlight.remove(productId);
+                        // Failures are not cached, the next lookup simply tries again
+                        result.forEach(product -> cachedProducts.put(productId, newCachedProduct(product)));
+                    }
+                    // Shared by the calls that look up the same product, so not completed in the context of the call that started the load
+                    Context.ROOT.run(() -> promise.complete(result));
+                });
+    }
+
+    private CachedProduct newCachedProduct(final Option<BasicProductData> product) {
+        final var now = System.nanoTime();
+        final var timeToLive = product.isDefined() ? timeToLiveNanos : negativeTimeToLiveNanos;
+        return new CachedProduct(product, now + (long) (timeToLive * refreshAheadFactor), now + timeToLive);
+    }
+
+    private static class CachedProduct {
+        private final Option<BasicProductData> product;
+        private final long refreshAtNanos;
+        private final long expiresAtNanos;
+
+        CachedProduct(final Option<BasicProductData> product, final long refreshAtNanos, final long expiresAtNanos) {
+            this.product = product;
+            this.refreshAtNanos = refreshAtNanos;
+            this.expiresAtNanos = expiresAtNanos;
+        }
+    }
+}
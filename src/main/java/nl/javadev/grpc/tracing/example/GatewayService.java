@@ -1,49 +1,167 @@
 package nl.javadev.grpc.tracing.example;
 
-import io.grpc.ManagedChannelBuilder;
+import io.grpc.BindableService;
+import io.grpc.Channel;
+import io.grpc.stub.ClientCallStreamObserver;
+import io.grpc.stub.ClientResponseObserver;
+import io.grpc.stub.ServerCallStreamObserver;
 import io.grpc.stub.StreamObserver;
 import nl.javadev.grpc.tracing.example.GatewayServiceGrpc.GatewayServiceImplBase;
 import nl.javadev.grpc.tracing.example.GatewayServiceOuterClass.GetProductsRequest;
 import nl.javadev.grpc.tracing.example.GatewayServiceOuterClass.GetProductsResponse;
-import nl.javadev.grpc.tracing.example.ProductServiceGrpc.ProductServiceBlockingStub;
+import nl.javadev.grpc.tracing.example.ProductServiceGrpc.ProductServiceStub;
 import nl.javadev.grpc.tracing.example.ProductServiceOuterClass.GetProductsWithPriceAndStockDetailsRequest;
+import nl.javadev.grpc.tracing.example.ProductServiceOuterClass.GetProductsWithPriceAndStockDetailsResponse;
+import nl.javadev.grpc.tracing.example.ProductServiceOuterClass.ProductWithDetails;
+import nl.javadev.grpc.tracing.util.Channels;
+import nl.javadev.grpc.tracing.util.PassThrough;
 
 /**
- * The Gateway service simply does a blocking call to the Product service.
- * This is to demonstrate that in such a case the tracing span will be propagated to the next service automatically.
+ * The Gateway service simply passes on the call to the Product service.
+ * It does so without blocking: the call is started from the gRPC thread and the response is sent from the callback.
+ * This is to demonstrate that in such a case the tracing span will be propagated to the next service automatically,
+ * because the client call picks up the span when it is started.
+ * <p>
+ * The request and response of getProducts have the same wire format as those of the Product service,
+ * so these can be passed through as bytes, without parsing them (see {@link #create(Channel, boolean)}).
  */
 public class GatewayService extends GatewayServiceImplBase {
 
-    private final ProductServiceBlockingStub productServiceClient;
+    private final ProductServiceStub productServiceClient;
 
     public GatewayService(final String productServiceHost, final int productServicePort) {
-        final var channel = ManagedChannelBuilder.forAddress(productServiceHost, productServicePort)
-                .usePlaintext().build();
-        productServiceClient = ProductServiceGrpc.newBlockingStub(channel);
+        this(Channels.forAddress(productServiceHost, productServicePort));
     }
 
+    /**
+     * Creates the service for an already created channel to the Product service (e.g. an in-process channel)
+     */
+    public GatewayService(final Channel productServiceChannel) {
+        productServiceClient = ProductServiceGrpc.newStub(productServiceChannel);
+    }
+
+    /**
+     * Creates the service, of which the getProducts calls are forwarded to the Product service without parsing the messages
+     * (see {@link PassThrough}), unless passing through is switched off.
+     * This saves parsing the products, copying them into another response and serializing them again
+     *
+     * @param passThrough whether the getProducts messages are passed through as bytes, instead of being parsed and copied
+     */
+    public static BindableService create(final Channel productServiceChannel, final boolean passThrough) {
+        final var service = new GatewayService(productServiceChannel);
+        if (!passThrough) {
+            return service;
+        }
+        return () -> PassThrough.forwardUnaryCalls(service.bindService(), GatewayServiceGrpc.getGetProductsMethod(),
+                productServiceChannel, ProductServiceGrpc.getGetProductsWithPriceAndStockDetailsMethod());
+    }
+
+    /**
+     * Reads whether the getProducts messages are passed through from the system property: gatewayService.passThrough (default: true)
+     */
+    public static boolean passThroughFromSystemProperties() {
+        return Boolean.parseBoolean(System.getProperty("gatewayService.passThrough", "true"));
+    }
+
+    /**
+     * Not called when the messages are passed through
+     */
     @Override
     public void getProducts(final GetProductsRequest request,
                             final StreamObserver<GetProductsResponse> responseObserver) {
-        try {
-            // Simply pass on the requested identifiers to the request to the Product service
-            final var productServiceRequest = GetProductsWithPriceAndStockDetailsRequest.newBuilder()
-                    .addAllProductIds(request.getProductIdsList())
-                    .build();
+        // Simply pass on the requested identifiers to the request to the Product service
+        final var productServiceRequest = GetProductsWithPriceAndStockDetailsRequest.newBuilder()
+                .addAllProductIds(request.getProductIdsList())
+                .setPartialResultsBudgetMillis(request.getPartialResultsBudgetMillis())
+                .build();
+
+        // Nothing special is being done. The client will continue the span, passing it to the product service.
+        // The gRPC thread is released right away, the response is sent once the Product service has answered
+        productServiceClient.getProductsWithPriceAndStockDetails(productServiceRequest,
+                new StreamObserver<>() {
+                    @Override
+                    public void onNext(final GetProductsWithPriceAndStockDetailsResponse productServiceResponse) {
+                        // And then simply pass the returned products from the Product service to this response
+                        responseObserver.onNext(GetProductsResponse.newBuilder()
+                                .addAllProducts(productServiceResponse.getProductsList())
+                                .build());
+                    }
+
+                    @Override
+                    public void onError(final Throwable t) {
+                        responseObserver.onError(t);
+                    }
+
+                    @Override
+                    public void onCompleted() {
+                        responseObserver.onCompleted();
+                    }
+                });
+    }
+
+    @Override
+    public void streamProducts(final GetProductsRequest request,
+                               final StreamObserver<ProductWithDetails> responseObserver) {
+        final var productServiceRequest = GetProductsWithPriceAndStockDetailsRequest.newBuilder()
+                .addAllProductIds(request.getProductIdsList())
+                .setPartialResultsBudgetMillis(request.getPartialResultsBudgetMillis())
+                .build();
+
+        // The streaming call is also started from the gRPC thread, so the span is propagated in the same way
+        final var forwarder = new ProductForwarder((ServerCallStreamObserver<ProductWithDetails>) responseObserver);
+        productServiceClient.streamProductsWithPriceAndStockDetails(productServiceRequest, forwarder);
+        forwarder.requestNextProductIfReady();
+    }
+
+    /**
+     * Forwards the products streamed by the Product service to the client.
+     * The next product is only requested from the Product service once the client is ready to receive it,
+     * so a slow client slows down the Product service stream instead of products piling up in this service.
+     */
+    private static class ProductForwarder
+            implements ClientResponseObserver<GetProductsWithPriceAndStockDetailsRequest, ProductWithDetails> {
+
+        private final ServerCallStreamObserver<ProductWithDetails> responseObserver;
+        private ClientCallStreamObserver<GetProductsWithPriceAndStockDetailsRequest> productServiceCall;
+        private boolean awaitingProduct;
+
+        ProductForwarder(final ServerCallStreamObserver<ProductWithDetails> responseObserver) {
+            this.responseObserver = responseObserver;
+        }
+
+        @Override
+        public void beforeStart(final ClientCallStreamObserver<GetProductsWithPriceAndStockDetailsRequest> productServiceCall) {
+            this.productServiceCall = productServiceCall;
+            productServiceCall.disableAutoInboundFlowControl();
+            responseObserver.setOnReadyHandler(this::requestNextProductIfReady);
+            responseObserver.setOnCancelHandler(() ->
+                    productServiceCall.cancel("The client cancelled the call", null));
+        }
 
+        synchronized void requestNextProductIfReady() {
+            if (!awaitingProduct && responseObserver.isReady()) {
+                awaitingProduct = true;
+                productServiceCall.request(1);
+            }
+        }
 
-            final var productServiceResponse = productServiceClient
-                    .getProductsWithPriceAndStockDetails(productServiceRequest);
+        @Override
+        public void onNext(final ProductWithDetails product) {
+            synchronized (this) {
+                awaitingProduct = false;
+                responseObserver.onNext(product);
+            }
+            requestNextProductIfReady();
+        }
 
-            // And then simply pass the returned products from the Product service to this response
-            final var response = GetProductsResponse.newBuilder()
-                    .addAllProducts(productServiceResponse.getProductsList())
-                    .build();
+        @Override
+        public synchronized void onError(final Throwable t) {
+            responseObserver.onError(t);
+        }
 
-            responseObserver.onNext(response);
+        @Override
+        public synchronized void onCompleted() {
             responseObserver.onCompleted();
-        } catch (Exception e) {
-            responseObserver.onError(e);
         }
     }
 }
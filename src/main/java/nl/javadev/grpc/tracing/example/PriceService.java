@@ -1,13 +1,21 @@
 package nl.javadev.grpc.tracing.example;
 
+import io.grpc.stub.ServerCallStreamObserver;
 import io.grpc.stub.StreamObserver;
 import io.opencensus.trace.Span;
 import io.opencensus.trace.Tracing;
+import io.vavr.Tuple;
+import io.vavr.Tuple2;
+import io.vavr.collection.List;
 import io.vavr.concurrent.Future;
 import io.vavr.control.Option;
 import nl.javadev.grpc.tracing.example.PriceServiceGrpc.PriceServiceImplBase;
 import nl.javadev.grpc.tracing.example.PriceServiceOuterClass.GetPriceForProductRequest;
 import nl.javadev.grpc.tracing.example.PriceServiceOuterClass.GetPriceForProductResponse;
+import nl.javadev.grpc.tracing.example.PriceServiceOuterClass.GetPricesForProductsRequest;
+import nl.javadev.grpc.tracing.example.PriceServiceOuterClass.GetPricesForProductsResponse;
+import nl.javadev.grpc.tracing.example.PriceServiceOuterClass.ProductPrice;
+import nl.javadev.grpc.tracing.util.ServiceExecutors;
 import nl.javadev.grpc.tracing.util.TracingUtil;
 
 import java.math.BigDecimal;
@@ -20,10 +28,23 @@ import java.util.Random;
 public class PriceService extends PriceServiceImplBase {
 
     private final Random random = new Random();
+    private final ServiceExecutors executors;
+
+    public PriceService() {
+        this(ServiceExecutors.create("priceService"));
+    }
+
+    public PriceService(final ServiceExecutors executors) {
+        this.executors = executors;
+    }
 
     @Override
     public void getPriceForProduct(final GetPriceForProductRequest request,
                                    final StreamObserver<GetPriceForProductResponse> responseObserver) {
+        // No new work is started while the executors cannot keep up
+        if (!executors.admit(responseObserver)) {
+            return;
+        }
 
         // Capture the span bound to the GRPC thread that calls this method.
         // It will not be available for the threads that execute the asynchronous logic.
@@ -31,13 +52,50 @@ public class PriceService extends PriceServiceImplBase {
 
         getPriceFromPriceInformationSystem(request.getProductId(), span)
                 .map(this::mapOptionalPriceToResponse)
-                .onSuccess(response -> {
-                    responseObserver.onNext(response);
-                    responseObserver.onCompleted();
-                })
+                .onSuccess(response -> respond(responseObserver, response))
+                .onFailure(responseObserver::onError);
+    }
+
+    @Override
+    public void getPricesForProducts(final GetPricesForProductsRequest request,
+                                     final StreamObserver<GetPricesForProductsResponse> responseObserver) {
+        // No new work is started while the executors cannot keep up
+        if (!executors.admit(responseObserver)) {
+            return;
+        }
+
+        // Capture the span bound to the GRPC thread that calls this method.
+        // It will not be available for the threads that execute the asynchronous logic.
+        final var span = Tracing.getTracer().getCurrentSpan();
+
+        // All products of the batch are looked up with a single call (and thus a single span)
+        getPricesFromPriceInformationSystem(List.ofAll(request.getProductIdsList()), span)
+                .map(optionalPrices -> GetPricesForProductsResponse.newBuilder()
+                        .addAllPrices(optionalPrices.map(this::mapOptionalPriceToProductPrice))
+                        .build())
+                .onSuccess(response -> respond(responseObserver, response))
                 .onFailure(responseObserver::onError);
     }
 
+    private static <T> void respond(final StreamObserver<T> responseObserver, final T response) {
+        // The caller may have given up on the call in the meantime (e.g. because a hedged call was faster),
+        // then sending the response would fail
+        if (responseObserver instanceof ServerCallStreamObserver
+                && ((ServerCallStreamObserver<T>) responseObserver).isCancelled()) {
+            return;
+        }
+        responseObserver.onNext(response);
+        responseObserver.onCompleted();
+    }
+
+    private ProductPrice mapOptionalPriceToProductPrice(final Tuple2<String, Option<BigDecimal>> productIdAndOptionalPrice) {
+        final var productPriceBuilder = ProductPrice.newBuilder()
+                .setProductId(productIdAndOptionalPrice._1)
+                .setCouldBeDetermined(productIdAndOptionalPrice._2.isDefined());
+        productIdAndOptionalPrice._2.forEach(price -> productPriceBuilder.setPrice(price.doubleValue()));
+        return productPriceBuilder.build();
+    }
+
     private GetPriceForProductResponse mapOptionalPriceToResponse(final Option<BigDecimal> optionalPrice) {
         final var responseBuilder = GetPriceForProductResponse.newBuilder()
                 .setCouldBeDetermined(optionalPrice.isDefined());
@@ -50,10 +108,10 @@ public class PriceService extends PriceServiceImplBase {
      */
     private Future<Option<BigDecimal>> getPriceFromPriceInformationSystem(final String productId, final Span span) {
         return Future
-                .successful(TracingUtil.createNewChildSpan("getPriceFromPriceInformationSystem", span))
+                .successful(executors.getCpu(), TracingUtil.createNewChildSpan("getPriceFromPriceInformationSystem", span))
                 .flatMap(childSpan ->
-                        // Add some latency
-                        Future.runRunnable(() -> SleepUtil.sleepRandomly(20))
+                        // Add some latency (this blocks, so it is done by the executor for blocking work)
+                        Future.runRunnable(executors.getBlocking(), () -> SleepUtil.sleepRandomly(20))
                                 // Come up with a random price
                                 .map(aVoid -> new BigDecimal(String.format("%s.%s",
                                         random.nextInt(5) + 1,
@@ -64,4 +122,23 @@ public class PriceService extends PriceServiceImplBase {
                                 .onComplete(productWithDetails -> childSpan.end())
                 );
     }
+
+    /**
+     * This method fakes a call to a third party system that is able to look up the prices of multiple products at once
+     */
+    private Future<List<Tuple2<String, Option<BigDecimal>>>> getPricesFromPriceInformationSystem(final List<String> productIds,
+                                                                                               final Span span) {
+        return Future
+                .successful(executors.getCpu(), TracingUtil.createNewChildSpan("getPricesFromPriceInformationSystem", span))
+                .flatMap(childSpan ->
+                        // Add some latency, only once for the whole batch (by the executor for blocking work)
+                        Future.runRunnable(executors.getBlocking(), () -> SleepUtil.sleepRandomly(20))
+                                // Come up with a random price for each of the products
+                                .map(aVoid -> productIds.map(productId -> Tuple.of(productId,
+                                        Option.of(new BigDecimal(String.format("%s.%s",
+                                                random.nextInt(5) + 1,
+                                                random.nextInt(100)))))))
+                                .onComplete(prices -> childSpan.end())
+                );
+    }
 }
@@ -0,0 +1,17 @@
+package nl.javadev.grpc.tracing.example;
+
+import io.opencensus.trace.Span;
+import io.vavr.concurrent.Future;
+import io.vavr.control.Option;
+
+/**
+ * Provides the basic data of products
+ */
+public interface ProductRepository {
+
+    /**
+     * Looks up a product, the span is used as the parent for the span(s) of the lookup.
+     * The result is empty when the product does not exist.
+     */
+    Future<Option<BasicProductData>> findById(String productId, Span span);
+}
@@ -1,23 +1,40 @@
 package nl.javadev.grpc.tracing.example;
 
-import io.grpc.ManagedChannelBuilder;
+import io.grpc.Channel;
 import io.grpc.stub.StreamObserver;
+import io.opencensus.common.Scope;
+import io.opencensus.trace.AttributeValue;
 import io.opencensus.trace.Span;
+import io.opencensus.trace.Status;
 import io.opencensus.trace.Tracing;
+import io.vavr.collection.HashMap;
+import io.vavr.collection.HashSet;
+import io.vavr.collection.Map;
+import io.vavr.collection.Set;
 import io.vavr.concurrent.Future;
-import io.vavr.control.Option;
-import lombok.Value;
+import io.vavr.concurrent.Promise;
 import nl.javadev.grpc.tracing.example.PriceServiceGrpc.PriceServiceFutureStub;
-import nl.javadev.grpc.tracing.example.PriceServiceOuterClass.GetPriceForProductRequest;
-import nl.javadev.grpc.tracing.example.PriceServiceOuterClass.GetPriceForProductResponse;
+import nl.javadev.grpc.tracing.example.PriceServiceOuterClass.GetPricesForProductsRequest;
+import nl.javadev.grpc.tracing.example.PriceServiceOuterClass.ProductPrice;
 import nl.javadev.grpc.tracing.example.ProductServiceOuterClass.*;
 import nl.javadev.grpc.tracing.example.StockLevelServiceGrpc.StockLevelServiceFutureStub;
-import nl.javadev.grpc.tracing.example.StockLevelServiceOuterClass.GetCurrentStockLevelForProductRequest;
-import nl.javadev.grpc.tracing.example.StockLevelServiceOuterClass.GetCurrentStockLevelForProductResponse;
+import nl.javadev.grpc.tracing.example.StockLevelServiceOuterClass.GetCurrentStockLevelsForProductsRequest;
+import nl.javadev.grpc.tracing.example.StockLevelServiceOuterClass.ProductStockLevel;
+import nl.javadev.grpc.tracing.util.BatchLoader;
+import nl.javadev.grpc.tracing.util.BulkheadBatchLoader;
+import nl.javadev.grpc.tracing.util.CachingBatchLoader;
+import nl.javadev.grpc.tracing.util.Channels;
+import nl.javadev.grpc.tracing.util.CircuitBreakingBatchLoader;
+import nl.javadev.grpc.tracing.util.FlowControlledStreamer;
+import nl.javadev.grpc.tracing.util.FutureUtil;
+import nl.javadev.grpc.tracing.util.HedgingBatchLoader;
+import nl.javadev.grpc.tracing.util.RequestCoalescer;
+import nl.javadev.grpc.tracing.util.ServiceExecutors;
 import nl.javadev.grpc.tracing.util.TracingUtil;
 
-import java.util.List;
-import java.util.stream.Collectors;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 
 /**
  * The product service looks up a product data in the database and enriches this with price and stock information from other services.
@@ -26,34 +43,178 @@ import java.util.stream.Collectors;
  */
 public class ProductService extends ProductServiceGrpc.ProductServiceImplBase {
 
+    private static final String DEFAULT_NAME = "productService";
+
     private final PriceServiceFutureStub priceServiceClient;
     private final StockLevelServiceFutureStub stockLevelServiceClient;
+    private final ProductServiceConfig config;
+    private final ServiceExecutors executors;
+    private final ProductRepository productRepository;
+
+    // Lookups are served from a cache when possible, the remaining lookups of concurrent requests are coalesced into shared batches.
+    // Slow batch calls are hedged. A downstream service that keeps failing is not called for a while (the cache falls back
+    // to stale values), and the number of calls waiting for a downstream service is limited
+    private final BatchLoader<String, ProductPrice> priceLoader;
+    private final BatchLoader<String, ProductStockLevel> stockLevelLoader;
+
+    // Completes the products that have not been retrieved within the budget of a request
+    private final ScheduledExecutorService budgetScheduler;
 
     public ProductService(final String priceServiceHost, final int priceServicePort,
                           final String stockLevelServiceHost, final int stockLevelServicePort) {
+        this(priceServiceHost, priceServicePort, stockLevelServiceHost, stockLevelServicePort,
+                ProductServiceConfig.defaults(), ServiceExecutors.create(DEFAULT_NAME));
+    }
 
-        final var priceServiceChannel = ManagedChannelBuilder.forAddress(priceServiceHost, priceServicePort)
-                .usePlaintext().build();
-        priceServiceClient = PriceServiceGrpc.newFutureStub(priceServiceChannel);
+    public ProductService(final String priceServiceHost, final int priceServicePort,
+                          final String stockLevelServiceHost, final int stockLevelServicePort,
+                          final ProductServiceConfig config,
+                          final ServiceExecutors executors) {
+        this(priceServiceHost, priceServicePort, stockLevelServiceHost, stockLevelServicePort, config, executors,
+                createProductRepository(DEFAULT_NAME, config, executors));
+    }
 
-        final var stockLevelServiceChannel = ManagedChannelBuilder.forAddress(stockLevelServiceHost, stockLevelServicePort)
-                .usePlaintext().build();
+    public ProductService(final String priceServiceHost, final int priceServicePort,
+                          final String stockLevelServiceHost, final int stockLevelServicePort,
+                          final ProductServiceConfig config,
+                          final ServiceExecutors executors,
+                          final ProductRepository productRepository) {
+        this(DEFAULT_NAME,
+                Channels.forAddress(priceServiceHost, priceServicePort),
+                Channels.forAddress(stockLevelServiceHost, stockLevelServicePort),
+                config, executors, productRepository);
+    }
+
+    /**
+     * Creates the service for already created channels to the Price and Stock level service (e.g. in-process channels)
+     *
+     * @param name the name of this instance, which prefixes the names of its caches, hedging, bulkheads and circuit breakers
+     *             and so of their metrics. The metrics are registered for the whole JVM, so it must be unique within the JVM
+     */
+    public ProductService(final String name,
+                          final Channel priceServiceChannel,
+                          final Channel stockLevelServiceChannel,
+                          final ProductServiceConfig config,
+                          final ServiceExecutors executors,
+                          final ProductRepository productRepository) {
+        this.config = config;
+        this.executors = executors;
+        this.productRepository = productRepository;
+
+        priceServiceClient = PriceServiceGrpc.newFutureStub(priceServiceChannel);
         stockLevelServiceClient = StockLevelServiceGrpc.newFutureStub(stockLevelServiceChannel);
+
+        final var prices = String.format("%s-prices", name);
+        final var priceService = String.format("%s-priceService", name);
+        priceLoader = withCache(prices, config.getPriceCacheTtlMillis(),
+                new RequestCoalescer<>("getPricesForProducts",
+                        withHedging(prices, withBulkhead(priceService, withCircuitBreaker(priceService, this::getPricesForBatchOfProducts))),
+                        config.getMaxBatchSize(), config.getBatchWindowMillis(), executors.getCpu()));
+        final var stockLevels = String.format("%s-stockLevels", name);
+        final var stockLevelService = String.format("%s-stockLevelService", name);
+        stockLevelLoader = withCache(stockLevels, config.getStockLevelCacheTtlMillis(),
+                new RequestCoalescer<>("getStockLevelsForProducts",
+                        withHedging(stockLevels, withBulkhead(stockLevelService, withCircuitBreaker(stockLevelService,
+                                this::getStockLevelsForBatchOfProducts))),
+                        config.getMaxBatchSize(), config.getBatchWindowMillis(), executors.getCpu()));
+
+        // The fan-out and the time spent waiting for the Price and Stock level service, see ProductServiceStats
+        ProductServiceStats.registerViews();
+
+        budgetScheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            final var thread = new Thread(runnable, String.format("%s-budget", name));
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Creates the default product repository: the (simulated) database with a cache in front of it
+     *
+     * @param name the name of the product service instance, which prefixes the name of the cache
+     */
+    public static ProductRepository createProductRepository(final String name,
+                                                            final ProductServiceConfig config,
+                                                            final ServiceExecutors executors) {
+        final var database = new SimulatedProductRepository(executors);
+        if (config.getProductCacheTtlMillis() <= 0) {
+            return database;
+        }
+        return new CachingProductRepository(String.format("%s-products", name), database,
+                config.getProductCacheTtlMillis(), config.getProductNegativeCacheTtlMillis(),
+                config.getProductRefreshAheadFactor(), config.getCacheMaxSize(), executors.getCpu());
+    }
+
+    private <V> BatchLoader<String, V> withHedging(final String name, final BatchLoader<String, V> loader) {
+        if (config.getMaxHedgeRatio() <= 0) {
+            return loader;
+        }
+        return new HedgingBatchLoader<>(name, loader,
+                config.getHedgeDelayPercentile(), config.getMinHedgeDelayMillis(), config.getInitialHedgeDelayMillis(),
+                config.getMaxHedgeRatio(), executors.getCpu());
+    }
+
+    private <V> BatchLoader<String, V> withCircuitBreaker(final String name, final BatchLoader<String, V> loader) {
+        if (config.getCircuitBreakerFailureRate() <= 0) {
+            return loader;
+        }
+        return new CircuitBreakingBatchLoader<>(name, loader,
+                config.getCircuitBreakerFailureRate(), config.getCircuitBreakerSlowCallMillis(), config.getCircuitBreakerWindowSize(),
+                config.getCircuitBreakerOpenMillis(), config.getCircuitBreakerHalfOpenCalls(), executors.getCpu());
+    }
+
+    private <V> BatchLoader<String, V> withBulkhead(final String name, final BatchLoader<String, V> loader) {
+        if (config.getMaxConcurrentCallsPerDownstream() <= 0) {
+            return loader;
+        }
+        return new BulkheadBatchLoader<>(name, loader, config.getMaxConcurrentCallsPerDownstream(), executors.getCpu());
+    }
+
+    private <V> BatchLoader<String, V> withCache(final String name, final long timeToLiveMillis,
+                                                 final BatchLoader<String, V> loader) {
+        if (timeToLiveMillis <= 0) {
+            return loader;
+        }
+        return new CachingBatchLoader<>(name, loader, timeToLiveMillis, config.getStaleIfErrorMillis(), config.getCacheMaxSize(),
+                executors.getCpu());
     }
 
     @Override
     public void getProductsWithPriceAndStockDetails(final GetProductsWithPriceAndStockDetailsRequest request,
                                                     final StreamObserver<GetProductsWithPriceAndStockDetailsResponse> responseObserver) {
+        // No new work is started while the executors cannot keep up
+        if (!executors.admit(responseObserver)) {
+            return;
+        }
+
         // Capture the span bound to the GRPC thread that calls this method.
         // It will not be available for the threads that execute the asynchronous steps.
         final var span = Tracing.getTracer().getCurrentSpan();
+        final var budgetDeadlineNanos = determineBudgetDeadlineNanos(request);
 
-        // Passing on the span to a different method. The Future is executed by a different thread than the gRPC thread
-        Future.sequence(createFutureForEachProduct(request.getProductIdsList(), span))
-                .map(productsWithDetails ->
-                        GetProductsWithPriceAndStockDetailsResponse.newBuilder()
-                                .addAllProducts(productsWithDetails)
-                                .build())
+        // The prices and stock levels of all requested products are retrieved with batched calls,
+        // these are started right away so they run in parallel with the database lookups
+        // The time spent in each stage is tracked, to tell which dependency a slow request was waiting for
+        final var timeline = new RequestTimeline();
+        final var productIds = request.getProductIdsList();
+        ProductServiceStats.recordFanOut(productIds.size());
+        final var prices = emptyOnFailure(timeline.trackPrices(() -> priceLoader.loadAll(HashSet.ofAll(productIds), span)));
+        final var stockLevels = emptyOnFailure(timeline.trackStockLevels(() -> stockLevelLoader.loadAll(HashSet.ofAll(productIds), span)));
+
+        // Passing on the span to a different method. The Future is executed by a different thread than the gRPC thread.
+        // Every product Future completes successfully (with a status), so one failing product does not fail the response.
+        // No more products are enriched at the same time than for a streaming request, so a request for many products
+        // does not flood the executors with the continuations of all of its products at once
+        FutureUtil.sequenceBounded(executors.getCpu(), productIds,
+                productId -> getProductAndDetailsWithinBudget(productId, span, timeline, prices, stockLevels, budgetDeadlineNanos),
+                config.getMaxProductsInFlight())
+                .map(productsWithDetails -> {
+                    // Which dependency held up the product that was ready last
+                    timeline.finish(span);
+                    return GetProductsWithPriceAndStockDetailsResponse.newBuilder()
+                            .addAllProducts(productsWithDetails)
+                            .build();
+                })
                 .onSuccess(response -> {
                     responseObserver.onNext(response);
                     responseObserver.onCompleted();
@@ -61,137 +222,234 @@ public class ProductService extends ProductServiceGrpc.ProductServiceImplBase {
                 .onFailure(responseObserver::onError);
     }
 
+    @Override
+    public void streamProductsWithPriceAndStockDetails(final GetProductsWithPriceAndStockDetailsRequest request,
+                                                       final StreamObserver<ProductWithDetails> responseObserver) {
+        // No new work is started while the executors cannot keep up
+        if (!executors.admit(responseObserver)) {
+            return;
+        }
+
+        // Capture the span bound to the GRPC thread that calls this method.
+        // It will not be available for the threads that execute the asynchronous steps.
+        final var span = Tracing.getTracer().getCurrentSpan();
+        final var budgetDeadlineNanos = determineBudgetDeadlineNanos(request);
+
+        // The time spent in each stage is tracked, to tell which dependency a slow request was waiting for
+        final var timeline = new RequestTimeline();
+        final var productIds = request.getProductIdsList();
+        ProductServiceStats.recordFanOut(productIds.size());
+        final var prices = emptyOnFailure(timeline.trackPrices(() -> priceLoader.loadAll(HashSet.ofAll(productIds), span)));
+        final var stockLevels = emptyOnFailure(timeline.trackStockLevels(() -> stockLevelLoader.loadAll(HashSet.ofAll(productIds), span)));
+
+        // Every product is sent as soon as it has been enriched,
+        // but no more products are enriched at the same time than the client is able to keep up with
+        new FlowControlledStreamer<>(responseObserver, productIds.iterator(),
+                productId -> getProductAndDetailsWithinBudget(productId, span, timeline, prices, stockLevels, budgetDeadlineNanos),
+                config.getMaxProductsInFlight())
+                // Which dependency held up the product that was sent last
+                .onCompleted(() -> timeline.finish(span))
+                .start();
+    }
+
     /**
-     * This method fakes retrieving a product from the database.
-     * In a real system this would probably go through a DAO layer or via a different micro service.
+     * A batch that failed leaves the price, respectively stock details of all its products empty.
+     * Recovered once per request, instead of once per product
      */
-    private Future<Option<BasicProductData>> getProductFromDatabase(final String productId, final Span span) {
-        return Future
-                .fromCompletableFuture(
-                        // This callable will be executed asynchronously within a new span
-                        TracingUtil.executeAsyncInNewChildSpan(span, "getProductFromDatabase",
-                                () -> {
-                                    // Add some latency
-                                    SleepUtil.sleepRandomly(20);
-                                    // Come up with a some simple product data
-                                    return new BasicProductData(productId, String.format("Description for product %s", productId));
-                                })
-                )
-                // Wrap it in an option
-                // it's meaningless for this code, but in a real system the requested product might not exist
-                .map(Option::of);
+    private static <V> Future<Map<String, V>> emptyOnFailure(final Future<Map<String, V>> batch) {
+        return batch.recover(failure -> HashMap.empty());
     }
 
     /**
-     * This method calls the Price service
+     * Returns the moment (in terms of {@link System#nanoTime()}) at which the products that are not retrieved yet
+     * should be returned as timed out, or 0 if the request waits for all products
      */
-    private Future<Double> getPriceForProduct(final String productId, final Span span) {
-        // Explicitly set the span as the active span on the current thread
-        // so the client call will pick it up and pass it on
-        Tracing.getTracer().withSpan(span);
+    private static long determineBudgetDeadlineNanos(final GetProductsWithPriceAndStockDetailsRequest request) {
+        if (request.getPartialResultsBudgetMillis() <= 0) {
+            return 0;
+        }
+        return System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(request.getPartialResultsBudgetMillis());
+    }
 
-        final var priceForProductRequest = GetPriceForProductRequest.newBuilder()
-                .setProductId(productId)
-                .build();
+    /**
+     * This method calls the Price service for a batch of products
+     */
+    private Future<Map<String, ProductPrice>> getPricesForBatchOfProducts(final Set<String> productIds,
+                                                                          final Span span) {
+        // Explicitly set the span as the active span on the current thread while making the call
+        // so the client call will pick it up and pass it on.
+        // This may be a gRPC thread, so the span is detached again right after starting the call.
+        try (Scope ignored = Tracing.getTracer().withSpan(span)) {
+            final var pricesForProductsRequest = GetPricesForProductsRequest.newBuilder()
+                    .addAllProductIds(productIds)
+                    .build();
 
-        return Future
-                .fromJavaFuture(priceServiceClient.getPriceForProduct(priceForProductRequest))
-                .map(GetPriceForProductResponse::getPrice);
+            return FutureUtil.fromListenableFuture(executors.getCpu(),
+                    priceServiceClient
+                            .withDeadlineAfter(config.getPriceDeadlineMillis(), TimeUnit.MILLISECONDS)
+                            .getPricesForProducts(pricesForProductsRequest),
+                    response -> io.vavr.collection.List.ofAll(response.getPricesList())
+                            .toMap(ProductPrice::getProductId, price -> price));
+        }
     }
 
     /**
-     * This method calls the Stock level service
+     * This method calls the Stock level service for a batch of products
      */
-    private Future<Integer> getStockLevelForProduct(final String productId, final Span span) {
-        // Explicitly set the span as the active span on the current thread
-        // so the client call will pick it up and pass it on
-        Tracing.getTracer().withSpan(span);
-
-        final var stockLevelForProductRequest = GetCurrentStockLevelForProductRequest.newBuilder()
-                .setProductId(productId)
-                .build();
+    private Future<Map<String, ProductStockLevel>> getStockLevelsForBatchOfProducts(final Set<String> productIds,
+                                                                                    final Span span) {
+        // Explicitly set the span as the active span on the current thread while making the call
+        // so the client call will pick it up and pass it on.
+        // This may be a gRPC thread, so the span is detached again right after starting the call.
+        try (Scope ignored = Tracing.getTracer().withSpan(span)) {
+            final var stockLevelsForProductsRequest = GetCurrentStockLevelsForProductsRequest.newBuilder()
+                    .addAllProductIds(productIds)
+                    .build();
 
-        return Future
-                .fromJavaFuture(stockLevelServiceClient.getCurrentStockLevelForProduct(stockLevelForProductRequest))
-                .map(GetCurrentStockLevelForProductResponse::getStockLevel);
+            return FutureUtil.fromListenableFuture(executors.getCpu(),
+                    stockLevelServiceClient
+                            .withDeadlineAfter(config.getStockLevelDeadlineMillis(), TimeUnit.MILLISECONDS)
+                            .getCurrentStockLevelsForProducts(stockLevelsForProductsRequest),
+                    response -> io.vavr.collection.List.ofAll(response.getStockLevelsList())
+                            .toMap(ProductStockLevel::getProductId, stockLevel -> stockLevel));
+        }
     }
 
-    private List<Future<ProductWithDetails>> createFutureForEachProduct(final List<String> productIds,
-                                                                        final Span span) {
-        return productIds.stream()
-                .map(productId -> getProductAndDetails(productId, span))
-                .collect(Collectors.toList());
+    /**
+     * Retrieves the product and its details, unless this takes longer than the budget of the request.
+     * In that case the product is returned with status TIMED_OUT and the retrieval continues in the background
+     * (so that its result still ends up in the caches).
+     * A product that is only started once the budget has run out is not retrieved at all, otherwise all remaining products
+     * of a large request would time out at once and their retrievals would all start in the background at the same moment
+     */
+    private Future<ProductWithDetails> getProductAndDetailsWithinBudget(final String productId, final Span span,
+                                                                        final RequestTimeline timeline,
+                                                                        final Future<Map<String, ProductPrice>> prices,
+                                                                        final Future<Map<String, ProductStockLevel>> stockLevels,
+                                                                        final long budgetDeadlineNanos) {
+        if (budgetDeadlineNanos != 0 && System.nanoTime() - budgetDeadlineNanos >= 0) {
+            span.addAnnotation(String.format("Product %s not retrieved within budget", productId));
+            return Future.successful(executors.getCpu(), productWithStatus(productId, ProductStatus.TIMED_OUT));
+        }
+
+        final var productAndDetails = getProductAndDetails(productId, span, timeline.startProduct(productId), prices, stockLevels);
+        if (budgetDeadlineNanos == 0) {
+            return productAndDetails;
+        }
+
+        final Promise<ProductWithDetails> promise = Promise.make(executors.getCpu());
+        final var timer = budgetScheduler.schedule(() -> {
+            if (promise.trySuccess(productWithStatus(productId, ProductStatus.TIMED_OUT))) {
+                span.addAnnotation(String.format("Product %s not retrieved within budget", productId));
+            }
+        }, budgetDeadlineNanos - System.nanoTime(), TimeUnit.NANOSECONDS);
+        productAndDetails.onComplete(result -> {
+            timer.cancel(false);
+            promise.tryComplete(result);
+        });
+        return promise.future();
     }
 
-    private Future<ProductWithDetails> getProductAndDetails(final String productId, final Span span) {
+    private Future<ProductWithDetails> getProductAndDetails(final String productId, final Span span,
+                                                            final RequestTimeline.ProductTimeline timeline,
+                                                            final Future<Map<String, ProductPrice>> prices,
+                                                            final Future<Map<String, ProductStockLevel>> stockLevels) {
         final var spanName = String.format("getProductAndDetails#%s", productId);
         return Future
                 // Create a new child span while executed asynchronously, based on the initially captured span
-                .successful(TracingUtil.createNewChildSpan(spanName, span))
-                .flatMap(childSpan ->
-                        // Start by retrieving the basic product data from the database (we pass on the child span)
-                        getProductFromDatabase(productId, childSpan)
-                                // Fail if the product could not be found in the database
-                                .map(optionalProduct ->
-                                        optionalProduct.getOrElseThrow(() ->
-                                                new RuntimeException(String.format("Product %s not found in database", productId)))
-                                )
-                                // Create the ProductWithDetails, but without price and stock details filled in
-                                .map(product ->
-                                        ProductWithDetails.newBuilder()
-                                                .setId(product.id)
-                                                .setDescription(product.description)
-                                                .build()
-                                )
-                                // Fill in the price and stock details asynchronously (we also here pass on the child span)
-                                .flatMap(pwd -> enrichProductWithPriceAndStockDetails(pwd, childSpan))
-                                // Close the child span at the end of this asynchronously executed Future
-                                .onComplete(productWithDetails -> childSpan.end())
-                );
-    }
-
-    private Future<ProductWithDetails> enrichProductWithPriceAndStockDetails(final ProductWithDetails productWithDetails,
-                                                                             final Span span) {
-        return Future.fold(
-                List.of(
-                        // Retrieve the price
-                        getPriceForProduct(productWithDetails.getId(), span)
-                                // Map to product details, but only set the price details
-                                .map(price -> ProductWithDetails.newBuilder()
-                                        .setPriceDetails(PriceDetails.newBuilder().setCurrentPrice(price))
-                                        .build()),
-                        // Retrieve the stock level
-                        getStockLevelForProduct(productWithDetails.getId(), span)
-                                // Map to product details, but only set the stock details
-                                .map(stock -> ProductWithDetails.newBuilder()
-                                        .setStockDetails(StockDetails.newBuilder().setNrInStock(stock))
-                                        .build())
-                ),
-                // Merge price and stock details
-                productWithDetails, this::mergePriceAndStockDetails
-        );
-    }
-
-    private ProductWithDetails mergePriceAndStockDetails(final ProductWithDetails original,
-                                                         final ProductWithDetails other) {
-        final var builder = original.toBuilder();
-
-        // If the price details have not explicitly been set, then use the price from the other
-        if (builder.getPriceDetails().equals(PriceDetails.getDefaultInstance())) {
-            builder.setPriceDetails(other.getPriceDetails());
-        }
+                .successful(executors.getCpu(), TracingUtil.createNewChildSpan(spanName, span))
+                .flatMap(childSpan -> {
+                    // Until now the product was waiting for an executor thread
+                    timeline.started();
+                    // Start by retrieving the basic product data from the repository (we pass on the child span)
+                    return productRepository.findById(productId, childSpan)
+                            .flatMap(optionalProduct -> {
+                                timeline.databaseDone();
+                                return optionalProduct
+                                        // Fill in the price and stock details from the (asynchronously retrieved) batches
+                                        .map(product -> {
+                                            timeline.enriching();
+                                            return enrichProductWithPriceAndStockDetails(product, prices, stockLevels);
+                                        })
+                                        // A product that could not be found in the database does not fail the other products
+                                        .getOrElse(() -> Future.successful(executors.getCpu(),
+                                                productWithStatus(productId, ProductStatus.NOT_FOUND)));
+                            })
+                            // Neither does a product that could not be retrieved because of an error
+                            .recover(failure -> {
+                                timeline.databaseDone();
+                                childSpan.addAnnotation(String.format("Failed to retrieve product: %s", failure));
+                                return productWithStatus(productId, ProductStatus.FAILED);
+                            })
+                            // Record the time spent in each stage before the request is completed, as part of the chain
+                            .map(productWithDetails -> {
+                                timeline.done(childSpan);
+                                return productWithDetails;
+                            })
+                            // Close the child span at the end of this asynchronously executed Future
+                            .onSuccess(productWithDetails -> endWithStatus(childSpan, productWithDetails.getStatus()));
+                });
+    }
 
-        // If the stock details have not explicitly been set, then use the stock from the other
-        if (builder.getStockDetails().equals(StockDetails.getDefaultInstance())) {
-            builder.setStockDetails(other.getStockDetails());
+    private static ProductWithDetails productWithStatus(final String productId, final ProductStatus status) {
+        return ProductWithDetails.newBuilder()
+                .setId(productId)
+                .setStatus(status)
+                .build();
+    }
+
+    private static void endWithStatus(final Span span, final ProductStatus status) {
+        span.putAttribute("productStatus", AttributeValue.stringAttributeValue(status.name()));
+        if (status == ProductStatus.NOT_FOUND) {
+            span.setStatus(Status.NOT_FOUND);
+        } else if (status == ProductStatus.FAILED) {
+            span.setStatus(Status.UNKNOWN);
         }
+        span.end();
+    }
 
-        return builder.build();
+    /**
+     * Waits for both batches and then assembles the product with its price and stock details in one go.
+     * The batches never fail, see {@link #emptyOnFailure}
+     */
+    private Future<ProductWithDetails> enrichProductWithPriceAndStockDetails(final BasicProductData product,
+                                                                             final Future<Map<String, ProductPrice>> prices,
+                                                                             final Future<Map<String, ProductStockLevel>> stockLevels) {
+        final var productId = product.getId();
+        return prices.zipWith(stockLevels, (pricesByProductId, stockLevelsByProductId) ->
+                productWithPriceAndStockDetails(product,
+                        pricesByProductId.get(productId).getOrNull(),
+                        stockLevelsByProductId.get(productId).getOrNull()));
     }
 
-    @Value
-    private class BasicProductData {
-        private String id;
-        private String description;
+    /**
+     * Builds the product with its price and stock details (and the resulting status) with a single builder.
+     * When the price or stock level is missing or could not be determined, its details are left empty.
+     * Package-private so it can be benchmarked
+     */
+    static ProductWithDetails productWithPriceAndStockDetails(final BasicProductData product,
+                                                              final ProductPrice price,
+                                                              final ProductStockLevel stockLevel) {
+        final var builder = ProductWithDetails.newBuilder()
+                .setId(product.getId())
+                .setDescription(product.getDescription());
+
+        final var priceDetermined = price != null && price.getCouldBeDetermined();
+        if (priceDetermined) {
+            builder.setPriceDetails(PriceDetails.newBuilder()
+                    .setCurrentPrice(price.getPrice())
+                    .setCouldBeDetermined(true));
+        }
+
+        final var stockLevelDetermined = stockLevel != null && stockLevel.getCouldBeDetermined();
+        if (stockLevelDetermined) {
+            builder.setStockDetails(StockDetails.newBuilder()
+                    .setNrInStock(stockLevel.getStockLevel())
+                    .setCouldBeDetermined(true));
+        }
+
+        return builder
+                .setStatus(priceDetermined && stockLevelDetermined ? ProductStatus.COMPLETE : ProductStatus.PARTIAL)
+                .build();
     }
 }
@@ -0,0 +1,195 @@
+package nl.javadev.grpc.tracing.example;
+
+import lombok.Builder;
+import lombok.Value;
+
+/**
+ * Tuning options of the {@link ProductService}
+ */
+@Value
+@Builder
+public class ProductServiceConfig {
+
+    /**
+     * The maximum number of products that is looked up with a single call to the Price or Stock level service
+     */
+    @Builder.Default
+    private int maxBatchSize = 100;
+
+    /**
+     * How long lookups of concurrent requests are collected before they are sent as one batch (0 disables waiting)
+     */
+    @Builder.Default
+    private long batchWindowMillis = 5;
+
+    /**
+     * The maximum number of products of a request that are being enriched (or, for a streaming request, waiting to be sent)
+     */
+    @Builder.Default
+    private int maxProductsInFlight = 32;
+
+    /**
+     * How long a retrieved price is cached (0 disables caching of prices)
+     */
+    @Builder.Default
+    private long priceCacheTtlMillis = 10_000;
+
+    /**
+     * How long a retrieved stock level is cached (0 disables caching of stock levels)
+     */
+    @Builder.Default
+    private long stockLevelCacheTtlMillis = 2_000;
+
+    /**
+     * The maximum number of products of which the price, respectively the stock level, is cached
+     */
+    @Builder.Default
+    private int cacheMaxSize = 10_000;
+
+    /**
+     * How long the basic data of a product is cached (0 disables caching of products)
+     */
+    @Builder.Default
+    private long productCacheTtlMillis = 300_000;
+
+    /**
+     * How long it is cached that a product does not exist
+     */
+    @Builder.Default
+    private long productNegativeCacheTtlMillis = 30_000;
+
+    /**
+     * The part of the time to live (0 - 1) after which a cached product is refreshed in the background (1 disables this)
+     */
+    @Builder.Default
+    private double productRefreshAheadFactor = 0.8;
+
+    /**
+     * The deadline of a call to the Price service
+     */
+    @Builder.Default
+    private long priceDeadlineMillis = 1_000;
+
+    /**
+     * The deadline of a call to the Stock level service
+     */
+    @Builder.Default
+    private long stockLevelDeadlineMillis = 1_000;
+
+    /**
+     * The percentile (0 - 1) of the recent latencies of a downstream service after which a hedged call is sent
+     */
+    @Builder.Default
+    private double hedgeDelayPercentile = 0.95;
+
+    /**
+     * A hedged call is never sent sooner than this after the first call
+     */
+    @Builder.Default
+    private long minHedgeDelayMillis = 20;
+
+    /**
+     * The delay after which a hedged call is sent, as long as too few latencies have been recorded
+     */
+    @Builder.Default
+    private long initialHedgeDelayMillis = 250;
+
+    /**
+     * The maximum number of hedged calls per call (0 - 1) to a downstream service (0 disables hedging)
+     */
+    @Builder.Default
+    private double maxHedgeRatio = 0.1;
+
+    /**
+     * How long after it expired a cached price or stock level is still used when the downstream service cannot be called
+     * (0 disables this)
+     */
+    @Builder.Default
+    private long staleIfErrorMillis = 60_000;
+
+    /**
+     * The part of the recent calls (0 - 1) to a downstream service that may fail or be slow before its circuit breaker opens
+     * (0 disables the circuit breakers)
+     */
+    @Builder.Default
+    private double circuitBreakerFailureRate = 0.5;
+
+    /**
+     * A call to a downstream service that takes longer than this counts as failed for the circuit breaker
+     */
+    @Builder.Default
+    private long circuitBreakerSlowCallMillis = 500;
+
+    /**
+     * The number of recent calls over which the failure rate of a downstream service is determined
+     */
+    @Builder.Default
+    private int circuitBreakerWindowSize = 20;
+
+    /**
+     * How long no calls are made to a downstream service once its circuit breaker has opened
+     */
+    @Builder.Default
+    private long circuitBreakerOpenMillis = 5_000;
+
+    /**
+     * The number of trial calls that have to succeed before the circuit breaker closes again
+     */
+    @Builder.Default
+    private int circuitBreakerHalfOpenCalls = 3;
+
+    /**
+     * The maximum number of calls per downstream service that are waiting for a response (0 disables the bulkheads)
+     */
+    @Builder.Default
+    private int maxConcurrentCallsPerDownstream = 32;
+
+    public static ProductServiceConfig defaults() {
+        return builder().build();
+    }
+
+    /**
+     * Reads the options from: -DproductService.maxBatchSize=..., -DproductService.batchWindowMillis=...,
+     * -DproductService.maxProductsInFlight=..., -DproductService.priceCacheTtlMillis=..., -DproductService.stockLevelCacheTtlMillis=...,
+     * -DproductService.cacheMaxSize=..., -DproductService.productCacheTtlMillis=..., -DproductService.productNegativeCacheTtlMillis=...,
+     * -DproductService.productRefreshAheadFactor=..., -DproductService.priceDeadlineMillis=..., -DproductService.stockLevelDeadlineMillis=...,
+     * -DproductService.hedgeDelayPercentile=..., -DproductService.minHedgeDelayMillis=..., -DproductService.initialHedgeDelayMillis=...,
+     * -DproductService.maxHedgeRatio=..., -DproductService.staleIfErrorMillis=..., -DproductService.circuitBreakerFailureRate=...,
+     * -DproductService.circuitBreakerSlowCallMillis=..., -DproductService.circuitBreakerWindowSize=...,
+     * -DproductService.circuitBreakerOpenMillis=..., -DproductService.circuitBreakerHalfOpenCalls=...
+     * and -DproductService.maxConcurrentCallsPerDownstream=...
+     */
+    public static ProductServiceConfig fromSystemProperties() {
+        final var defaults = defaults();
+        return ProductServiceConfig.builder()
+                .maxBatchSize(Integer.getInteger("productService.maxBatchSize", defaults.getMaxBatchSize()))
+                .batchWindowMillis(Long.getLong("productService.batchWindowMillis", defaults.getBatchWindowMillis()))
+                .maxProductsInFlight(Integer.getInteger("productService.maxProductsInFlight", defaults.getMaxProductsInFlight()))
+                .priceCacheTtlMillis(Long.getLong("productService.priceCacheTtlMillis", defaults.getPriceCacheTtlMillis()))
+                .stockLevelCacheTtlMillis(Long.getLong("productService.stockLevelCacheTtlMillis", defaults.getStockLevelCacheTtlMillis()))
+                .cacheMaxSize(Integer.getInteger("productService.cacheMaxSize", defaults.getCacheMaxSize()))
+                .productCacheTtlMillis(Long.getLong("productService.productCacheTtlMillis", defaults.getProductCacheTtlMillis()))
+                .productNegativeCacheTtlMillis(Long.getLong("productService.productNegativeCacheTtlMillis", defaults.getProductNegativeCacheTtlMillis()))
+                .productRefreshAheadFactor(Double.parseDouble(System.getProperty("productService.productRefreshAheadFactor",
+                        String.valueOf(defaults.getProductRefreshAheadFactor()))))
+                .priceDeadlineMillis(Long.getLong("productService.priceDeadlineMillis", defaults.getPriceDeadlineMillis()))
+                .stockLevelDeadlineMillis(Long.getLong("productService.stockLevelDeadlineMillis", defaults.getStockLevelDeadlineMillis()))
+                .hedgeDelayPercentile(Double.parseDouble(System.getProperty("productService.hedgeDelayPercentile",
+                        String.valueOf(defaults.getHedgeDelayPercentile()))))
+                .minHedgeDelayMillis(Long.getLong("productService.minHedgeDelayMillis", defaults.getMinHedgeDelayMillis()))
+                .initialHedgeDelayMillis(Long.getLong("productService.initialHedgeDelayMillis", defaults.getInitialHedgeDelayMillis()))
+                .maxHedgeRatio(Double.parseDouble(System.getProperty("productService.maxHedgeRatio",
+                        String.valueOf(defaults.getMaxHedgeRatio()))))
+                .staleIfErrorMillis(Long.getLong("productService.staleIfErrorMillis", defaults.getStaleIfErrorMillis()))
+                .circuitBreakerFailureRate(Double.parseDouble(System.getProperty("productService.circuitBreakerFailureRate",
+                        String.valueOf(defaults.getCircuitBreakerFailureRate()))))
+                .circuitBreakerSlowCallMillis(Long.getLong("productService.circuitBreakerSlowCallMillis", defaults.getCircuitBreakerSlowCallMillis()))
+                .circuitBreakerWindowSize(Integer.getInteger("productService.circuitBreakerWindowSize", defaults.getCircuitBreakerWindowSize()))
+                .circuitBreakerOpenMillis(Long.getLong("productService.circuitBreakerOpenMillis", defaults.getCircuitBreakerOpenMillis()))
+                .circuitBreakerHalfOpenCalls(Integer.getInteger("productService.circuitBreakerHalfOpenCalls",
+                        defaults.getCircuitBreakerHalfOpenCalls()))
+                .maxConcurrentCallsPerDownstream(Integer.getInteger("productService.maxConcurrentCallsPerDownstream",
+                        defaults.getMaxConcurrentCallsPerDownstream()))
+                .build();
+    }
+}
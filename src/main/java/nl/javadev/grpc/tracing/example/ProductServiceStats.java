@@ -0,0 +1,124 @@
+package nl.javadev.grpc.tracing.example;
+
+import io.opencensus.stats.Aggregation;
+import io.opencensus.stats.BucketBoundaries;
+import io.opencensus.stats.Measure.MeasureDouble;
+import io.opencensus.stats.Measure.MeasureLong;
+import io.opencensus.stats.Stats;
+import io.opencensus.stats.View;
+import io.opencensus.tags.TagContext;
+import io.opencensus.tags.TagKey;
+import io.opencensus.tags.TagValue;
+import io.opencensus.tags.Tags;
+import nl.javadev.grpc.tracing.example.RequestTimeline.Stage;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The measures that are specific to the Product service, next to the measures that gRPC records for every call:
+ * how many products are requested at once (the fan-out of a request), how long a request waits
+ * for the prices and stock levels of its products, how long a product spends in each stage of its retrieval,
+ * and which stage blocked a request the most (see {@link RequestTimeline}).
+ */
+public class ProductServiceStats {
+
+    public static final TagKey DOWNSTREAM = TagKey.create("downstream");
+    public static final TagKey STAGE = TagKey.create("stage");
+    // Whether the product was waiting for an executor thread or a batch to be sent (queueWait), or for the stage to be done (service)
+    public static final TagKey STAGE_TYPE = TagKey.create("stage_type");
+
+    public static final MeasureLong FAN_OUT = MeasureLong.create(
+            "product_service/fan_out", "Number of products per request", "1");
+    public static final MeasureDouble DOWNSTREAM_WAIT = MeasureDouble.create(
+            "product_service/downstream_wait", "Time a request waits for the results of a downstream service", "ms");
+    public static final MeasureDouble STAGE_TIME = MeasureDouble.create(
+            "product_service/stage_time", "Time a product spends in a stage of its retrieval", "ms");
+    public static final MeasureLong TOP_BLOCKING_DEPENDENCY = MeasureLong.create(
+            "product_service/top_blocking_dependency", "A request of which the stage took the most time on its critical path", "1");
+
+    public static final View FAN_OUT_VIEW = View.create(
+            View.Name.create("product_service/fan_out"),
+            "Distribution of the number of products per request",
+            FAN_OUT,
+            Aggregation.Distribution.create(BucketBoundaries.create(
+                    List.of(1.0, 2.0, 5.0, 10.0, 20.0, 50.0, 100.0, 200.0, 500.0, 1000.0))),
+            List.of());
+    public static final View DOWNSTREAM_WAIT_VIEW = View.create(
+            View.Name.create("product_service/downstream_wait"),
+            "Distribution of the time a request waits for the results of a downstream service, per downstream service",
+            DOWNSTREAM_WAIT,
+            Aggregation.Distribution.create(BucketBoundaries.create(
+                    List.of(1.0, 2.0, 5.0, 10.0, 20.0, 50.0, 100.0, 200.0, 500.0, 1000.0, 2000.0, 5000.0))),
+            List.of(DOWNSTREAM));
+
+    public static final View STAGE_TIME_VIEW = View.create(
+            View.Name.create("product_service/stage_time"),
+            "Distribution of the time a product spends in a stage, per stage and whether it was waiting for an executor or being served",
+            STAGE_TIME,
+            Aggregation.Distribution.create(BucketBoundaries.create(
+                    List.of(0.1, 0.2, 0.5, 1.0, 2.0, 5.0, 10.0, 20.0, 50.0, 100.0, 200.0, 500.0, 1000.0, 2000.0, 5000.0))),
+            List.of(STAGE, STAGE_TYPE));
+    public static final View TOP_BLOCKING_DEPENDENCY_VIEW = View.create(
+            View.Name.create("product_service/top_blocking_dependency"),
+            "Number of requests per stage that took the most time on the critical path of the request",
+            TOP_BLOCKING_DEPENDENCY,
+            Aggregation.Count.create(),
+            List.of(STAGE));
+
+    private static final TagValue QUEUE_WAIT = TagValue.create("queueWait");
+    private static final TagValue SERVICE = TagValue.create("service");
+
+    public static void registerViews() {
+        final var viewManager = Stats.getViewManager();
+        viewManager.registerView(FAN_OUT_VIEW);
+        viewManager.registerView(DOWNSTREAM_WAIT_VIEW);
+        viewManager.registerView(STAGE_TIME_VIEW);
+        viewManager.registerView(TOP_BLOCKING_DEPENDENCY_VIEW);
+    }
+
+    static void recordFanOut(final int nrOfProducts) {
+        Stats.getStatsRecorder().newMeasureMap()
+                .put(FAN_OUT, nrOfProducts)
+                .record();
+    }
+
+    /**
+     * Records the time a request waited for the Price or Stock level service.
+     * The tags of the call are passed, because the wait may end on a thread without the tags of the call
+     */
+    static void recordDownstreamWait(final TagContext callTags, final Stage downstream, final long nanos) {
+        Stats.getStatsRecorder().newMeasureMap()
+                .put(DOWNSTREAM_WAIT, toMillis(nanos))
+                .record(Tags.getTagger().toBuilder(callTags)
+                        .put(DOWNSTREAM, TagValue.create(downstream.label))
+                        .build());
+    }
+
+    /**
+     * Records the time a product spent in one of the stages that happen for each product,
+     * or the time a request waited for its batch of prices or stock levels to be sent and then for the response
+     */
+    static void recordStageTime(final TagContext callTags, final Stage stage, final long nanos) {
+        final var isQueueWait = stage == Stage.EXECUTOR_QUEUE || stage == Stage.MERGE_QUEUE
+                || stage == Stage.PRICE_BATCH_QUEUE || stage == Stage.STOCK_LEVEL_BATCH_QUEUE;
+        Stats.getStatsRecorder().newMeasureMap()
+                .put(STAGE_TIME, toMillis(nanos))
+                .record(Tags.getTagger().toBuilder(callTags)
+                        .put(STAGE, TagValue.create(stage.label))
+                        .put(STAGE_TYPE, isQueueWait ? QUEUE_WAIT : SERVICE)
+                        .build());
+    }
+
+    static void recordTopBlockingDependency(final TagContext callTags, final Stage stage) {
+        Stats.getStatsRecorder().newMeasureMap()
+                .put(TOP_BLOCKING_DEPENDENCY, 1)
+                .record(Tags.getTagger().toBuilder(callTags)
+                        .put(STAGE, TagValue.create(stage.label))
+                        .build());
+    }
+
+    private static double toMillis(final long nanos) {
+        return nanos / (double) TimeUnit.MILLISECONDS.toNanos(1);
+    }
+}
@@ -0,0 +1,266 @@
+package nl.javadev.grpc.tracing.example;
+
+import io.grpc.Context;
+import io.opencensus.tags.TagContext;
+import io.opencensus.tags.Tags;
+import io.opencensus.trace.AttributeValue;
+import io.opencensus.trace.Span;
+import io.vavr.concurrent.Future;
+import nl.javadev.grpc.tracing.util.RequestCoalescer;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongConsumer;
+import java.util.function.Supplier;
+
+/**
+ * Keeps track of where the time of a request to the Product service goes, to tell whether a slow request
+ * was waiting for the database, for the Price or Stock level service, or for an executor.
+ * <p>
+ * A product is ready when the slowest of its three dependency chains has finished:
+ * waiting for the executor and then the database, waiting for the prices, and waiting for the stock levels.
+ * The prices and stock levels first wait for their batch to be sent (see {@link RequestCoalescer}), and then for the response.
+ * After that it waits for the executor again to be merged. The critical path of the request is that of the
+ * product that was ready last, and its longest stage is the dependency that blocked the request the most.
+ */
+class RequestTimeline {
+
+    enum Stage {
+        // Waiting for an executor thread, before the database is called
+        EXECUTOR_QUEUE("executorQueue"),
+        DATABASE("database"),
+        // Waiting for the batch with the prices to be sent, when the batch window of the coalescer ends or the batch is full
+        PRICE_BATCH_QUEUE("priceBatchQueue"),
+        // From sending the batch until its response: the call, and the hedge delay when the call was hedged
+        PRICE_SERVICE("priceService"),
+        STOCK_LEVEL_BATCH_QUEUE("stockLevelBatchQueue"),
+        STOCK_LEVEL_SERVICE("stockLevelService"),
+        // Waiting for an executor thread, before the price and stock details are merged into the product
+        MERGE_QUEUE("mergeQueue");
+
+        final String label;
+
+        Stage(final String label) {
+            this.label = label;
+        }
+    }
+
+    // The moment of a stage that has not been reached yet
+    private static final long NOT_YET = Long.MIN_VALUE;
+
+    private final long startNanos = System.nanoTime();
+    // The tags of the call (e.g. the method), the stages end on other threads
+    private final TagContext callTags = Tags.getTagger().getCurrentTagContext();
+    private final Queue<ProductTimeline> products = new ConcurrentLinkedQueue<>();
+    // The moment the last batch with prices, respectively stock levels, of the request was sent.
+    // Not reached when all of them were cached or already being loaded for another request
+    private final AtomicLong pricesSentNanos = new AtomicLong(NOT_YET);
+    private final AtomicLong stockLevelsSentNanos = new AtomicLong(NOT_YET);
+    private volatile long pricesDoneNanos = NOT_YET;
+    private volatile long stockLevelsDoneNanos = NOT_YET;
+
+    /**
+     * Starts loading the prices, keeping track of the moments their batches are sent
+     *
+     * @return the prices, which complete after the moment they were known has been recorded
+     */
+    <T> Future<T> trackPrices(final Supplier<Future<T>> loadPrices) {
+        return load(loadPrices, pricesSentNanos).andThen(ignored -> {
+            pricesDoneNanos = System.nanoTime();
+            recordDownstreamWait(Stage.PRICE_BATCH_QUEUE, Stage.PRICE_SERVICE, pricesSentNanos.get(), pricesDoneNanos);
+        });
+    }
+
+    /**
+     * Starts loading the stock levels, keeping track of the moments their batches are sent
+     *
+     * @return the stock levels, which complete after the moment they were known has been recorded
+     */
+    <T> Future<T> trackStockLevels(final Supplier<Future<T>> loadStockLevels) {
+        return load(loadStockLevels, stockLevelsSentNanos).andThen(ignored -> {
+            stockLevelsDoneNanos = System.nanoTime();
+            recordDownstreamWait(Stage.STOCK_LEVEL_BATCH_QUEUE, Stage.STOCK_LEVEL_SERVICE, stockLevelsSentNanos.get(), stockLevelsDoneNanos);
+        });
+    }
+
+    private static <T> Future<T> load(final Supplier<Future<T>> load, final AtomicLong sentNanos) {
+        // The keys may be spread over multiple batches, the last one that was sent is the one the request waited for
+        final LongConsumer batchSent = batchSentNanos -> sentNanos.accumulateAndGet(batchSentNanos, Math::max);
+        final var context = Context.current().withValue(RequestCoalescer.BATCH_SENT_LISTENER, batchSent);
+        final var previous = context.attach();
+        try {
+            return load.get();
+        } finally {
+            context.detach(previous);
+        }
+    }
+
+    private void recordDownstreamWait(final Stage batchQueue, final Stage service, final long sentNanos, final long doneNanos) {
+        ProductServiceStats.recordDownstreamWait(callTags, service, doneNanos - startNanos);
+        ProductServiceStats.recordStageTime(callTags, batchQueue, sentOrStartNanos(sentNanos) - startNanos);
+        ProductServiceStats.recordStageTime(callTags, service, doneNanos - sentOrStartNanos(sentNanos));
+    }
+
+    /**
+     * Without a batch that was sent for the request, all of the wait counts as waiting for the service
+     */
+    private long sentOrStartNanos(final long sentNanos) {
+        return Math.max(startNanos, sentNanos);
+    }
+
+    ProductTimeline startProduct(final String productId) {
+        final var product = new ProductTimeline(productId);
+        products.add(product);
+        return product;
+    }
+
+    /**
+     * Determines the critical path of the request, from the products that are ready,
+     * and adds it to the span of the request
+     */
+    void finish(final Span requestSpan) {
+        ProductTimeline critical = null;
+        for (final var product : products) {
+            if (product.doneNanos != NOT_YET && (critical == null || product.doneNanos > critical.doneNanos)) {
+                critical = product;
+            }
+        }
+        if (critical == null) {
+            return;
+        }
+
+        final var blockedBy = critical.blockedBy();
+        final var path = new StringBuilder();
+        var topStage = Stage.MERGE_QUEUE;
+        var topNanos = critical.mergeQueueNanos();
+        if (blockedBy == Stage.DATABASE) {
+            path.append(format(Stage.EXECUTOR_QUEUE, critical.queueNanos())).append(" > ")
+                    .append(format(Stage.DATABASE, critical.databaseNanos()));
+            if (critical.queueNanos() > topNanos) {
+                topStage = Stage.EXECUTOR_QUEUE;
+                topNanos = critical.queueNanos();
+            }
+            if (critical.databaseNanos() > topNanos) {
+                topStage = Stage.DATABASE;
+                topNanos = critical.databaseNanos();
+            }
+        } else {
+            final var batchQueue = blockedBy == Stage.PRICE_SERVICE ? Stage.PRICE_BATCH_QUEUE : Stage.STOCK_LEVEL_BATCH_QUEUE;
+            final var sentNanos = sentOrStartNanos(blockedBy == Stage.PRICE_SERVICE ? pricesSentNanos.get() : stockLevelsSentNanos.get());
+            final var batchQueueNanos = sentNanos - startNanos;
+            final var serviceNanos = critical.readyNanos() - sentNanos;
+            path.append(format(batchQueue, batchQueueNanos)).append(" > ")
+                    .append(format(blockedBy, serviceNanos));
+            if (batchQueueNanos > topNanos) {
+                topStage = batchQueue;
+                topNanos = batchQueueNanos;
+            }
+            if (serviceNanos > topNanos) {
+                topStage = blockedBy;
+                topNanos = serviceNanos;
+            }
+        }
+        path.append(" > ").append(format(Stage.MERGE_QUEUE, critical.mergeQueueNanos()));
+
+        requestSpan.putAttribute("criticalPath", AttributeValue.stringAttributeValue(path.toString()));
+        requestSpan.putAttribute("criticalProduct", AttributeValue.stringAttributeValue(critical.productId));
+        requestSpan.putAttribute("topBlockingDependency", AttributeValue.stringAttributeValue(topStage.label));
+        ProductServiceStats.recordTopBlockingDependency(callTags, topStage);
+    }
+
+    private static String format(final Stage stage, final long nanos) {
+        return String.format("%s %.3fms", stage.label, nanos / (double) TimeUnit.MILLISECONDS.toNanos(1));
+    }
+
+    /**
+     * The moments at which the retrieval of a product reached the next stage
+     */
+    class ProductTimeline {
+        private final String productId;
+        // A streamed product may be started well after the request, when the client is ready for it
+        private final long createdNanos = System.nanoTime();
+        private volatile long startedNanos;
+        private volatile long databaseDoneNanos = NOT_YET;
+        // Only a product that was found waits for its price and stock level
+        private volatile boolean enriched;
+        private volatile long doneNanos = NOT_YET;
+
+        private ProductTimeline(final String productId) {
+            this.productId = productId;
+        }
+
+        void started() {
+            startedNanos = System.nanoTime();
+        }
+
+        /**
+         * Marks the end of the database stage, unless it already ended
+         */
+        void databaseDone() {
+            if (databaseDoneNanos == NOT_YET) {
+                databaseDoneNanos = System.nanoTime();
+            }
+        }
+
+        void enriching() {
+            enriched = true;
+        }
+
+        /**
+         * Records the time spent in each stage as attributes of the span of the product, and in the stage histograms
+         */
+        void done(final Span productSpan) {
+            doneNanos = System.nanoTime();
+            final var blockedBy = blockedBy();
+            productSpan.putAttribute("executorQueueMicros", micros(queueNanos()));
+            productSpan.putAttribute("databaseMicros", micros(databaseNanos()));
+            productSpan.putAttribute("mergeQueueMicros", micros(mergeQueueNanos()));
+            productSpan.putAttribute("blockedBy", AttributeValue.stringAttributeValue(blockedBy.label));
+            ProductServiceStats.recordStageTime(callTags, Stage.EXECUTOR_QUEUE, queueNanos());
+            ProductServiceStats.recordStageTime(callTags, Stage.DATABASE, databaseNanos());
+            ProductServiceStats.recordStageTime(callTags, Stage.MERGE_QUEUE, mergeQueueNanos());
+        }
+
+        long queueNanos() {
+            return startedNanos - createdNanos;
+        }
+
+        long databaseNanos() {
+            return databaseDoneNanos - startedNanos;
+        }
+
+        long mergeQueueNanos() {
+            return Math.max(0, doneNanos - readyNanos());
+        }
+
+        /**
+         * The moment the last of the dependencies of the product was done
+         */
+        long readyNanos() {
+            return Math.max(databaseDoneNanos, Math.max(donePricesNanos(), doneStockLevelsNanos()));
+        }
+
+        Stage blockedBy() {
+            final var pricesNanos = donePricesNanos();
+            final var stockLevelsNanos = doneStockLevelsNanos();
+            if (databaseDoneNanos >= pricesNanos && databaseDoneNanos >= stockLevelsNanos) {
+                return Stage.DATABASE;
+            }
+            return pricesNanos >= stockLevelsNanos ? Stage.PRICE_SERVICE : Stage.STOCK_LEVEL_SERVICE;
+        }
+
+        private long donePricesNanos() {
+            return enriched && pricesDoneNanos != NOT_YET ? pricesDoneNanos : databaseDoneNanos;
+        }
+
+        private long doneStockLevelsNanos() {
+            return enriched && stockLevelsDoneNanos != NOT_YET ? stockLevelsDoneNanos : databaseDoneNanos;
+        }
+
+        private AttributeValue micros(final long nanos) {
+            return AttributeValue.longAttributeValue(TimeUnit.NANOSECONDS.toMicros(nanos));
+        }
+    }
+}
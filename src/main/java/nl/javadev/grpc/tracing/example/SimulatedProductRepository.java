@@ -0,0 +1,41 @@
+package nl.javadev.grpc.tracing.example;
+
+import io.opencensus.trace.Span;
+import io.vavr.concurrent.Future;
+import io.vavr.control.Option;
+import nl.javadev.grpc.tracing.util.FutureUtil;
+import nl.javadev.grpc.tracing.util.ServiceExecutors;
+import nl.javadev.grpc.tracing.util.TracingUtil;
+
+/**
+ * This repository fakes retrieving a product from the database.
+ * In a real system this would probably go through a DAO layer or via a different micro service.
+ */
+public class SimulatedProductRepository implements ProductRepository {
+
+    private final ServiceExecutors executors;
+
+    public SimulatedProductRepository(final ServiceExecutors executors) {
+        this.executors = executors;
+    }
+
+    @Override
+    public Future<Option<BasicProductData>> findById(final String productId, final Span span) {
+        // Not Future.fromCompletableFuture, which ignores the executor and continues on the default VAVR executor
+        return FutureUtil
+                .fromCompletableFuture(executors.getCpu(),
+                        // This callable will be executed asynchronously within a new span (by the executor for blocking work)
+                        TracingUtil.executeAsyncInNewChildSpan(span, "getProductFromDatabase",
+                                () -> {
+                                    // Add some latency
+                                    SleepUtil.sleepRandomly(20);
+                                    // Come up with a some simple product data
+                                    return new BasicProductData(productId, String.format("Description for product %s", productId));
+                                },
+                                executors.getBlocking())
+                )
+                // Wrap it in an option
+                // it's meaningless for this code, but in a real system the requested product might not exist
+                .map(Option::of);
+    }
+}
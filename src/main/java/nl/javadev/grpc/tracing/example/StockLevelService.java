@@ -4,10 +4,17 @@ import io.grpc.stub.StreamObserver;
 import nl.javadev.grpc.tracing.example.StockLevelServiceGrpc.StockLevelServiceImplBase;
 import nl.javadev.grpc.tracing.example.StockLevelServiceOuterClass.GetCurrentStockLevelForProductRequest;
 import nl.javadev.grpc.tracing.example.StockLevelServiceOuterClass.GetCurrentStockLevelForProductResponse;
+import nl.javadev.grpc.tracing.example.StockLevelServiceOuterClass.GetCurrentStockLevelsForProductsRequest;
+import nl.javadev.grpc.tracing.example.StockLevelServiceOuterClass.GetCurrentStockLevelsForProductsResponse;
+import nl.javadev.grpc.tracing.example.StockLevelServiceOuterClass.ProductStockLevel;
 import nl.javadev.grpc.tracing.util.TracingUtil;
 
+import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 import java.util.Random;
+import java.util.function.Function;
+import java.util.stream.Collectors;
 
 /**
  * The StockLevel service retrieves the stock level from a legacy Warehousing system.
@@ -34,6 +41,32 @@ public class StockLevelService extends StockLevelServiceImplBase {
         }
     }
 
+    @Override
+    public void getCurrentStockLevelsForProducts(final GetCurrentStockLevelsForProductsRequest request,
+                                                 final StreamObserver<GetCurrentStockLevelsForProductsResponse> responseObserver) {
+
+        try {
+            // All products of the batch are looked up with a single call (and thus a single span)
+            final var optionalLevels = getStockLevelsFromWarehouseManagementSystem(request.getProductIdsList());
+
+            final var responseBuilder = GetCurrentStockLevelsForProductsResponse.newBuilder();
+
+            request.getProductIdsList().forEach(productId -> {
+                final var optionalLevel = optionalLevels.getOrDefault(productId, Optional.empty());
+                final var stockLevelBuilder = ProductStockLevel.newBuilder()
+                        .setProductId(productId)
+                        .setCouldBeDetermined(optionalLevel.isPresent());
+                optionalLevel.ifPresent(stockLevelBuilder::setStockLevel);
+                responseBuilder.addStockLevels(stockLevelBuilder);
+            });
+
+            responseObserver.onNext(responseBuilder.build());
+            responseObserver.onCompleted();
+        } catch (Exception ex) {
+            responseObserver.onError(ex);
+        }
+    }
+
     /**
      * This method fakes a call to a third party system
      */
@@ -47,4 +80,19 @@ public class StockLevelService extends StockLevelServiceImplBase {
                 }
         ).call();
     }
+
+    /**
+     * This method fakes a call to a third party system that is able to look up the stock levels of multiple products at once
+     */
+    private Map<String, Optional<Integer>> getStockLevelsFromWarehouseManagementSystem(final List<String> productIds) throws Exception {
+        return TracingUtil.wrapInNewChildSpan("getStockLevelsFromWarehouseManagementSystem", () -> {
+                    // Add some latency, only once for the whole batch
+                    SleepUtil.sleepRandomly(20);
+                    final var random = new Random();
+                    return productIds.stream()
+                            .distinct()
+                            .collect(Collectors.toMap(Function.identity(), productId -> Optional.of(random.nextInt(500))));
+                }
+        ).call();
+    }
 }
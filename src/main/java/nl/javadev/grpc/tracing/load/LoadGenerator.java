@@ -0,0 +1,140 @@
+package nl.javadev.grpc.tracing.load;
+
+import io.grpc.Channel;
+import io.grpc.stub.StreamObserver;
+import io.opencensus.common.Scope;
+import io.opencensus.trace.Status;
+import io.opencensus.trace.Tracing;
+import nl.javadev.grpc.tracing.example.GatewayServiceGrpc;
+import nl.javadev.grpc.tracing.example.GatewayServiceGrpc.GatewayServiceStub;
+import nl.javadev.grpc.tracing.example.GatewayServiceOuterClass.GetProductsRequest;
+import nl.javadev.grpc.tracing.example.GatewayServiceOuterClass.GetProductsResponse;
+import nl.javadev.grpc.tracing.util.TracingUtil;
+
+import java.util.Random;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Sends requests for products to the Gateway service, either closed-loop (a fixed number of outstanding requests)
+ * or open-loop (a fixed rate of requests), and records their latencies.
+ * <p>
+ * When sending open-loop the latency is measured from the moment the request should have been sent,
+ * so a slow service also shows up in the latencies of the requests that had to wait (no coordinated omission).
+ */
+public class LoadGenerator {
+
+    private final LoadGeneratorConfig config;
+    private final ProductIdDistribution productIdDistribution;
+    private final Random random = new Random();
+
+    // Requests that are started from this moment on are recorded
+    private volatile long recordingStartNanos = Long.MAX_VALUE;
+
+    public LoadGenerator(final LoadGeneratorConfig config) {
+        this.config = config;
+        this.productIdDistribution = ProductIdDistribution.forConfig(config);
+    }
+
+    /**
+     * Whether the warm-up is over, so calls should be recorded
+     */
+    public boolean isRecording() {
+        return System.nanoTime() >= recordingStartNanos;
+    }
+
+    public LoadReport run(final Channel gatewayServiceChannel) throws InterruptedException {
+        final var gatewayServiceClient = GatewayServiceGrpc.newStub(gatewayServiceChannel);
+        final var clientStats = new ServiceStats("client");
+        final var outstandingRequests = new Semaphore(config.getConcurrency());
+
+        final var startNanos = System.nanoTime();
+        recordingStartNanos = startNanos + TimeUnit.SECONDS.toNanos(config.getWarmUpSeconds());
+        final var endNanos = recordingStartNanos + TimeUnit.SECONDS.toNanos(config.getDurationSeconds());
+        final var intervalNanos = config.getRequestsPerSecond() > 0
+                ? (long) (TimeUnit.SECONDS.toNanos(1) / config.getRequestsPerSecond())
+                : 0;
+
+        var nrOfRequests = 0L;
+        while (true) {
+            final long intendedStartNanos;
+            if (intervalNanos > 0) {
+                // Open-loop: the requests are started on a fixed schedule, regardless of the responses
+                intendedStartNanos = startNanos + nrOfRequests * intervalNanos;
+                waitUntil(intendedStartNanos);
+                outstandingRequests.acquire();
+            } else {
+                // Closed-loop: a new request is started as soon as a previous request has completed
+                outstandingRequests.acquire();
+                intendedStartNanos = System.nanoTime();
+            }
+
+            if (intendedStartNanos >= endNanos) {
+                outstandingRequests.release();
+                break;
+            }
+
+            sendRequest(gatewayServiceClient, intendedStartNanos >= recordingStartNanos ? clientStats : null,
+                    intendedStartNanos, outstandingRequests::release);
+            nrOfRequests++;
+        }
+
+        // Wait for the outstanding requests to complete
+        outstandingRequests.tryAcquire(config.getConcurrency(), 30, TimeUnit.SECONDS);
+        final var measuredNanos = Math.max(1, Math.min(System.nanoTime(), endNanos) - recordingStartNanos);
+        recordingStartNanos = Long.MAX_VALUE;
+
+        return new LoadReport(measuredNanos / (double) TimeUnit.SECONDS.toNanos(1), clientStats);
+    }
+
+    private static void waitUntil(final long nanos) {
+        var remainingNanos = nanos - System.nanoTime();
+        while (remainingNanos > 0) {
+            LockSupport.parkNanos(remainingNanos);
+            remainingNanos = nanos - System.nanoTime();
+        }
+    }
+
+    /**
+     * @param stats where the result of the request is recorded, or null when it should not be recorded
+     */
+    private void sendRequest(final GatewayServiceStub gatewayServiceClient,
+                             final ServiceStats stats,
+                             final long intendedStartNanos,
+                             final Runnable onCompleted) {
+        final var request = GetProductsRequest.newBuilder();
+        for (int i = 0; i < config.getBatchSize(); i++) {
+            request.addProductIds(productIdDistribution.nextProductId(random));
+        }
+
+        // Every request is the start of a new trace, the client call picks up the span when it is started
+        final var span = TracingUtil.startNewParentSamplingSpan("loadGenerator");
+        try (Scope ignored = Tracing.getTracer().withSpan(span)) {
+            gatewayServiceClient.getProducts(request.build(), new StreamObserver<>() {
+                @Override
+                public void onNext(final GetProductsResponse response) {
+                }
+
+                @Override
+                public void onError(final Throwable throwable) {
+                    if (stats != null) {
+                        stats.recordError(System.nanoTime() - intendedStartNanos);
+                    }
+                    span.setStatus(Status.UNKNOWN.withDescription(throwable.getMessage()));
+                    span.end();
+                    onCompleted.run();
+                }
+
+                @Override
+                public void onCompleted() {
+                    if (stats != null) {
+                        stats.recordSuccess(System.nanoTime() - intendedStartNanos);
+                    }
+                    span.end();
+                    onCompleted.run();
+                }
+            });
+        }
+    }
+}
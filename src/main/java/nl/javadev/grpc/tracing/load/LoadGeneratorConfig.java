@@ -0,0 +1,91 @@
+package nl.javadev.grpc.tracing.load;
+
+import lombok.Builder;
+import lombok.Value;
+
+/**
+ * Options of the {@link LoadGenerator}
+ */
+@Value
+@Builder
+public class LoadGeneratorConfig {
+
+    /**
+     * Where the requests are sent to
+     */
+    @Builder.Default
+    private Target target = Target.IN_PROCESS;
+
+    /**
+     * The number of requests that are outstanding at the same time at most
+     */
+    @Builder.Default
+    private int concurrency = 16;
+
+    /**
+     * The number of requests that are started per second, regardless of how fast the responses come in (open-loop).
+     * With 0 every worker sends its next request as soon as it received the previous response (closed-loop).
+     */
+    @Builder.Default
+    private double requestsPerSecond = 0;
+
+    /**
+     * How long the load is generated, after the warm-up
+     */
+    @Builder.Default
+    private long durationSeconds = 30;
+
+    /**
+     * How long the load is generated before the latencies are recorded
+     */
+    @Builder.Default
+    private long warmUpSeconds = 5;
+
+    /**
+     * The number of products that is requested per request
+     */
+    @Builder.Default
+    private int batchSize = 3;
+
+    /**
+     * The number of distinct products that can be requested (ids 1 to nrOfProducts)
+     */
+    @Builder.Default
+    private int nrOfProducts = 1_000;
+
+    /**
+     * How the requested products are picked
+     */
+    @Builder.Default
+    private Distribution distribution = Distribution.UNIFORM;
+
+    /**
+     * The exponent of the Zipf distribution, the higher the more the requests are skewed to the most popular products
+     */
+    @Builder.Default
+    private double zipfExponent = 1.0;
+
+    /**
+     * The number of instances of the Price and Stock level service that are started (only with target {@link Target#LOCALHOST})
+     */
+    @Builder.Default
+    private int downstreamInstances = 1;
+
+    public enum Target {
+        // All services run in this JVM and are connected through in-process channels
+        IN_PROCESS,
+        // All services run in this JVM, but listen on (random) localhost ports
+        LOCALHOST,
+        // The separately started services (see the Run...Server classes)
+        REMOTE
+    }
+
+    public enum Distribution {
+        UNIFORM,
+        ZIPF
+    }
+
+    public static LoadGeneratorConfig defaults() {
+        return LoadGeneratorConfig.builder().build();
+    }
+}
@@ -0,0 +1,46 @@
+package nl.javadev.grpc.tracing.load;
+
+import lombok.Value;
+
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+
+/**
+ * The results of a load test
+ */
+@Value
+public class LoadReport {
+
+    private final double measuredSeconds;
+
+    // The latencies as seen by the load generator, i.e. including the time spent in the queue when sending open-loop
+    private final ServiceStats clientStats;
+
+    /**
+     * Prints the latency percentiles, throughput and error rate of the client and of every service
+     *
+     * @param serviceStats the stats recorded by the services themselves (empty when the services run remotely)
+     */
+    public void print(final PrintStream out, final Collection<ServiceStats> serviceStats) {
+        final var allStats = new ArrayList<ServiceStats>();
+        allStats.add(clientStats);
+        serviceStats.stream()
+                .sorted(Comparator.comparing(ServiceStats::getServiceName))
+                .forEach(allStats::add);
+
+        out.println(String.format("%nMeasured for %.1f seconds%n", measuredSeconds));
+        out.println(String.format("%-55s %9s %8s %7s %9s %9s %9s %9s %9s %9s",
+                "service", "calls", "errors", "error%", "calls/s", "p50 ms", "p90 ms", "p99 ms", "p99.9 ms", "max ms"));
+        allStats.forEach(stats -> {
+            final var latencies = stats.getLatencies();
+            out.println(String.format("%-55s %9d %8d %7.2f %9.1f %9.2f %9.2f %9.2f %9.2f %9.2f",
+                    stats.getServiceName(), stats.getCount(), stats.getErrors(), stats.getErrorRate() * 100,
+                    stats.getCount() / measuredSeconds,
+                    latencies.percentileMillis(50), latencies.percentileMillis(90),
+                    latencies.percentileMillis(99), latencies.percentileMillis(99.9),
+                    latencies.getMaxNanos() / 1_000_000d));
+        });
+    }
+}
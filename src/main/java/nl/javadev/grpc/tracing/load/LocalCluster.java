@@ -0,0 +1,189 @@
+package nl.javadev.grpc.tracing.load;
+
+import io.grpc.BindableService;
+import io.grpc.ManagedChannel;
+import io.grpc.Server;
+import io.grpc.ServerBuilder;
+import io.grpc.ServerInterceptor;
+import io.grpc.ServerInterceptors;
+import io.grpc.inprocess.InProcessChannelBuilder;
+import io.grpc.inprocess.InProcessServerBuilder;
+import lombok.Getter;
+import nl.javadev.grpc.tracing.example.GatewayService;
+import nl.javadev.grpc.tracing.example.PriceService;
+import nl.javadev.grpc.tracing.example.ProductService;
+import nl.javadev.grpc.tracing.example.ProductServiceConfig;
+import nl.javadev.grpc.tracing.example.StockLevelService;
+import nl.javadev.grpc.tracing.load.LoadGeneratorConfig.Target;
+import nl.javadev.grpc.tracing.util.ChannelConfig;
+import nl.javadev.grpc.tracing.util.Channels;
+import nl.javadev.grpc.tracing.util.ConcurrencyLimitConfig;
+import nl.javadev.grpc.tracing.util.ConcurrencyLimitServerInterceptor;
+import nl.javadev.grpc.tracing.util.ExecutionMode;
+import nl.javadev.grpc.tracing.util.ForcedSamplingServerInterceptor;
+import nl.javadev.grpc.tracing.util.InFlightCalls;
+import nl.javadev.grpc.tracing.util.ServiceExecutors;
+import nl.javadev.grpc.tracing.util.TracePropagation;
+import nl.javadev.grpc.tracing.util.VirtualThreads;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Function;
+
+/**
+ * All four services running in this JVM, wired together the same way as when they are started separately
+ */
+public class LocalCluster implements AutoCloseable {
+
+    private final Target target;
+    private final int downstreamInstances;
+    private final List<ServerInterceptor> interceptors;
+    private final boolean withGateway;
+    private final List<Server> servers = new ArrayList<>();
+    private final List<ManagedChannel> channels = new ArrayList<>();
+    private final List<ServiceExecutors> executors = new ArrayList<>();
+
+    @Getter
+    private ManagedChannel productServiceChannel;
+
+    // Null when the cluster was started without the Gateway service
+    @Getter
+    private ManagedChannel gatewayServiceChannel;
+
+    private LocalCluster(final Target target, final int downstreamInstances, final List<ServerInterceptor> interceptors,
+                         final boolean withGateway) {
+        this.target = target;
+        this.downstreamInstances = downstreamInstances;
+        this.interceptors = interceptors;
+        this.withGateway = withGateway;
+    }
+
+    /**
+     * Starts the services, connected through in-process channels or listening on random localhost ports
+     *
+     * @param interceptor added to every service, e.g. to record the latencies per service
+     */
+    public static LocalCluster start(final Target target, final ServerInterceptor interceptor) throws IOException {
+        return start(target, 1, interceptor);
+    }
+
+    /**
+     * Starts the services, with several instances of the Price and Stock level service,
+     * over which the Product service spreads its calls (see {@link Channels#forAddresses(String, ChannelConfig)})
+     *
+     * @param downstreamInstances the number of instances of the Price and Stock level service,
+     *                            more than one is only possible when the services listen on localhost ports
+     */
+    public static LocalCluster start(final Target target, final int downstreamInstances,
+                                     final ServerInterceptor interceptor) throws IOException {
+        if (target == Target.REMOTE) {
+            throw new IllegalArgumentException("The services of a local cluster cannot run remotely");
+        }
+        if (downstreamInstances < 1 || (downstreamInstances > 1 && target != Target.LOCALHOST)) {
+            throw new IllegalArgumentException(String.format(
+                    "%s instances of the downstream services cannot be started for target: %s", downstreamInstances, target));
+        }
+
+        return start(new LocalCluster(target, downstreamInstances, List.of(interceptor), true));
+    }
+
+    /**
+     * Starts the Product, Price and Stock level service, connected through in-process channels, but not the Gateway service.
+     * The Gateway service can then be started as a regular server that calls the Product service over {@link #getProductServiceChannel()},
+     * so that all four services run in one JVM without any network hops between them
+     */
+    public static LocalCluster startWithoutGateway() throws IOException {
+        return start(new LocalCluster(Target.IN_PROCESS, 1, List.of(), false));
+    }
+
+    private static LocalCluster start(final LocalCluster cluster) throws IOException {
+        try {
+            cluster.startServices();
+        } catch (IOException | RuntimeException e) {
+            cluster.close();
+            throw e;
+        }
+        return cluster;
+    }
+
+    private void startServices() throws IOException {
+        final var priceServiceChannel = startServers("priceService", "productService", downstreamInstances,
+                instanceName -> new PriceService(createExecutors(instanceName)));
+        final var stockLevelServiceChannel = startServers("stockLevelService", "productService", downstreamInstances,
+                instanceName -> new StockLevelService());
+
+        final var productServiceExecutors = createExecutors("productService");
+        final var productServiceConfig = ProductServiceConfig.fromSystemProperties();
+        productServiceChannel = startServers("productService", "gatewayService", 1,
+                instanceName -> new ProductService(instanceName, priceServiceChannel, stockLevelServiceChannel, productServiceConfig,
+                        productServiceExecutors, ProductService.createProductRepository(instanceName, productServiceConfig, productServiceExecutors)));
+
+        if (withGateway) {
+            gatewayServiceChannel = startServers("gatewayService", "loadGenerator", 1,
+                    instanceName -> GatewayService.create(productServiceChannel, GatewayService.passThroughFromSystemProperties()));
+        }
+    }
+
+    private ServiceExecutors createExecutors(final String serviceName) {
+        final var serviceExecutors = ServiceExecutors.fromSystemProperties(serviceName);
+        executors.add(serviceExecutors);
+        return serviceExecutors;
+    }
+
+    /**
+     * Starts the instances of the service and returns a channel to them,
+     * configured like the channels of the calling service (see {@link ChannelConfig#fromSystemProperties(String)})
+     *
+     * @param service creates the service for the name of an instance, e.g. priceService-2 (used to name its metrics)
+     */
+    private ManagedChannel startServers(final String serviceName, final String callingServiceName, final int instances,
+                                        final Function<String, BindableService> service) throws IOException {
+        if (target == Target.IN_PROCESS) {
+            final var inProcessName = String.format("%s-%s", serviceName, InProcessServerBuilder.generateName());
+            startServer(serviceName, serviceName, InProcessServerBuilder.forName(inProcessName), service);
+            final var channel = Channels.configure(InProcessChannelBuilder.forName(inProcessName)).build();
+            channels.add(channel);
+            return channel;
+        }
+
+        final List<String> addresses = new ArrayList<>();
+        for (int i = 0; i < instances; i++) {
+            final var instanceName = instances > 1 ? String.format("%s-%s", serviceName, i + 1) : serviceName;
+            final var server = startServer(serviceName, instanceName, ServerBuilder.forPort(0), service);
+            addresses.add(String.format("localhost:%s", server.getPort()));
+        }
+        final var channel = Channels.forAddresses(String.join(",", addresses), ChannelConfig.fromSystemProperties(callingServiceName));
+        channels.add(channel);
+        return channel;
+    }
+
+    private Server startServer(final String serviceName, final String instanceName, final ServerBuilder<?> serverBuilder,
+                               final Function<String, BindableService> service) throws IOException {
+        // Handle the calls in the same way as the separately started services do
+        if (ExecutionMode.fromSystemProperties() == ExecutionMode.VIRTUAL) {
+            serverBuilder.executor(VirtualThreads.newVirtualThreadPerTaskExecutor(String.format("%s-handler", instanceName)));
+        }
+
+        serverBuilder.intercept(new ForcedSamplingServerInterceptor());
+        serverBuilder.intercept(InFlightCalls.serverInterceptor());
+        Channels.permitKeepAlive(serverBuilder, ChannelConfig.defaults().getKeepAliveTimeMillis());
+        final var concurrencyLimitConfig = ConcurrencyLimitConfig.fromSystemProperties(serviceName);
+        if (concurrencyLimitConfig.isEnabled()) {
+            serverBuilder.intercept(new ConcurrencyLimitServerInterceptor(instanceName, concurrencyLimitConfig));
+        }
+        final var server = TracePropagation.install(serverBuilder)
+                .addService(ServerInterceptors.intercept(service.apply(instanceName), interceptors))
+                .build()
+                .start();
+        servers.add(server);
+        return server;
+    }
+
+    @Override
+    public void close() {
+        channels.forEach(ManagedChannel::shutdownNow);
+        servers.forEach(Server::shutdownNow);
+        executors.forEach(ServiceExecutors::shutdown);
+    }
+}
@@ -0,0 +1,36 @@
+package nl.javadev.grpc.tracing.load;
+
+import java.util.Random;
+
+/**
+ * Picks the ids of the products to request, the ids are 1 to the number of products
+ */
+public interface ProductIdDistribution {
+
+    String nextProductId(Random random);
+
+    /**
+     * Every product is requested equally often
+     */
+    static ProductIdDistribution uniform(final int nrOfProducts) {
+        return random -> String.valueOf(random.nextInt(nrOfProducts) + 1);
+    }
+
+    /**
+     * A few products are requested very often and most products rarely, like in a real shop
+     */
+    static ProductIdDistribution zipf(final int nrOfProducts, final double exponent) {
+        return new ZipfDistribution(nrOfProducts, exponent);
+    }
+
+    static ProductIdDistribution forConfig(final LoadGeneratorConfig config) {
+        switch (config.getDistribution()) {
+            case UNIFORM:
+                return uniform(config.getNrOfProducts());
+            case ZIPF:
+                return zipf(config.getNrOfProducts(), config.getZipfExponent());
+            default:
+                throw new IllegalArgumentException(String.format("Unknown distribution: %s", config.getDistribution()));
+        }
+    }
+}
@@ -0,0 +1,59 @@
+package nl.javadev.grpc.tracing.load;
+
+import io.grpc.ForwardingServerCall.SimpleForwardingServerCall;
+import io.grpc.Metadata;
+import io.grpc.MethodDescriptor;
+import io.grpc.ServerCall;
+import io.grpc.ServerCallHandler;
+import io.grpc.ServerInterceptor;
+import io.grpc.Status;
+
+import java.util.Collection;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Records the latency and status of every call handled by the servers it is added to, per service
+ */
+public class ServerStatsInterceptor implements ServerInterceptor {
+
+    private final ConcurrentMap<String, ServiceStats> statsByServiceName = new ConcurrentHashMap<>();
+
+    // Calls are only recorded while this returns true (e.g. not during the warm-up)
+    private final BooleanSupplier recording;
+
+    public ServerStatsInterceptor(final BooleanSupplier recording) {
+        this.recording = recording;
+    }
+
+    @Override
+    public <ReqT, RespT> ServerCall.Listener<ReqT> interceptCall(final ServerCall<ReqT, RespT> call,
+                                                                 final Metadata headers,
+                                                                 final ServerCallHandler<ReqT, RespT> next) {
+        final var serviceName = MethodDescriptor.extractFullServiceName(call.getMethodDescriptor().getFullMethodName());
+        final var startNanos = System.nanoTime();
+        // Only the calls that are started after the warm-up are recorded
+        if (!recording.getAsBoolean()) {
+            return next.startCall(call, headers);
+        }
+
+        return next.startCall(new SimpleForwardingServerCall<>(call) {
+            @Override
+            public void close(final Status status, final Metadata trailers) {
+                final var stats = statsByServiceName.computeIfAbsent(serviceName, ServiceStats::new);
+                final var latencyNanos = System.nanoTime() - startNanos;
+                if (status.isOk()) {
+                    stats.recordSuccess(latencyNanos);
+                } else {
+                    stats.recordError(latencyNanos);
+                }
+                super.close(status, trailers);
+            }
+        }, headers);
+    }
+
+    public Collection<ServiceStats> getStats() {
+        return statsByServiceName.values();
+    }
+}
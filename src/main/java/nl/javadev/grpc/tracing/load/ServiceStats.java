@@ -0,0 +1,43 @@
+package nl.javadev.grpc.tracing.load;
+
+import lombok.Getter;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The latencies and number of failed calls of one service
+ */
+public class ServiceStats {
+
+    @Getter
+    private final String serviceName;
+    @Getter
+    private final LatencyHistogram latencies = new LatencyHistogram();
+    private final LongAdder errors = new LongAdder();
+
+    public ServiceStats(final String serviceName) {
+        this.serviceName = serviceName;
+    }
+
+    public void recordSuccess(final long latencyNanos) {
+        latencies.record(latencyNanos);
+    }
+
+    public void recordError(final long latencyNanos) {
+        latencies.record(latencyNanos);
+        errors.increment();
+    }
+
+    public long getCount() {
+        return latencies.getCount();
+    }
+
+    public long getErrors() {
+        return errors.sum();
+    }
+
+    public double getErrorRate() {
+        final var count = getCount();
+        return count == 0 ? 0 : getErrors() / (double) count;
+    }
+}
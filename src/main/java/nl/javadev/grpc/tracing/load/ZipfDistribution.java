@@ -0,0 +1,37 @@
+package nl.javadev.grpc.tracing.load;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Product 1 is the most popular product, the popularity of product n is proportional to 1 / n^exponent
+ */
+class ZipfDistribution implements ProductIdDistribution {
+
+    // The cumulative probability of every product, to pick a product with a binary search
+    private final double[] cumulativeProbabilities;
+
+    ZipfDistribution(final int nrOfProducts, final double exponent) {
+        if (nrOfProducts < 1) {
+            throw new IllegalArgumentException(String.format("The number of products must be at least 1, but was %s", nrOfProducts));
+        }
+
+        cumulativeProbabilities = new double[nrOfProducts];
+        var sum = 0d;
+        for (int i = 0; i < nrOfProducts; i++) {
+            sum += 1 / Math.pow(i + 1, exponent);
+            cumulativeProbabilities[i] = sum;
+        }
+        for (int i = 0; i < nrOfProducts; i++) {
+            cumulativeProbabilities[i] /= sum;
+        }
+    }
+
+    @Override
+    public String nextProductId(final Random random) {
+        final var index = Arrays.binarySearch(cumulativeProbabilities, random.nextDouble());
+        // When not found the binary search returns (-(insertion point) - 1)
+        final var productIndex = index >= 0 ? index : -index - 1;
+        return String.valueOf(Math.min(productIndex, cumulativeProbabilities.length - 1) + 1);
+    }
+}
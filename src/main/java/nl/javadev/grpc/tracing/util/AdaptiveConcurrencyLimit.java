@@ -0,0 +1,122 @@
+package nl.javadev.grpc.tracing.util;
+
+import nl.javadev.grpc.tracing.util.ConcurrencyLimitConfig.Algorithm;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The number of calls that a server handles at the same time at most, adjusted to the latency of the calls.
+ * <p>
+ * Once a server is saturated, more concurrent calls do not increase its throughput, they only queue up and take longer.
+ * So the limit is lowered when the calls take longer than usual (or time out), and raised again when they don't.
+ * A call that does not fit within the limit is rejected right away, which is cheaper for both the server and the caller
+ * than a call that waits until its deadline.
+ */
+public class AdaptiveConcurrencyLimit {
+
+    // Until this many calls have completed, the latency is not known well enough to judge whether a call can still make its deadline
+    private static final int MIN_SAMPLES = 20;
+    // The weight of a latency in the recent latency (the average of roughly the last 10 calls)
+    private static final double SHORT_WINDOW_WEIGHT = 2.0 / 11;
+
+    private final ConcurrencyLimitConfig config;
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final double longWindowWeight;
+
+    // Guarded by this, the limit, the long-term latency and the number of samples are also read without the lock
+    private volatile double limit;
+    private volatile double longLatencyNanos;
+    private double shortLatencyNanos;
+    private volatile long samples;
+
+    public AdaptiveConcurrencyLimit(final ConcurrencyLimitConfig config) {
+        if (config.getMinLimit() < 1 || config.getMinLimit() > config.getMaxLimit()) {
+            throw new IllegalArgumentException(String.format("The limit must be between 1 and %s, but the minimum was %s",
+                    config.getMaxLimit(), config.getMinLimit()));
+        }
+        this.config = config;
+        this.longWindowWeight = 2.0 / (config.getLongWindow() + 1);
+        this.limit = Math.max(config.getMinLimit(), Math.min(config.getMaxLimit(), config.getInitialLimit()));
+    }
+
+    /**
+     * Takes a slot for a call, when one is available.
+     * A late call (see {@link #isLate(long)}) may only take the share of the limit that is meant for late calls
+     *
+     * @return whether the call may be handled, in which case {@link #release} has to be called when it has completed
+     */
+    public boolean tryAcquire(final boolean late) {
+        final var available = late ? getLimit() * config.getLateCallsShare() : getLimit();
+        while (true) {
+            final var current = inFlight.get();
+            if (current >= available) {
+                return false;
+            }
+            if (inFlight.compareAndSet(current, current + 1)) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Whether a call with this much time left cannot be answered in time anymore, as calls usually take longer than that
+     */
+    public boolean isLate(final long timeRemainingNanos) {
+        return timeRemainingNanos <= 0 || (samples >= MIN_SAMPLES && timeRemainingNanos < longLatencyNanos);
+    }
+
+    /**
+     * Frees the slot of a call and adjusts the limit to how long it took
+     *
+     * @param dropped whether the call failed because it took too long or something downstream was overloaded
+     * @return the limit after the adjustment
+     */
+    public int release(final long latencyNanos, final boolean dropped) {
+        // Whether the calls were limited by this limit, or simply too few calls came in to say anything about it
+        final var saturated = inFlight.getAndDecrement() * 2 >= limit;
+        synchronized (this) {
+            samples++;
+            shortLatencyNanos = samples == 1 ? latencyNanos : shortLatencyNanos + SHORT_WINDOW_WEIGHT * (latencyNanos - shortLatencyNanos);
+            longLatencyNanos = samples == 1 ? latencyNanos : longLatencyNanos + longWindowWeight * (latencyNanos - longLatencyNanos);
+
+            final double newLimit;
+            if (config.getAlgorithm() == Algorithm.AIMD) {
+                if (dropped || latencyNanos > TimeUnit.MILLISECONDS.toNanos(config.getLatencyThresholdMillis())) {
+                    newLimit = limit * config.getBackoffRatio();
+                } else {
+                    newLimit = saturated ? limit + 1 : limit;
+                }
+            } else {
+                newLimit = gradientLimit(saturated);
+            }
+            limit = Math.max(config.getMinLimit(), Math.min(config.getMaxLimit(), newLimit));
+            return getLimit();
+        }
+    }
+
+    /**
+     * Calculates the limit as the current limit times the ratio of the long-term and the recent latency,
+     * plus some room for calls to queue up (the square root of the limit) so the limit can grow
+     */
+    private double gradientLimit(final boolean saturated) {
+        if (longLatencyNanos / shortLatencyNanos > 2) {
+            // The latency has dropped a lot (e.g. after an overload), let the long-term latency catch up faster
+            longLatencyNanos *= 0.95;
+        }
+        if (!saturated) {
+            return limit;
+        }
+        final var gradient = Math.max(0.5, Math.min(1.0, config.getLatencyTolerance() * longLatencyNanos / shortLatencyNanos));
+        final var newLimit = limit * gradient + Math.sqrt(limit);
+        return limit * (1 - config.getSmoothing()) + newLimit * config.getSmoothing();
+    }
+
+    public int getLimit() {
+        return (int) limit;
+    }
+
+    public int getInFlight() {
+        return inFlight.get();
+    }
+}
@@ -0,0 +1,81 @@
+package nl.javadev.grpc.tracing.util;
+
+import io.opencensus.trace.TraceId;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Samples new traces with a probability that is adjusted every second,
+ * so that on average the target number of traces per second is sampled.
+ * Unlike the {@link RateLimitingSampler} the sampled traces are spread evenly over the requests,
+ * instead of sampling the first requests of every second.
+ * Until the probability has caught up with a sudden increase of requests, no more than the target is sampled per second.
+ */
+public class AdaptiveSampler extends HeadSampler {
+
+    private static final long ADJUST_INTERVAL_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+    // How much the most recent interval counts when determining the request rate
+    private static final double SMOOTHING = 0.5;
+
+    private final double targetTracesPerSecond;
+
+    private final AtomicLong newTracesInInterval = new AtomicLong();
+    private final AtomicLong sampledTracesInInterval = new AtomicLong();
+    private final AtomicLong nextAdjustNanos;
+    private volatile double newTracesPerSecond = -1;
+    private volatile double probability = 1;
+
+    public AdaptiveSampler(final double targetTracesPerSecond) {
+        if (targetTracesPerSecond < 0) {
+            throw new IllegalArgumentException(String.format("The target traces per second cannot be negative, but was %s",
+                    targetTracesPerSecond));
+        }
+        this.targetTracesPerSecond = targetTracesPerSecond;
+        this.nextAdjustNanos = new AtomicLong(System.nanoTime() + ADJUST_INTERVAL_NANOS);
+    }
+
+    @Override
+    protected boolean shouldSampleNewTrace(final TraceId traceId) {
+        newTracesInInterval.incrementAndGet();
+        adjustProbabilityWhenDue();
+
+        // The same way as the probability sampler: based on the trace id, so the decision is the same everywhere
+        final var currentProbability = probability;
+        final var sample = currentProbability >= 1
+                || Math.abs(traceId.getLowerLong()) < (long) (currentProbability * Long.MAX_VALUE);
+        return sample && sampledTracesInInterval.incrementAndGet() <= Math.max(1, targetTracesPerSecond);
+    }
+
+    private void adjustProbabilityWhenDue() {
+        final var nowNanos = System.nanoTime();
+        final var adjustNanos = nextAdjustNanos.get();
+        // Only one thread adjusts the probability
+        if (nowNanos < adjustNanos || !nextAdjustNanos.compareAndSet(adjustNanos, nowNanos + ADJUST_INTERVAL_NANOS)) {
+            return;
+        }
+
+        final var intervalSeconds = (nowNanos - adjustNanos + ADJUST_INTERVAL_NANOS) / (double) TimeUnit.SECONDS.toNanos(1);
+        final var observedPerSecond = newTracesInInterval.getAndSet(0) / intervalSeconds;
+        sampledTracesInInterval.set(0);
+        final var smoothedPerSecond = newTracesPerSecond < 0
+                ? observedPerSecond
+                : SMOOTHING * observedPerSecond + (1 - SMOOTHING) * newTracesPerSecond;
+
+        newTracesPerSecond = smoothedPerSecond;
+        probability = smoothedPerSecond <= targetTracesPerSecond ? 1 : targetTracesPerSecond / smoothedPerSecond;
+    }
+
+    /**
+     * @return the probability with which new traces are currently sampled
+     */
+    public double getProbability() {
+        return probability;
+    }
+
+    @Override
+    public String getDescription() {
+        return String.format("AdaptiveSampler{%s}", targetTracesPerSecond);
+    }
+}
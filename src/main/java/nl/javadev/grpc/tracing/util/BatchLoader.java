@@ -0,0 +1,19 @@
+package nl.javadev.grpc.tracing.util;
+
+import io.opencensus.trace.Span;
+import io.vavr.collection.Map;
+import io.vavr.collection.Set;
+import io.vavr.concurrent.Future;
+
+/**
+ * Loads the values for a batch of keys at once, e.g. by calling a downstream service that supports batch lookups.
+ * Keys for which no value could be found are simply absent from the resulting map.
+ */
+@FunctionalInterface
+public interface BatchLoader<K, V> {
+
+    /**
+     * Loads the values for the given keys, the span is used as the parent for the span(s) of the lookup
+     */
+    Future<Map<K, V>> loadAll(Set<K> keys, Span span);
+}
@@ -0,0 +1,162 @@
+package nl.javadev.grpc.tracing.util;
+
+import io.opencensus.metrics.DerivedLongGauge;
+import io.opencensus.metrics.LabelKey;
+import io.opencensus.metrics.LabelValue;
+import io.opencensus.metrics.Metrics;
+import io.opencensus.trace.export.SpanData;
+import io.opencensus.trace.export.SpanExporter;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Queues the exported spans and passes them on to the delegate handler in batches, from its own thread.
+ * When the delegate cannot keep up the queue fills up and new spans are dropped (and counted),
+ * so a slow or unavailable tracing backend never holds up the threads that end spans.
+ */
+public class BatchingSpanExporterHandler extends SpanExporter.Handler implements AutoCloseable {
+
+    private static final Logger LOGGER = Logger.getLogger(BatchingSpanExporterHandler.class.getName());
+
+    private static final List<LabelKey> LABEL_KEYS = List.of(LabelKey.create("exporter", "Name of the exporter"));
+
+    private static final DerivedLongGauge QUEUED_SPANS = Metrics.getMetricRegistry().addDerivedLongGauge(
+            "exporter/queued_spans", "Number of spans waiting to be exported", "1", LABEL_KEYS);
+    private static final DerivedLongGauge EXPORTED_SPANS = Metrics.getMetricRegistry().addDerivedLongGauge(
+            "exporter/exported_spans", "Number of spans that were exported", "1", LABEL_KEYS);
+    private static final DerivedLongGauge DROPPED_SPANS = Metrics.getMetricRegistry().addDerivedLongGauge(
+            "exporter/dropped_spans", "Number of spans that were dropped because the queue was full", "1", LABEL_KEYS);
+    private static final DerivedLongGauge FAILED_SPANS = Metrics.getMetricRegistry().addDerivedLongGauge(
+            "exporter/failed_spans", "Number of spans that could not be exported because of an error", "1", LABEL_KEYS);
+
+    // How often the worker checks whether the handler is closed
+    private static final long POLL_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+
+    private final SpanExporter.Handler delegate;
+    private final int maxBatchSize;
+    private final long maxBatchDelayNanos;
+    private final BlockingQueue<SpanData> queue;
+    private final Thread worker;
+
+    private final AtomicLong exportedSpans = new AtomicLong();
+    private final AtomicLong droppedSpans = new AtomicLong();
+    private final AtomicLong failedSpans = new AtomicLong();
+
+    private volatile boolean closed;
+
+    /**
+     * @param name               used for the worker thread and as the label of the metrics
+     * @param queueCapacity      the maximum number of spans waiting to be exported
+     * @param maxBatchSize       the maximum number of spans passed on to the delegate at once
+     * @param maxBatchDelayMillis how long the first span of a batch waits for more spans at most
+     */
+    public BatchingSpanExporterHandler(final String name,
+                                       final SpanExporter.Handler delegate,
+                                       final int queueCapacity,
+                                       final int maxBatchSize,
+                                       final long maxBatchDelayMillis) {
+        this.delegate = delegate;
+        this.maxBatchSize = maxBatchSize;
+        this.maxBatchDelayNanos = TimeUnit.MILLISECONDS.toNanos(maxBatchDelayMillis);
+        this.queue = new ArrayBlockingQueue<>(queueCapacity);
+
+        final var labelValues = List.of(LabelValue.create(name));
+        QUEUED_SPANS.createTimeSeries(labelValues, queue, BlockingQueue::size);
+        EXPORTED_SPANS.createTimeSeries(labelValues, exportedSpans, AtomicLong::get);
+        DROPPED_SPANS.createTimeSeries(labelValues, droppedSpans, AtomicLong::get);
+        FAILED_SPANS.createTimeSeries(labelValues, failedSpans, AtomicLong::get);
+
+        this.worker = new Thread(this::exportBatches, String.format("%s-exporter", name));
+        worker.setDaemon(true);
+        worker.start();
+    }
+
+    @Override
+    public void export(final Collection<SpanData> spanDataList) {
+        spanDataList.forEach(spanData -> {
+            if (closed || !queue.offer(spanData)) {
+                droppedSpans.incrementAndGet();
+            }
+        });
+    }
+
+    private void exportBatches() {
+        final var batch = new ArrayList<SpanData>(maxBatchSize);
+        while (!closed || !queue.isEmpty()) {
+            try {
+                // Wait for the first span of the batch, then for more spans until the batch is full or the delay has passed
+                final var first = queue.poll(POLL_NANOS, TimeUnit.NANOSECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                final var deadlineNanos = System.nanoTime() + maxBatchDelayNanos;
+                // When closing the batch does not wait, so close() does not have to wait for the delay
+                while (batch.size() < maxBatchSize) {
+                    final var remainingNanos = deadlineNanos - System.nanoTime();
+                    if (remainingNanos <= 0 || closed) {
+                        queue.drainTo(batch, maxBatchSize - batch.size());
+                        break;
+                    }
+                    final var next = queue.poll(Math.min(remainingNanos, POLL_NANOS), TimeUnit.NANOSECONDS);
+                    if (next != null) {
+                        batch.add(next);
+                    }
+                }
+            } catch (InterruptedException e) {
+                // Closing, export what is left
+                queue.drainTo(batch);
+                closed = true;
+            }
+
+            exportBatch(batch);
+            batch.clear();
+        }
+    }
+
+    private void exportBatch(final List<SpanData> batch) {
+        if (batch.isEmpty()) {
+            return;
+        }
+        try {
+            delegate.export(batch);
+            exportedSpans.addAndGet(batch.size());
+        } catch (RuntimeException e) {
+            failedSpans.addAndGet(batch.size());
+            LOGGER.log(Level.WARNING, String.format("Failed to export %s spans", batch.size()), e);
+        }
+    }
+
+    public long getExportedSpans() {
+        return exportedSpans.get();
+    }
+
+    public long getDroppedSpans() {
+        return droppedSpans.get();
+    }
+
+    public long getFailedSpans() {
+        return failedSpans.get();
+    }
+
+    /**
+     * Exports the queued spans (waiting at most the given time) and stops the worker
+     */
+    public void close(final long timeoutMillis) throws InterruptedException {
+        closed = true;
+        worker.join(timeoutMillis);
+    }
+
+    @Override
+    public void close() throws InterruptedException {
+        close(TimeUnit.SECONDS.toMillis(5));
+    }
+}
@@ -0,0 +1,115 @@
+package nl.javadev.grpc.tracing.util;
+
+import io.opencensus.metrics.DerivedLongGauge;
+import io.opencensus.metrics.LabelKey;
+import io.opencensus.metrics.LabelValue;
+import io.opencensus.metrics.Metrics;
+
+import java.util.List;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A thread pool with a fixed number of named threads and a queue that is bounded at admission.
+ * <p>
+ * The tasks themselves are always queued: a task is often the continuation of a Future that has already been started,
+ * and neither rejecting it (the Future would never complete) nor running it on the submitting thread
+ * (which is usually in the middle of another continuation, so the continuations would nest until the stack overflows) is an option.
+ * Instead, new work is only started while the queue has room, see {@link #tryAdmit()}.
+ * The services reject the requests that are not admitted with <code>RESOURCE_EXHAUSTED</code>,
+ * and bound the number of tasks that a single request has queued at the same time,
+ * so the queue does not grow (much) beyond its capacity.
+ * <p>
+ * The queue depth, the number of active threads and the number of rejected admissions
+ * are exposed as OpenCensus gauges, labelled with the name of the executor.
+ */
+public class BoundedExecutor extends ThreadPoolExecutor {
+
+    private static final List<LabelKey> LABEL_KEYS = List.of(LabelKey.create("executor", "Name of the executor"));
+
+    private static final DerivedLongGauge QUEUE_DEPTH = Metrics.getMetricRegistry().addDerivedLongGauge(
+            "executor/queue_depth", "Number of tasks waiting in the queue of the executor", "1", LABEL_KEYS);
+    private static final DerivedLongGauge ACTIVE_THREADS = Metrics.getMetricRegistry().addDerivedLongGauge(
+            "executor/active_threads", "Number of threads of the executor that are executing a task", "1", LABEL_KEYS);
+    private static final DerivedLongGauge REJECTED_ADMISSIONS = Metrics.getMetricRegistry().addDerivedLongGauge(
+            "executor/rejected_admissions", "Number of requests that were not admitted because the queue was full", "1", LABEL_KEYS);
+
+    private final String name;
+    private final int queueCapacity;
+    private final AtomicLong rejectedAdmissions = new AtomicLong();
+
+    public BoundedExecutor(final String name, final int nrOfThreads, final int queueCapacity) {
+        super(nrOfThreads, nrOfThreads, 0, TimeUnit.MILLISECONDS,
+                new LinkedBlockingQueue<>(),
+                createThreadFactory(name));
+        if (queueCapacity < 1) {
+            throw new IllegalArgumentException(String.format("The queue capacity must be at least 1, but was %s", queueCapacity));
+        }
+        this.name = name;
+        this.queueCapacity = queueCapacity;
+
+        final var labelValues = List.of(LabelValue.create(name));
+        QUEUE_DEPTH.createTimeSeries(labelValues, this, BoundedExecutor::getQueueDepth);
+        ACTIVE_THREADS.createTimeSeries(labelValues, this, BoundedExecutor::getActiveCount);
+        REJECTED_ADMISSIONS.createTimeSeries(labelValues, rejectedAdmissions, AtomicLong::get);
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public int getQueueCapacity() {
+        return queueCapacity;
+    }
+
+    public long getQueueDepth() {
+        return getQueue().size();
+    }
+
+    /**
+     * Whether new work may be started, which is the case as long as the queue is not full.
+     * The work of an admitted request is still queued when the queue fills up in the meantime
+     */
+    public boolean tryAdmit() {
+        if (getQueueDepth() >= queueCapacity) {
+            rejectedAdmissions.incrementAndGet();
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * The number of times new work was not admitted because the queue was full
+     */
+    public long getRejectedAdmissionCount() {
+        return rejectedAdmissions.get();
+    }
+
+    @Override
+    protected void terminated() {
+        final var labelValues = List.of(LabelValue.create(name));
+        QUEUE_DEPTH.removeTimeSeries(labelValues);
+        ACTIVE_THREADS.removeTimeSeries(labelValues);
+        REJECTED_ADMISSIONS.removeTimeSeries(labelValues);
+        super.terminated();
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s[threads=%s, queueDepth=%s/%s, rejected=%s]",
+                name, getPoolSize(), getQueueDepth(), queueCapacity, getRejectedAdmissionCount());
+    }
+
+    private static ThreadFactory createThreadFactory(final String name) {
+        final var threadNumber = new AtomicInteger();
+        return runnable -> {
+            final var thread = new Thread(runnable, String.format("%s-%s", name, threadNumber.incrementAndGet()));
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+}
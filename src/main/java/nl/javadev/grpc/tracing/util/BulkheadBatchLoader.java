@@ -0,0 +1,88 @@
+package nl.javadev.grpc.tracing.util;
+
+import io.grpc.Status;
+import io.opencensus.metrics.DerivedLongGauge;
+import io.opencensus.metrics.LabelKey;
+import io.opencensus.metrics.LabelValue;
+import io.opencensus.metrics.Metrics;
+import io.opencensus.trace.AttributeValue;
+import io.opencensus.trace.Span;
+import io.vavr.collection.Map;
+import io.vavr.collection.Set;
+import io.vavr.concurrent.Future;
+import io.vavr.control.Try;
+
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Limits the number of lookups that are waiting for a downstream service at the same time.
+ * A lookup beyond the limit fails right away with <code>RESOURCE_EXHAUSTED</code>, so a slow downstream service
+ * cannot tie up an ever growing number of pending calls, and the memory of the other downstream services.
+ * <p>
+ * The lookups in flight and the rejected lookups are exposed as OpenCensus gauges,
+ * a rejected lookup is added as an annotation to the span of the lookup.
+ */
+public class BulkheadBatchLoader<K, V> implements BatchLoader<K, V> {
+
+    private static final List<LabelKey> LABEL_KEYS = List.of(LabelKey.create("loader", "Name of the bulkhead loader"));
+
+    private static final DerivedLongGauge IN_FLIGHT = Metrics.getMetricRegistry().addDerivedLongGauge(
+            "bulkhead/in_flight", "Number of lookups that are waiting for the downstream service", "1", LABEL_KEYS);
+    private static final DerivedLongGauge REJECTED_LOOKUPS = Metrics.getMetricRegistry().addDerivedLongGauge(
+            "bulkhead/rejected_lookups", "Number of lookups that failed right away because the bulkhead was full", "1", LABEL_KEYS);
+
+    private final String name;
+    private final BatchLoader<K, V> delegate;
+    private final int maxConcurrentLookups;
+    private final ExecutorService executor;
+
+    private final Semaphore permits;
+    private final AtomicLong rejectedLookups = new AtomicLong();
+
+    public BulkheadBatchLoader(final String name,
+                               final BatchLoader<K, V> delegate,
+                               final int maxConcurrentLookups,
+                               final ExecutorService executor) {
+        if (maxConcurrentLookups < 1) {
+            throw new IllegalArgumentException(String.format("The max concurrent lookups must be at least 1, but was %s", maxConcurrentLookups));
+        }
+        this.name = name;
+        this.delegate = delegate;
+        this.maxConcurrentLookups = maxConcurrentLookups;
+        this.executor = executor;
+        this.permits = new Semaphore(maxConcurrentLookups);
+
+        final var labelValues = List.of(LabelValue.create(name));
+        IN_FLIGHT.createTimeSeries(labelValues, this, BulkheadBatchLoader::getLookupsInFlight);
+        REJECTED_LOOKUPS.createTimeSeries(labelValues, rejectedLookups, AtomicLong::get);
+    }
+
+    @Override
+    public Future<Map<K, V>> loadAll(final Set<K> keys, final Span span) {
+        if (!permits.tryAcquire()) {
+            rejectedLookups.incrementAndGet();
+            span.addAnnotation("Bulkhead full, lookup not sent", java.util.Map.of(
+                    "bulkhead", AttributeValue.stringAttributeValue(name),
+                    "maxConcurrentLookups", AttributeValue.longAttributeValue(maxConcurrentLookups)));
+            return Future.failed(executor, Status.RESOURCE_EXHAUSTED
+                    .withDescription(String.format("The bulkhead %s is full", name))
+                    .asRuntimeException());
+        }
+
+        // The same future is returned, so cancelling it (e.g. by the hedging loader) still cancels the call
+        return Try.of(() -> delegate.loadAll(keys, span))
+                .getOrElseGet(failure -> Future.failed(executor, failure))
+                .onComplete(ignored -> permits.release());
+    }
+
+    public int getLookupsInFlight() {
+        return maxConcurrentLookups - permits.availablePermits();
+    }
+
+    public long getRejectedLookupCount() {
+        return rejectedLookups.get();
+    }
+}
@@ -0,0 +1,71 @@
+package nl.javadev.grpc.tracing.util;
+
+import io.opencensus.metrics.DerivedLongGauge;
+import io.opencensus.metrics.LabelKey;
+import io.opencensus.metrics.LabelValue;
+import io.opencensus.metrics.Metrics;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The counters of a cache, exposed as OpenCensus gauges labelled with the name of the cache
+ */
+public class CacheMetrics {
+
+    private static final List<LabelKey> LABEL_KEYS = List.of(LabelKey.create("cache", "Name of the cache"));
+
+    private static final DerivedLongGauge HITS = Metrics.getMetricRegistry().addDerivedLongGauge(
+            "cache/hits", "Number of keys that were found in the cache", "1", LABEL_KEYS);
+    private static final DerivedLongGauge MISSES = Metrics.getMetricRegistry().addDerivedLongGauge(
+            "cache/misses", "Number of keys that were not found in the cache", "1", LABEL_KEYS);
+    private static final DerivedLongGauge EVICTIONS = Metrics.getMetricRegistry().addDerivedLongGauge(
+            "cache/evictions", "Number of values that were evicted because the cache was full", "1", LABEL_KEYS);
+    private static final DerivedLongGauge STALE_HITS = Metrics.getMetricRegistry().addDerivedLongGauge(
+            "cache/stale_hits", "Number of expired values that were used because the lookup failed", "1", LABEL_KEYS);
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+    private final AtomicLong staleHits = new AtomicLong();
+
+    public CacheMetrics(final String cacheName) {
+        final var labelValues = List.of(LabelValue.create(cacheName));
+        HITS.createTimeSeries(labelValues, hits, AtomicLong::get);
+        MISSES.createTimeSeries(labelValues, misses, AtomicLong::get);
+        EVICTIONS.createTimeSeries(labelValues, evictions, AtomicLong::get);
+        STALE_HITS.createTimeSeries(labelValues, staleHits, AtomicLong::get);
+    }
+
+    public void recordHits(final long nrOfHits) {
+        hits.addAndGet(nrOfHits);
+    }
+
+    public void recordMisses(final long nrOfMisses) {
+        misses.addAndGet(nrOfMisses);
+    }
+
+    public void recordEviction() {
+        evictions.incrementAndGet();
+    }
+
+    public void recordStaleHits(final long nrOfStaleHits) {
+        staleHits.addAndGet(nrOfStaleHits);
+    }
+
+    public long getHitCount() {
+        return hits.get();
+    }
+
+    public long getMissCount() {
+        return misses.get();
+    }
+
+    public long getEvictionCount() {
+        return evictions.get();
+    }
+
+    public long getStaleHitCount() {
+        return staleHits.get();
+    }
+}
@@ -0,0 +1,202 @@
+package nl.javadev.grpc.tracing.util;
+
+import io.grpc.Context;
+import io.opencensus.trace.AttributeValue;
+import io.opencensus.trace.Span;
+import io.vavr.collection.List;
+import io.vavr.collection.Map;
+import io.vavr.collection.Set;
+import io.vavr.concurrent.Future;
+import io.vavr.concurrent.Promise;
+import io.vavr.control.Option;
+import io.vavr.control.Try;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A bounded read-through cache in front of a {@link BatchLoader}.
+ * <p>
+ * Values are kept for a fixed time to live. When the cache is full, the least recently used value is evicted.
+ * Keys that are missing from the cache are loaded with a single call to the delegate.
+ * Concurrent misses on the same key share that load (single-flight), so the key is only loaded once.
+ * Keys for which the delegate returns no value are not cached.
+ * <p>
+ * When the delegate fails (e.g. because its circuit breaker is open), values that expired not too long ago are used instead
+ * of failing the lookup (stale-if-error). The keys without such a value still fail.
+ * <p>
+ * The number of hits, misses and evictions are exposed as {@link CacheMetrics}.
+ * Hits are also recorded as an annotation on the span of the caller, so the trace shows why no call was made.
+ */
+public class CachingBatchLoader<K, V> implements BatchLoader<K, V> {
+
+    private final String name;
+    private final BatchLoader<K, V> delegate;
+    private final long timeToLiveNanos;
+    private final long staleIfErrorNanos;
+    private final ExecutorService executor;
+
+    private final CacheMetrics metrics;
+
+    // Both guarded by this
+    private final LinkedHashMap<K, CachedValue<V>> cachedValues;
+    private final HashMap<K, Future<Option<V>>> loadsInFlight = new HashMap<>();
+
+    public CachingBatchLoader(final String name,
+                              final BatchLoader<K, V> delegate,
+                              final long timeToLiveMillis,
+                              final int maxSize,
+                              final ExecutorService executor) {
+        this(name, delegate, timeToLiveMillis, 0, maxSize, executor);
+    }
+
+    /**
+     * @param staleIfErrorMillis how long after it expired a value is still used when the delegate fails (0 disables this)
+     */
+    public CachingBatchLoader(final String name,
+                              final BatchLoader<K, V> delegate,
+                              final long timeToLiveMillis,
+                              final long staleIfErrorMillis,
+                              final int maxSize,
+                              final ExecutorService executor) {
+        if (maxSize < 1) {
+            throw new IllegalArgumentException(String.format("The max size must be at least 1, but was %s", maxSize));
+        }
+        this.name = name;
+        this.delegate = delegate;
+        this.timeToLiveNanos = TimeUnit.MILLISECONDS.toNanos(timeToLiveMillis);
+        this.staleIfErrorNanos = TimeUnit.MILLISECONDS.toNanos(staleIfErrorMillis);
+        this.executor = executor;
+        this.metrics = new CacheMetrics(name);
+
+        // Access ordered, so the eldest entry is the least recently used one
+        this.cachedValues = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(final java.util.Map.Entry<K, CachedValue<V>> eldest) {
+                if (size() > maxSize) {
+                    metrics.recordEviction();
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    @Override
+    public Future<Map<K, V>> loadAll(final Set<K> keys, final Span span) {
+        var futures = List.<Future<Option<V>>>empty();
+        var promisesOfKeysToLoad = io.vavr.collection.LinkedHashMap.<K, Promise<Option<V>>>empty();
+        var nrOfHits = 0;
+
+        synchronized (this) {
+            final var now = System.nanoTime();
+            for (final K key : keys) {
+                final var cachedValue = cachedValues.get(key);
+                if (cachedValue != null && cachedValue.expiresAtNanos - now > 0) {
+                    nrOfHits++;
+                    futures = futures.prepend(Future.successful(executor, Option.some(cachedValue.value)));
+                    continue;
+                }
+                // An expired value is kept for a while, in case the load fails
+                if (cachedValue != null && cachedValue.expiresAtNanos + staleIfErrorNanos - now <= 0) {
+                    cachedValues.remove(key);
+                }
+
+                // Join a load of the same key that is already in flight, or start a new one
+                final var loadInFlight = loadsInFlight.get(key);
+                if (loadInFlight != null) {
+                    futures = futures.prepend(loadInFlight);
+                } else {
+                    final var promise = Promise.<Option<V>>make(executor);
+                    loadsInFlight.put(key, promise.future());
+                    promisesOfKeysToLoad = promisesOfKeysToLoad.put(key, promise);
+                    futures = futures.prepend(promise.future());
+                }
+            }
+        }
+
+        metrics.recordHits(nrOfHits);
+        metrics.recordMisses(keys.size() - nrOfHits);
+        if (nrOfHits > 0) {
+            span.addAnnotation("Cache hit", java.util.Map.of(
+                    "cache", AttributeValue.stringAttributeValue(name),
+                    "hits", AttributeValue.longAttributeValue(nrOfHits),
+                    "misses", AttributeValue.longAttributeValue(keys.size() - nrOfHits)));
+        }
+
+        if (!promisesOfKeysToLoad.isEmpty()) {
+            load(promisesOfKeysToLoad, span);
+        }
+
+        return Future.sequence(executor, futures.reverse())
+                .map(optionalValues -> keys.toList()
+                        .zip(optionalValues)
+                        .filter(keyAndValue -> keyAndValue._2.isDefined())
+                        .toMap(keyAndValue -> keyAndValue._1, keyAndValue -> keyAndValue._2.get()));
+    }
+
+    private void load(final Map<K, Promise<Option<V>>> promisesOfKeys, final Span span) {
+        final var keys = promisesOfKeys.keySet();
+        Try.of(() -> delegate.loadAll(keys, span))
+                .getOrElseGet(failure -> Future.failed(executor, failure))
+                .onComplete(result -> {
+                    var staleValues = io.vavr.collection.HashMap.<K, V>empty();
+                    synchronized (this) {
+                        final var now = System.nanoTime();
+                        keys.forEach(loadsInFlight::remove);
+                        result.forEach(values -> values.forEach((key, value) ->
+                                cachedValues.put(key, new CachedValue<>(value, now + timeToLiveNanos))));
+                        if (result.isFailure() && staleIfErrorNanos > 0) {
+                            staleValues = staleValues(keys, now);
+                        }
+                    }
+
+                    if (!staleValues.isEmpty()) {
+                        metrics.recordStaleHits(staleValues.size());
+                        span.addAnnotation("Stale values used", java.util.Map.of(
+                                "cache", AttributeValue.stringAttributeValue(name),
+                                "staleHits", AttributeValue.longAttributeValue(staleValues.size()),
+                                "failure", AttributeValue.stringAttributeValue(String.valueOf(result.getCause()))));
+                    }
+                    final var finalStaleValues = staleValues;
+                    // Only the keys without a stale value fail.
+                    // The promises are shared by the calls that look up the same keys, so they are completed
+                    // in the root context: their steps must not run in the context of the call that started the load
+                    Context.ROOT.run(() -> promisesOfKeys.forEach((key, promise) -> promise.complete(finalStaleValues.containsKey(key)
+                            ? Try.success(finalStaleValues.get(key))
+                            : result.map(values -> values.get(key)))));
+                });
+    }
+
+    // Called while holding the lock
+    private io.vavr.collection.HashMap<K, V> staleValues(final Set<K> keys, final long now) {
+        var staleValues = io.vavr.collection.HashMap.<K, V>empty();
+        for (final K key : keys) {
+            final var cachedValue = cachedValues.get(key);
+            if (cachedValue != null && cachedValue.expiresAtNanos + staleIfErrorNanos - now > 0) {
+                staleValues = staleValues.put(key, cachedValue.value);
+            }
+        }
+        return staleValues;
+    }
+
+    public CacheMetrics getMetrics() {
+        return metrics;
+    }
+
+    public synchronized int size() {
+        return cachedValues.size();
+    }
+
+    private static class CachedValue<V> {
+        private final V value;
+        private final long expiresAtNanos;
+
+        CachedValue(final V value, final long expiresAtNanos) {
+            this.value = value;
+            this.expiresAtNanos = expiresAtNanos;
+        }
+    }
+}
@@ -0,0 +1,83 @@
+package nl.javadev.grpc.tracing.util;
+
+import lombok.Builder;
+import lombok.Value;
+
+import java.util.Locale;
+
+/**
+ * Options of the channels to a downstream service, see {@link Channels#forAddresses(String, ChannelConfig)}
+ */
+@Value
+@Builder
+public class ChannelConfig {
+
+    public enum LoadBalancing {
+        // The calls are spread evenly over the connections
+        ROUND_ROBIN,
+        // A call is sent over the connection with the fewest calls waiting for a response,
+        // so a slow instance of the downstream service gets fewer calls
+        LEAST_OUTSTANDING_REQUESTS
+    }
+
+    /**
+     * The number of connections that is opened to every address, as a single HTTP/2 connection limits the concurrent calls
+     */
+    @Builder.Default
+    private int connectionsPerAddress = 1;
+
+    /**
+     * How a call picks the connection it is sent over
+     */
+    @Builder.Default
+    private LoadBalancing loadBalancing = LoadBalancing.ROUND_ROBIN;
+
+    /**
+     * How long a connection may be without any traffic before a keepalive ping is sent, so a dead connection is noticed
+     * (0 disables keepalive). The servers need to permit this, see {@link Channels#permitKeepAlive}
+     */
+    @Builder.Default
+    private long keepAliveTimeMillis = 30_000;
+
+    /**
+     * How long to wait for the answer to a keepalive ping before the connection is closed
+     */
+    @Builder.Default
+    private long keepAliveTimeoutMillis = 10_000;
+
+    /**
+     * Whether keepalive pings are also sent while there are no calls on the connection
+     */
+    @Builder.Default
+    private boolean keepAliveWithoutCalls = false;
+
+    /**
+     * How long the calls that are still running are awaited when the channel is shut down, before they are cancelled
+     */
+    @Builder.Default
+    private long shutdownTimeoutMillis = 5_000;
+
+    public static ChannelConfig defaults() {
+        return ChannelConfig.builder().build();
+    }
+
+    /**
+     * Reads the options of the channels of a service from: -D[serviceName].connectionsPerAddress=...,
+     * -D[serviceName].loadBalancing=roundRobin|leastOutstandingRequests, -D[serviceName].keepAliveTimeMillis=...,
+     * -D[serviceName].keepAliveTimeoutMillis=..., -D[serviceName].keepAliveWithoutCalls=... and -D[serviceName].shutdownTimeoutMillis=...
+     */
+    public static ChannelConfig fromSystemProperties(final String serviceName) {
+        final var defaults = defaults();
+        return ChannelConfig.builder()
+                .connectionsPerAddress(Integer.getInteger(serviceName + ".connectionsPerAddress", defaults.getConnectionsPerAddress()))
+                .loadBalancing(LoadBalancing.valueOf(System.getProperty(serviceName + ".loadBalancing", defaults.getLoadBalancing().name())
+                        // E.g. leastOutstandingRequests -> LEAST_OUTSTANDING_REQUESTS
+                        .replaceAll("([a-z])([A-Z])", "$1_$2").toUpperCase(Locale.ROOT)))
+                .keepAliveTimeMillis(Long.getLong(serviceName + ".keepAliveTimeMillis", defaults.getKeepAliveTimeMillis()))
+                .keepAliveTimeoutMillis(Long.getLong(serviceName + ".keepAliveTimeoutMillis", defaults.getKeepAliveTimeoutMillis()))
+                .keepAliveWithoutCalls(Boolean.parseBoolean(System.getProperty(serviceName + ".keepAliveWithoutCalls",
+                        String.valueOf(defaults.isKeepAliveWithoutCalls()))))
+                .shutdownTimeoutMillis(Long.getLong(serviceName + ".shutdownTimeoutMillis", defaults.getShutdownTimeoutMillis()))
+                .build();
+    }
+}
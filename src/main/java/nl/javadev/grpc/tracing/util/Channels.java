@@ -0,0 +1,88 @@
+package nl.javadev.grpc.tracing.util;
+
+import io.grpc.ManagedChannel;
+import io.grpc.ManagedChannelBuilder;
+import io.grpc.ServerBuilder;
+import io.grpc.netty.NettyServerBuilder;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Creates the channels to the services, all configured in the same way
+ */
+public class Channels {
+
+    /**
+     * Creates a plaintext channel to the service at the given host and port
+     */
+    public static ManagedChannel forAddress(final String host, final int port) {
+        return configure(ManagedChannelBuilder.forAddress(host, port).usePlaintext()).build();
+    }
+
+    /**
+     * Creates a plaintext channel to the instances of a service, e.g. <code>localhost:10003,localhost:10013</code>.
+     * Every instance gets a pool of connections, over which the calls are spread (see {@link PoolingLoadBalancer}),
+     * and idle connections are kept alive with pings
+     */
+    public static ManagedChannel forAddresses(final String addresses, final ChannelConfig config) {
+        final var nameResolverFactory = new StaticNameResolverFactory(List.of(addresses.split(",")));
+        final var channelBuilder = ManagedChannelBuilder.forTarget(nameResolverFactory.getTarget())
+                .nameResolverFactory(nameResolverFactory)
+                .loadBalancerFactory(PoolingLoadBalancer.factory(config.getConnectionsPerAddress(), config.getLoadBalancing()))
+                .usePlaintext();
+        if (config.getKeepAliveTimeMillis() > 0) {
+            channelBuilder.keepAliveTime(config.getKeepAliveTimeMillis(), TimeUnit.MILLISECONDS)
+                    .keepAliveTimeout(config.getKeepAliveTimeoutMillis(), TimeUnit.MILLISECONDS)
+                    .keepAliveWithoutCalls(config.isKeepAliveWithoutCalls());
+        }
+        final var channel = configure(channelBuilder).build();
+        // A channel only connects once the first call is made, then all these calls would go over the first connection that is ready
+        channel.getState(true);
+        return channel;
+    }
+
+    /**
+     * Propagates the span context of the calls (see {@link TracePropagation}) and counts the calls in flight
+     * (see {@link InFlightCalls})
+     */
+    public static <T extends ManagedChannelBuilder<T>> T configure(final ManagedChannelBuilder<T> channelBuilder) {
+        return TracePropagation.install(channelBuilder)
+                .intercept(InFlightCalls.clientInterceptor());
+    }
+
+    /**
+     * Allows the clients to send keepalive pings as often as configured.
+     * By default a server closes the connection of a client that pings more often than every 5 minutes
+     */
+    public static void permitKeepAlive(final ServerBuilder<?> serverBuilder, final long keepAliveTimeMillis) {
+        if (serverBuilder instanceof NettyServerBuilder) {
+            ((NettyServerBuilder) serverBuilder)
+                    .permitKeepAliveTime(keepAliveTimeMillis, TimeUnit.MILLISECONDS)
+                    .permitKeepAliveWithoutCalls(true);
+        } else if (serverBuilder instanceof io.grpc.netty.shaded.io.grpc.netty.NettyServerBuilder) {
+            ((io.grpc.netty.shaded.io.grpc.netty.NettyServerBuilder) serverBuilder)
+                    .permitKeepAliveTime(keepAliveTimeMillis, TimeUnit.MILLISECONDS)
+                    .permitKeepAliveWithoutCalls(true);
+        }
+    }
+
+    /**
+     * Shuts the channel down in an orderly way: new calls are refused, the running calls are given the time to complete
+     * and are cancelled after that
+     *
+     * @return whether all calls completed in time
+     */
+    public static boolean shutdown(final ManagedChannel channel, final long timeoutMillis) {
+        channel.shutdown();
+        try {
+            if (channel.awaitTermination(timeoutMillis, TimeUnit.MILLISECONDS)) {
+                return true;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        channel.shutdownNow();
+        return false;
+    }
+}
@@ -0,0 +1,210 @@
+package nl.javadev.grpc.tracing.util;
+
+import io.grpc.Status;
+import io.opencensus.metrics.DerivedLongGauge;
+import io.opencensus.metrics.LabelKey;
+import io.opencensus.metrics.LabelValue;
+import io.opencensus.metrics.Metrics;
+import io.opencensus.trace.AttributeValue;
+import io.opencensus.trace.Span;
+import io.vavr.collection.Map;
+import io.vavr.collection.Set;
+import io.vavr.concurrent.Future;
+import io.vavr.control.Try;
+
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Stops calling a downstream service that keeps failing or answering slowly, so the lookups fail right away
+ * instead of piling up while they wait for their deadline. The caller falls back to e.g. cached values.
+ * <p>
+ * The breaker is closed as long as the part of the recent lookups that failed or were slow stays below a threshold.
+ * Above it the breaker opens, and all lookups fail with <code>UNAVAILABLE</code> without calling the delegate.
+ * After a while the breaker is half open: a few trial lookups are let through. When they all succeed the breaker closes,
+ * otherwise it opens again.
+ * <p>
+ * The state and the number of rejected lookups are exposed as OpenCensus gauges,
+ * a change of the state and a rejected lookup are added as annotations to the span of the lookup.
+ */
+public class CircuitBreakingBatchLoader<K, V> implements BatchLoader<K, V> {
+
+    public enum State {
+        CLOSED,
+        OPEN,
+        HALF_OPEN
+    }
+
+    private static final List<LabelKey> LABEL_KEYS = List.of(LabelKey.create("loader", "Name of the circuit breaking loader"));
+
+    private static final DerivedLongGauge STATE = Metrics.getMetricRegistry().addDerivedLongGauge(
+            "circuit_breaker/state", "State of the circuit breaker: 0 closed, 1 open, 2 half open", "1", LABEL_KEYS);
+    private static final DerivedLongGauge REJECTED_LOOKUPS = Metrics.getMetricRegistry().addDerivedLongGauge(
+            "circuit_breaker/rejected_lookups", "Number of lookups that failed right away because the circuit breaker was open", "1",
+            LABEL_KEYS);
+
+    private final String name;
+    private final BatchLoader<K, V> delegate;
+    private final double failureRateThreshold;
+    private final long slowLookupNanos;
+    private final long openNanos;
+    private final int halfOpenLookups;
+    private final ExecutorService executor;
+
+    private final AtomicLong rejectedLookups = new AtomicLong();
+
+    // All guarded by this, the state is also read without the lock.
+    // The outcomes of the recent lookups (true for failed or slow), in a ring buffer
+    private final boolean[] window;
+    private int windowIndex;
+    private int windowCount;
+    private int windowFailures;
+    private volatile State state = State.CLOSED;
+    private long openedAtNanos;
+    private int halfOpenLookupsStarted;
+    private int halfOpenLookupsSucceeded;
+
+    /**
+     * @param failureRateThreshold the part of the recent lookups (0 - 1) that may fail or be slow before the breaker opens
+     * @param slowLookupMillis     a lookup that takes longer than this counts as failed, even when it succeeds
+     * @param windowSize           the number of recent lookups over which the failure rate is determined
+     * @param openMillis           how long the breaker stays open before trial lookups are let through
+     * @param halfOpenLookups      the number of trial lookups that have to succeed before the breaker closes again
+     */
+    public CircuitBreakingBatchLoader(final String name,
+                                      final BatchLoader<K, V> delegate,
+                                      final double failureRateThreshold,
+                                      final long slowLookupMillis,
+                                      final int windowSize,
+                                      final long openMillis,
+                                      final int halfOpenLookups,
+                                      final ExecutorService executor) {
+        if (failureRateThreshold <= 0 || failureRateThreshold > 1) {
+            throw new IllegalArgumentException(String.format("The failure rate threshold must be > 0 and <= 1, but was %s", failureRateThreshold));
+        }
+        if (windowSize < 1 || halfOpenLookups < 1) {
+            throw new IllegalArgumentException(String.format("The window size (%s) and the number of half open lookups (%s) must be at least 1",
+                    windowSize, halfOpenLookups));
+        }
+        this.name = name;
+        this.delegate = delegate;
+        this.failureRateThreshold = failureRateThreshold;
+        this.slowLookupNanos = TimeUnit.MILLISECONDS.toNanos(slowLookupMillis);
+        this.window = new boolean[windowSize];
+        this.openNanos = TimeUnit.MILLISECONDS.toNanos(openMillis);
+        this.halfOpenLookups = halfOpenLookups;
+        this.executor = executor;
+
+        final var labelValues = List.of(LabelValue.create(name));
+        STATE.createTimeSeries(labelValues, this, loader -> loader.getState().ordinal());
+        REJECTED_LOOKUPS.createTimeSeries(labelValues, rejectedLookups, AtomicLong::get);
+    }
+
+    @Override
+    public Future<Map<K, V>> loadAll(final Set<K> keys, final Span span) {
+        if (!tryStart(span)) {
+            rejectedLookups.incrementAndGet();
+            span.addAnnotation("Circuit breaker open, lookup not sent", java.util.Map.of(
+                    "breaker", AttributeValue.stringAttributeValue(name)));
+            return Future.failed(executor, Status.UNAVAILABLE
+                    .withDescription(String.format("The circuit breaker %s is open", name))
+                    .asRuntimeException());
+        }
+
+        final var startNanos = System.nanoTime();
+        // The same future is returned, so cancelling it (e.g. by the hedging loader) still cancels the call
+        return Try.of(() -> delegate.loadAll(keys, span))
+                .getOrElseGet(failure -> Future.failed(executor, failure))
+                .onComplete(result -> {
+                    // A cancelled lookup says nothing about the downstream service
+                    if (!(result.isFailure() && result.getCause() instanceof CancellationException)) {
+                        record(result.isFailure() || System.nanoTime() - startNanos > slowLookupNanos, span);
+                    } else {
+                        cancelled();
+                    }
+                });
+    }
+
+    public State getState() {
+        return state;
+    }
+
+    public long getRejectedLookupCount() {
+        return rejectedLookups.get();
+    }
+
+    private synchronized boolean tryStart(final Span span) {
+        if (state == State.OPEN) {
+            if (System.nanoTime() - openedAtNanos < openNanos) {
+                return false;
+            }
+            changeState(State.HALF_OPEN, span);
+        }
+        if (state == State.HALF_OPEN) {
+            if (halfOpenLookupsStarted >= halfOpenLookups) {
+                return false;
+            }
+            halfOpenLookupsStarted++;
+        }
+        return true;
+    }
+
+    private synchronized void cancelled() {
+        if (state == State.HALF_OPEN && halfOpenLookupsStarted > 0) {
+            // Make room for another trial lookup
+            halfOpenLookupsStarted--;
+        }
+    }
+
+    private synchronized void record(final boolean failed, final Span span) {
+        if (state == State.HALF_OPEN) {
+            if (failed) {
+                open(span);
+            } else if (++halfOpenLookupsSucceeded >= halfOpenLookups) {
+                changeState(State.CLOSED, span);
+            }
+            return;
+        }
+        if (state == State.OPEN) {
+            // A lookup that was started before the breaker opened
+            return;
+        }
+
+        if (windowCount == window.length && window[windowIndex]) {
+            windowFailures--;
+        }
+        window[windowIndex] = failed;
+        windowIndex = (windowIndex + 1) % window.length;
+        windowCount = Math.min(window.length, windowCount + 1);
+        if (failed) {
+            windowFailures++;
+        }
+
+        // Only judged once the window is full, so a few failures right after the start do not open the breaker
+        if (windowCount == window.length && windowFailures >= failureRateThreshold * window.length) {
+            open(span);
+        }
+    }
+
+    private void open(final Span span) {
+        openedAtNanos = System.nanoTime();
+        changeState(State.OPEN, span);
+    }
+
+    private void changeState(final State newState, final Span span) {
+        span.addAnnotation("Circuit breaker state changed", java.util.Map.of(
+                "breaker", AttributeValue.stringAttributeValue(name),
+                "from", AttributeValue.stringAttributeValue(state.name()),
+                "to", AttributeValue.stringAttributeValue(newState.name())));
+        state = newState;
+        halfOpenLookupsStarted = 0;
+        halfOpenLookupsSucceeded = 0;
+        // Every state starts with a clean slate
+        windowIndex = 0;
+        windowCount = 0;
+        windowFailures = 0;
+    }
+}
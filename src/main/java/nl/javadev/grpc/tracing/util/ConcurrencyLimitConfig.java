@@ -0,0 +1,115 @@
+package nl.javadev.grpc.tracing.util;
+
+import lombok.Builder;
+import lombok.Value;
+
+import java.util.Locale;
+
+/**
+ * Options of the {@link AdaptiveConcurrencyLimit} of a server
+ */
+@Value
+@Builder
+public class ConcurrencyLimitConfig {
+
+    public enum Algorithm {
+        // Additive increase, multiplicative decrease: the limit grows by one for every call that was fast enough,
+        // and shrinks by the backoff ratio for every call that was too slow or failed because of overload
+        AIMD,
+        // The limit follows the ratio between the long-term and the recent latency,
+        // so it shrinks as soon as calls start to queue up, before they are too slow
+        GRADIENT
+    }
+
+    /**
+     * Whether the calls are limited at all
+     */
+    @Builder.Default
+    private boolean enabled = true;
+
+    @Builder.Default
+    private Algorithm algorithm = Algorithm.GRADIENT;
+
+    /**
+     * The limit until enough calls have completed to adjust it
+     */
+    @Builder.Default
+    private int initialLimit = 50;
+
+    /**
+     * The limit never drops below this, so a server that is only slow still handles some calls
+     */
+    @Builder.Default
+    private int minLimit = 10;
+
+    @Builder.Default
+    private int maxLimit = 1_000;
+
+    /**
+     * AIMD: a call that takes longer than this shrinks the limit
+     */
+    @Builder.Default
+    private long latencyThresholdMillis = 500;
+
+    /**
+     * AIMD: the part of the limit (0 - 1) that is kept when it shrinks
+     */
+    @Builder.Default
+    private double backoffRatio = 0.9;
+
+    /**
+     * Gradient: the recent latency may be this many times the long-term latency before the limit shrinks
+     */
+    @Builder.Default
+    private double latencyTolerance = 1.5;
+
+    /**
+     * Gradient: how much (0 - 1) every new limit weighs against the previous one
+     */
+    @Builder.Default
+    private double smoothing = 0.2;
+
+    /**
+     * Gradient: the number of calls over which the long-term latency is averaged
+     */
+    @Builder.Default
+    private int longWindow = 600;
+
+    /**
+     * The part of the limit (0 - 1) that may be taken by calls which cannot be answered within their deadline anymore,
+     * judging by the long-term latency. These calls are the first to be shed, as their answer is likely thrown away
+     */
+    @Builder.Default
+    private double lateCallsShare = 0.5;
+
+    public static ConcurrencyLimitConfig defaults() {
+        return ConcurrencyLimitConfig.builder().build();
+    }
+
+    /**
+     * Reads the options of a service from: -D[serviceName].concurrencyLimit.enabled=...,
+     * -D[serviceName].concurrencyLimit.algorithm=aimd|gradient, -D[serviceName].concurrencyLimit.initialLimit=...,
+     * -D[serviceName].concurrencyLimit.minLimit=..., -D[serviceName].concurrencyLimit.maxLimit=...,
+     * -D[serviceName].concurrencyLimit.latencyThresholdMillis=..., -D[serviceName].concurrencyLimit.backoffRatio=...,
+     * -D[serviceName].concurrencyLimit.latencyTolerance=..., -D[serviceName].concurrencyLimit.smoothing=...,
+     * -D[serviceName].concurrencyLimit.longWindow=... and -D[serviceName].concurrencyLimit.lateCallsShare=...
+     */
+    public static ConcurrencyLimitConfig fromSystemProperties(final String serviceName) {
+        final var prefix = serviceName + ".concurrencyLimit.";
+        final var defaults = defaults();
+        return ConcurrencyLimitConfig.builder()
+                .enabled(Boolean.parseBoolean(System.getProperty(prefix + "enabled", String.valueOf(defaults.isEnabled()))))
+                .algorithm(Algorithm.valueOf(System.getProperty(prefix + "algorithm", defaults.getAlgorithm().name()).toUpperCase(Locale.ROOT)))
+                .initialLimit(Integer.getInteger(prefix + "initialLimit", defaults.getInitialLimit()))
+                .minLimit(Integer.getInteger(prefix + "minLimit", defaults.getMinLimit()))
+                .maxLimit(Integer.getInteger(prefix + "maxLimit", defaults.getMaxLimit()))
+                .latencyThresholdMillis(Long.getLong(prefix + "latencyThresholdMillis", defaults.getLatencyThresholdMillis()))
+                .backoffRatio(Double.parseDouble(System.getProperty(prefix + "backoffRatio", String.valueOf(defaults.getBackoffRatio()))))
+                .latencyTolerance(Double.parseDouble(System.getProperty(prefix + "latencyTolerance",
+                        String.valueOf(defaults.getLatencyTolerance()))))
+                .smoothing(Double.parseDouble(System.getProperty(prefix + "smoothing", String.valueOf(defaults.getSmoothing()))))
+                .longWindow(Integer.getInteger(prefix + "longWindow", defaults.getLongWindow()))
+                .lateCallsShare(Double.parseDouble(System.getProperty(prefix + "lateCallsShare", String.valueOf(defaults.getLateCallsShare()))))
+                .build();
+    }
+}
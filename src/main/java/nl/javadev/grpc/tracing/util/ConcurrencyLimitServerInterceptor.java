@@ -0,0 +1,138 @@
+package nl.javadev.grpc.tracing.util;
+
+import io.grpc.Context;
+import io.grpc.ForwardingServerCall.SimpleForwardingServerCall;
+import io.grpc.ForwardingServerCallListener.SimpleForwardingServerCallListener;
+import io.grpc.Metadata;
+import io.grpc.MethodDescriptor.MethodType;
+import io.grpc.ServerCall;
+import io.grpc.ServerCallHandler;
+import io.grpc.ServerInterceptor;
+import io.grpc.Status;
+import io.opencensus.metrics.DerivedLongGauge;
+import io.opencensus.metrics.LabelKey;
+import io.opencensus.metrics.LabelValue;
+import io.opencensus.metrics.Metrics;
+import io.opencensus.trace.AttributeValue;
+import io.opencensus.trace.Span;
+import io.opencensus.trace.Tracing;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Sheds the calls that do not fit within the {@link AdaptiveConcurrencyLimit} of the server with <code>RESOURCE_EXHAUSTED</code>,
+ * so an overloaded server answers right away instead of letting the calls queue up in its executors.
+ * Calls that cannot be answered within their deadline anymore are shed first.
+ * <p>
+ * Only unary calls are limited, the streaming calls are flow controlled instead (see {@link FlowControlledStreamer}).
+ * The limit, the calls in flight and the shed calls are exposed as OpenCensus gauges,
+ * a shed call and a change of the limit are added as annotations to the span of the call.
+ */
+public class ConcurrencyLimitServerInterceptor implements ServerInterceptor {
+
+    private static final List<LabelKey> LABEL_KEYS = List.of(LabelKey.create("service", "Name of the service"));
+
+    private static final DerivedLongGauge LIMIT = Metrics.getMetricRegistry().addDerivedLongGauge(
+            "concurrency_limit/limit", "Number of calls that are handled at the same time at most", "1", LABEL_KEYS);
+    private static final DerivedLongGauge IN_FLIGHT = Metrics.getMetricRegistry().addDerivedLongGauge(
+            "concurrency_limit/in_flight", "Number of calls that are handled within the limit", "1", LABEL_KEYS);
+    private static final DerivedLongGauge SHED_CALLS = Metrics.getMetricRegistry().addDerivedLongGauge(
+            "concurrency_limit/shed_calls", "Number of calls that were rejected because the limit was reached", "1", LABEL_KEYS);
+    private static final DerivedLongGauge SHED_LATE_CALLS = Metrics.getMetricRegistry().addDerivedLongGauge(
+            "concurrency_limit/shed_late_calls", "Number of calls that were rejected because they could not make their deadline anymore",
+            "1", LABEL_KEYS);
+
+    private final AdaptiveConcurrencyLimit limit;
+    private final AtomicLong shedCalls = new AtomicLong();
+    private final AtomicLong shedLateCalls = new AtomicLong();
+
+    public ConcurrencyLimitServerInterceptor(final String serviceName, final ConcurrencyLimitConfig config) {
+        this.limit = new AdaptiveConcurrencyLimit(config);
+
+        final var labelValues = List.of(LabelValue.create(serviceName));
+        LIMIT.createTimeSeries(labelValues, limit, AdaptiveConcurrencyLimit::getLimit);
+        IN_FLIGHT.createTimeSeries(labelValues, limit, AdaptiveConcurrencyLimit::getInFlight);
+        SHED_CALLS.createTimeSeries(labelValues, shedCalls, AtomicLong::get);
+        SHED_LATE_CALLS.createTimeSeries(labelValues, shedLateCalls, AtomicLong::get);
+    }
+
+    @Override
+    public <ReqT, RespT> ServerCall.Listener<ReqT> interceptCall(final ServerCall<ReqT, RespT> call,
+                                                                 final Metadata headers,
+                                                                 final ServerCallHandler<ReqT, RespT> next) {
+        if (call.getMethodDescriptor().getType() != MethodType.UNARY) {
+            return next.startCall(call, headers);
+        }
+
+        // The span that the trace propagation started for this call
+        final var span = Tracing.getTracer().getCurrentSpan();
+        final var deadline = Context.current().getDeadline();
+        final var late = deadline != null && limit.isLate(deadline.timeRemaining(TimeUnit.NANOSECONDS));
+        if (!limit.tryAcquire(late)) {
+            return shed(call, span, late);
+        }
+
+        final var startNanos = System.nanoTime();
+        final var released = new AtomicBoolean();
+        final var listener = next.startCall(new SimpleForwardingServerCall<>(call) {
+            @Override
+            public void close(final Status status, final Metadata trailers) {
+                release(span, startNanos, isDropped(status.getCode()), released);
+                super.close(status, trailers);
+            }
+        }, headers);
+
+        return new SimpleForwardingServerCallListener<>(listener) {
+            @Override
+            public void onCancel() {
+                // Cancelled by the caller, most likely because the deadline passed
+                release(span, startNanos, true, released);
+                super.onCancel();
+            }
+        };
+    }
+
+    public AdaptiveConcurrencyLimit getLimit() {
+        return limit;
+    }
+
+    private <ReqT, RespT> ServerCall.Listener<ReqT> shed(final ServerCall<ReqT, RespT> call, final Span span, final boolean late) {
+        (late ? shedLateCalls : shedCalls).incrementAndGet();
+        final var description = late
+                ? String.format("The call cannot be answered within its deadline, and %s of the %s calls are being handled",
+                limit.getInFlight(), limit.getLimit())
+                : String.format("The limit of %s concurrent calls has been reached", limit.getLimit());
+        span.addAnnotation("Call shed", Map.of(
+                "limit", AttributeValue.longAttributeValue(limit.getLimit()),
+                "inFlight", AttributeValue.longAttributeValue(limit.getInFlight()),
+                "late", AttributeValue.booleanAttributeValue(late)));
+
+        call.close(Status.RESOURCE_EXHAUSTED.withDescription(description), new Metadata());
+        return new ServerCall.Listener<>() {
+        };
+    }
+
+    private void release(final Span span, final long startNanos, final boolean dropped, final AtomicBoolean released) {
+        if (!released.compareAndSet(false, true)) {
+            return;
+        }
+        final var previousLimit = limit.getLimit();
+        final var newLimit = limit.release(System.nanoTime() - startNanos, dropped);
+        if (newLimit != previousLimit) {
+            span.addAnnotation("Concurrency limit changed", Map.of(
+                    "from", AttributeValue.longAttributeValue(previousLimit),
+                    "to", AttributeValue.longAttributeValue(newLimit)));
+        }
+    }
+
+    /**
+     * Whether the call failed because it took too long or because something it depends on is overloaded
+     */
+    private static boolean isDropped(final Status.Code code) {
+        return code == Status.Code.DEADLINE_EXCEEDED || code == Status.Code.RESOURCE_EXHAUSTED || code == Status.Code.UNAVAILABLE;
+    }
+}
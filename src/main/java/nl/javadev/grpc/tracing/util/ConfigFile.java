@@ -0,0 +1,43 @@
+package nl.javadev.grpc.tracing.util;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Properties;
+
+/**
+ * Reads the options of the services from a properties file, instead of passing them all with -D...
+ * The file contains the same names as the system properties, e.g. <code>productService.port=10002</code>.
+ */
+public class ConfigFile {
+
+    /**
+     * Adds the properties from the file given by the system property config, or else the environment variable CONFIG_FILE,
+     * to the system properties. A property that has been set with -D... is not overridden by the file.
+     *
+     * @return the path of the file that was read, or null if none was configured
+     */
+    public static Path loadIntoSystemProperties() {
+        final var fileName = System.getProperty("config", System.getenv("CONFIG_FILE"));
+        if (fileName == null || fileName.isBlank()) {
+            return null;
+        }
+
+        final var path = Path.of(fileName);
+        final var properties = new Properties();
+        try (Reader reader = Files.newBufferedReader(path, StandardCharsets.UTF_8)) {
+            properties.load(reader);
+        } catch (final IOException e) {
+            throw new UncheckedIOException(String.format("Failed to read the configuration from: %s", path.toAbsolutePath()), e);
+        }
+        properties.stringPropertyNames().forEach(name -> {
+            if (System.getProperty(name) == null) {
+                System.setProperty(name, properties.getProperty(name).trim());
+            }
+        });
+        return path;
+    }
+}
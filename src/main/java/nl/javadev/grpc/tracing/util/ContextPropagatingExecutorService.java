@@ -0,0 +1,103 @@
+package nl.javadev.grpc.tracing.util;
+
+import io.grpc.Context;
+
+import java.util.List;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs every task within the gRPC context (and thus the current span) of the thread that submitted it.
+ * The context is attached right before the task runs and always detached afterwards,
+ * so no span is left behind on the (pooled) thread for the next task.
+ * <p>
+ * VAVR submits a step of a Future (e.g. a map or onComplete) to the executor of the Future from the thread
+ * that completes the previous step, so a step runs in the context of that completing thread,
+ * which is not necessarily the gRPC thread that started the Future.
+ * A promise that is shared by several calls (e.g. a batch or cache load) must therefore be completed in the root context,
+ * otherwise the steps of every call that waits for it run in the context (and span) of the call that completed it.
+ * That is why the spans are still passed on explicitly.
+ */
+public class ContextPropagatingExecutorService extends AbstractExecutorService {
+
+    private final ExecutorService delegate;
+
+    private ContextPropagatingExecutorService(final ExecutorService delegate) {
+        this.delegate = delegate;
+    }
+
+    public static ExecutorService wrap(final ExecutorService executorService) {
+        if (executorService instanceof ContextPropagatingExecutorService) {
+            return executorService;
+        }
+        return new ContextPropagatingExecutorService(executorService);
+    }
+
+    /**
+     * @return the executor service that actually runs the tasks
+     */
+    public ExecutorService getDelegate() {
+        return delegate;
+    }
+
+    @Override
+    public void execute(final Runnable task) {
+        final var context = Context.current();
+        // Nothing to propagate, so there is no need to wrap the task
+        delegate.execute(context == Context.ROOT ? task : new ContextTask(context, task));
+    }
+
+    @Override
+    public void shutdown() {
+        delegate.shutdown();
+    }
+
+    @Override
+    public List<Runnable> shutdownNow() {
+        return delegate.shutdownNow();
+    }
+
+    @Override
+    public boolean isShutdown() {
+        return delegate.isShutdown();
+    }
+
+    @Override
+    public boolean isTerminated() {
+        return delegate.isTerminated();
+    }
+
+    @Override
+    public boolean awaitTermination(final long timeout, final TimeUnit unit) throws InterruptedException {
+        return delegate.awaitTermination(timeout, unit);
+    }
+
+    @Override
+    public String toString() {
+        return delegate.toString();
+    }
+
+    /**
+     * A task together with the context it should run in (a class instead of a lambda, so only one object per task)
+     */
+    private static final class ContextTask implements Runnable {
+        private final Context context;
+        private final Runnable task;
+
+        private ContextTask(final Context context, final Runnable task) {
+            this.context = context;
+            this.task = task;
+        }
+
+        @Override
+        public void run() {
+            final var previous = context.attach();
+            try {
+                task.run();
+            } finally {
+                context.detach(previous);
+            }
+        }
+    }
+}
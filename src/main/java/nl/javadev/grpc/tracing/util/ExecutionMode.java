@@ -0,0 +1,29 @@
+package nl.javadev.grpc.tracing.util;
+
+/**
+ * On which kind of threads the service handlers and the blocking work of the services are executed
+ */
+public enum ExecutionMode {
+    /**
+     * Bounded pools of regular (platform) threads
+     */
+    PLATFORM,
+    /**
+     * A new virtual thread per task, requires a Java version that supports virtual threads (21+).
+     * Falls back to {@link #PLATFORM} when that is not the case.
+     */
+    VIRTUAL;
+
+    /**
+     * Reads the execution mode from the system property: executionMode (platform or virtual, default: platform)
+     */
+    public static ExecutionMode fromSystemProperties() {
+        final var mode = ExecutionMode.valueOf(System.getProperty("executionMode", PLATFORM.name()).toUpperCase());
+        if (mode == VIRTUAL && !VirtualThreads.isSupported()) {
+            System.out.println(String.format("Virtual threads are not supported by Java %s, falling back to platform threads",
+                    System.getProperty("java.version")));
+            return PLATFORM;
+        }
+        return mode;
+    }
+}
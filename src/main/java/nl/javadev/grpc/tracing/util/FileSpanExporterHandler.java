@@ -0,0 +1,145 @@
+package nl.javadev.grpc.tracing.util;
+
+import com.google.protobuf.ByteString;
+import io.opencensus.common.Timestamp;
+import io.opencensus.trace.AttributeValue;
+import io.opencensus.trace.Span;
+import io.opencensus.trace.export.SpanData;
+import io.opencensus.trace.export.SpanExporter;
+import nl.javadev.grpc.tracing.util.ExportedSpanOuterClass.Event;
+import nl.javadev.grpc.tracing.util.ExportedSpanOuterClass.ExportedSpan;
+import nl.javadev.grpc.tracing.util.ExportedSpanOuterClass.KeyValue;
+import nl.javadev.grpc.tracing.util.ExportedSpanOuterClass.Link;
+import nl.javadev.grpc.tracing.util.ExportedSpanOuterClass.SpanKind;
+import nl.javadev.grpc.tracing.util.ExportedSpanOuterClass.Status;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Appends the exported spans to a local file, as length-delimited {@link ExportedSpan} protobuf messages.
+ * This way the services can be traced without a network connection to a tracing backend.
+ */
+public class FileSpanExporterHandler extends SpanExporter.Handler implements AutoCloseable {
+
+    private final String serviceName;
+    private final OutputStream output;
+
+    public FileSpanExporterHandler(final Path file, final String serviceName) throws IOException {
+        this.serviceName = serviceName;
+        this.output = new BufferedOutputStream(Files.newOutputStream(file,
+                StandardOpenOption.CREATE, StandardOpenOption.APPEND, StandardOpenOption.WRITE));
+    }
+
+    @Override
+    public synchronized void export(final Collection<SpanData> spanDataList) {
+        try {
+            for (final SpanData spanData : spanDataList) {
+                toExportedSpan(spanData).writeDelimitedTo(output);
+            }
+            output.flush();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        output.close();
+    }
+
+    /**
+     * Reads all spans from a file that has been written by this handler
+     */
+    public static List<ExportedSpan> readSpans(final Path file) throws IOException {
+        final var spans = new ArrayList<ExportedSpan>();
+        try (InputStream input = Files.newInputStream(file)) {
+            ExportedSpan span;
+            while ((span = ExportedSpan.parseDelimitedFrom(input)) != null) {
+                spans.add(span);
+            }
+        }
+        return spans;
+    }
+
+    private ExportedSpan toExportedSpan(final SpanData spanData) {
+        final var builder = ExportedSpan.newBuilder()
+                .setTraceId(ByteString.copyFrom(spanData.getContext().getTraceId().getBytes()))
+                .setSpanId(ByteString.copyFrom(spanData.getContext().getSpanId().getBytes()))
+                .setName(spanData.getName())
+                .setKind(toSpanKind(spanData.getKind()))
+                .setStartTimeUnixNano(toUnixNanos(spanData.getStartTimestamp()))
+                .setServiceName(serviceName)
+                .setHasRemoteParent(Boolean.TRUE.equals(spanData.getHasRemoteParent()))
+                .addAllAttributes(toKeyValues(spanData.getAttributes().getAttributeMap()));
+
+        if (spanData.getParentSpanId() != null && spanData.getParentSpanId().isValid()) {
+            builder.setParentSpanId(ByteString.copyFrom(spanData.getParentSpanId().getBytes()));
+        }
+        if (spanData.getEndTimestamp() != null) {
+            builder.setEndTimeUnixNano(toUnixNanos(spanData.getEndTimestamp()));
+        }
+        if (spanData.getStatus() != null) {
+            builder.setStatus(Status.newBuilder()
+                    .setCode(spanData.getStatus().getCanonicalCode().value())
+                    .setMessage(spanData.getStatus().getDescription() == null ? "" : spanData.getStatus().getDescription()));
+        }
+
+        spanData.getAnnotations().getEvents().forEach(annotation -> builder.addEvents(Event.newBuilder()
+                .setTimeUnixNano(toUnixNanos(annotation.getTimestamp()))
+                .setName(annotation.getEvent().getDescription())
+                .addAllAttributes(toKeyValues(annotation.getEvent().getAttributes()))));
+        spanData.getMessageEvents().getEvents().forEach(messageEvent -> builder.addEvents(Event.newBuilder()
+                .setTimeUnixNano(toUnixNanos(messageEvent.getTimestamp()))
+                .setName(messageEvent.getEvent().getType().name())
+                .addAttributes(KeyValue.newBuilder().setKey("message.id").setIntValue(messageEvent.getEvent().getMessageId()))
+                .addAttributes(KeyValue.newBuilder().setKey("message.uncompressed_size")
+                        .setIntValue(messageEvent.getEvent().getUncompressedMessageSize()))));
+        spanData.getLinks().getLinks().forEach(link -> builder.addLinks(Link.newBuilder()
+                .setTraceId(ByteString.copyFrom(link.getTraceId().getBytes()))
+                .setSpanId(ByteString.copyFrom(link.getSpanId().getBytes()))
+                .setType(link.getType().name())));
+
+        return builder.build();
+    }
+
+    private static SpanKind toSpanKind(final Span.Kind kind) {
+        if (kind == Span.Kind.SERVER) {
+            return SpanKind.SPAN_KIND_SERVER;
+        }
+        if (kind == Span.Kind.CLIENT) {
+            return SpanKind.SPAN_KIND_CLIENT;
+        }
+        return SpanKind.SPAN_KIND_UNSPECIFIED;
+    }
+
+    private static long toUnixNanos(final Timestamp timestamp) {
+        return TimeUnit.SECONDS.toNanos(timestamp.getSeconds()) + timestamp.getNanos();
+    }
+
+    private static List<KeyValue> toKeyValues(final Map<String, AttributeValue> attributes) {
+        final var keyValues = new ArrayList<KeyValue>(attributes.size());
+        attributes.forEach((key, value) -> {
+            final var keyValue = KeyValue.newBuilder().setKey(key);
+            value.match(
+                    keyValue::setStringValue,
+                    keyValue::setBoolValue,
+                    keyValue::setIntValue,
+                    keyValue::setDoubleValue,
+                    other -> keyValue.setStringValue(String.valueOf(other)));
+            keyValues.add(keyValue.build());
+        });
+        return keyValues;
+    }
+}
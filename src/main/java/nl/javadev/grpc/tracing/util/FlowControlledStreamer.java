@@ -0,0 +1,108 @@
+package nl.javadev.grpc.tracing.util;
+
+import io.grpc.stub.ServerCallStreamObserver;
+import io.grpc.stub.StreamObserver;
+import io.vavr.concurrent.Future;
+import io.vavr.control.Try;
+
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.function.Function;
+
+/**
+ * Streams the results of asynchronously processed items to a server-streaming response as soon as each is available.
+ * <p>
+ * It respects gRPC flow control: results are only sent while the response stream is ready,
+ * and the number of items that is being processed or waiting to be sent is bounded.
+ * So a slow client does not cause an unbounded amount of results to be buffered.
+ */
+public class FlowControlledStreamer<T, R> {
+
+    private final ServerCallStreamObserver<R> responseObserver;
+    private final Iterator<T> items;
+    private final Function<T, Future<R>> processor;
+    private final int maxInFlight;
+    private Runnable onCompleted = () -> {
+    };
+
+    private final Queue<R> readyToSend = new ArrayDeque<>();
+    private int inProgress;
+    private boolean done;
+
+    public FlowControlledStreamer(final StreamObserver<R> responseObserver,
+                                  final Iterator<T> items,
+                                  final Function<T, Future<R>> processor,
+                                  final int maxInFlight) {
+        if (maxInFlight < 1) {
+            throw new IllegalArgumentException(String.format("The max number of items in flight must be at least 1, but was %s", maxInFlight));
+        }
+        this.responseObserver = (ServerCallStreamObserver<R>) responseObserver;
+        this.items = items;
+        this.processor = processor;
+        this.maxInFlight = maxInFlight;
+    }
+
+    /**
+     * Sets the action that is run when all results have been sent, right before the response is completed
+     * (not when the response fails or is cancelled)
+     */
+    public FlowControlledStreamer<T, R> onCompleted(final Runnable onCompleted) {
+        this.onCompleted = onCompleted;
+        return this;
+    }
+
+    /**
+     * Starts processing the items, must be called from within the rpc method
+     */
+    public void start() {
+        responseObserver.setOnReadyHandler(this::sendReadyResults);
+        responseObserver.setOnCancelHandler(this::cancel);
+        sendReadyResults();
+    }
+
+    private synchronized void cancel() {
+        done = true;
+        readyToSend.clear();
+    }
+
+    private synchronized void onProcessed(final Try<R> result) {
+        inProgress--;
+        if (done) {
+            return;
+        }
+        if (result.isFailure()) {
+            done = true;
+            readyToSend.clear();
+            responseObserver.onError(result.getCause());
+            return;
+        }
+        readyToSend.add(result.get());
+        sendReadyResults();
+    }
+
+    private synchronized void sendReadyResults() {
+        if (done) {
+            return;
+        }
+
+        while (responseObserver.isReady() && !readyToSend.isEmpty()) {
+            responseObserver.onNext(readyToSend.poll());
+        }
+
+        // Sent results make room for processing more items
+        while (inProgress + readyToSend.size() < maxInFlight && items.hasNext()) {
+            inProgress++;
+            final var item = items.next();
+            Try.of(() -> processor.apply(item))
+                    .getOrElseGet(Future::failed)
+                    .onComplete(this::onProcessed);
+        }
+
+        if (inProgress == 0 && readyToSend.isEmpty() && !items.hasNext()) {
+            done = true;
+            onCompleted.run();
+            responseObserver.onCompleted();
+        }
+    }
+}
@@ -0,0 +1,72 @@
+package nl.javadev.grpc.tracing.util;
+
+import io.grpc.Context;
+import io.grpc.Contexts;
+import io.grpc.ForwardingServerCall.SimpleForwardingServerCall;
+import io.grpc.ForwardingServerCallListener.SimpleForwardingServerCallListener;
+import io.grpc.Metadata;
+import io.grpc.ServerCall;
+import io.grpc.ServerCallHandler;
+import io.grpc.ServerInterceptor;
+import io.grpc.Status;
+import io.opencensus.trace.Span;
+import io.opencensus.trace.Tracing;
+import io.opencensus.trace.samplers.Samplers;
+import io.opencensus.trace.unsafe.ContextUtils;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Samples the call, and thus all downstream calls, when it has the {@link #FORCE_SAMPLING_HEADER} header
+ * (e.g. <code>x-force-sampling: true</code>) regardless of the sampler.
+ * This way a trace can be captured for debugging while only a small part of the traffic is sampled.
+ */
+public class ForcedSamplingServerInterceptor implements ServerInterceptor {
+
+    public static final Metadata.Key<String> FORCE_SAMPLING_HEADER =
+            Metadata.Key.of("x-force-sampling", Metadata.ASCII_STRING_MARSHALLER);
+
+    @Override
+    public <ReqT, RespT> ServerCall.Listener<ReqT> interceptCall(final ServerCall<ReqT, RespT> call,
+                                                                 final Metadata headers,
+                                                                 final ServerCallHandler<ReqT, RespT> next) {
+        // The span of this call, started by the TracePropagationServerInterceptor (or by the tracing module of gRPC for in-process calls)
+        final var callSpan = Tracing.getTracer().getCurrentSpan();
+        if (!"true".equalsIgnoreCase(headers.get(FORCE_SAMPLING_HEADER)) || callSpan.getContext().getTraceOptions().isSampled()) {
+            return next.startCall(call, headers);
+        }
+
+        // The span of the call has not been sampled, so a sampled child span is started instead.
+        // Because it is made the current span, the handler and the downstream calls continue it
+        final var span = Tracing.getTracer()
+                .spanBuilderWithExplicitParent(String.format("Forced.%s", call.getMethodDescriptor().getFullMethodName()), callSpan)
+                .setSampler(Samplers.alwaysSample())
+                .setRecordEvents(true)
+                .startSpan();
+        span.addAnnotation(String.format("Sampling forced by the %s header", FORCE_SAMPLING_HEADER.name()));
+
+        final var ended = new AtomicBoolean();
+        final Runnable endSpan = () -> {
+            if (ended.compareAndSet(false, true)) {
+                span.end();
+            }
+        };
+
+        final var context = Context.current().withValue(ContextUtils.CONTEXT_SPAN_KEY, span);
+        final var listener = Contexts.interceptCall(context, new SimpleForwardingServerCall<>(call) {
+            @Override
+            public void close(final Status status, final Metadata trailers) {
+                endSpan.run();
+                super.close(status, trailers);
+            }
+        }, headers, next);
+
+        return new SimpleForwardingServerCallListener<>(listener) {
+            @Override
+            public void onCancel() {
+                endSpan.run();
+                super.onCancel();
+            }
+        };
+    }
+}
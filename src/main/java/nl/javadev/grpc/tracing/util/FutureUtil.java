@@ -0,0 +1,158 @@
+package nl.javadev.grpc.tracing.util;
+
+import com.google.common.util.concurrent.ListenableFuture;
+import io.vavr.concurrent.Future;
+import io.vavr.concurrent.Promise;
+import io.vavr.control.Try;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.function.Function;
+
+public class FutureUtil {
+
+    /**
+     * Converts the future returned by a gRPC future stub into a VAVR future.
+     * Unlike {@link Future#fromJavaFuture(java.util.concurrent.Future)} this does not block a thread
+     * while waiting for the response, it completes the VAVR future from a listener instead.
+     */
+    public static <T> Future<T> fromListenableFuture(final ExecutorService executor,
+                                                     final ListenableFuture<T> listenableFuture) {
+        return fromListenableFuture(executor, listenableFuture, Function.identity());
+    }
+
+    /**
+     * Converts the future returned by a gRPC future stub into a VAVR future, mapping the response.
+     * Cancelling the returned VAVR future also cancels the gRPC call.
+     */
+    public static <T, R> Future<R> fromListenableFuture(final ExecutorService executor,
+                                                        final ListenableFuture<T> listenableFuture,
+                                                        final Function<? super T, ? extends R> mapper) {
+        final var promise = Promise.<R>make(executor);
+        listenableFuture.addListener(() -> promise.tryComplete(
+                Try.of(listenableFuture::get)
+                        // Unwrap the actual failure, which is typically a StatusRuntimeException
+                        .recoverWith(ExecutionException.class, e -> Try.failure(e.getCause()))
+                        .map(mapper)
+        ), executor);
+
+        promise.future().onFailure(failure -> {
+            if (failure instanceof CancellationException) {
+                listenableFuture.cancel(true);
+            }
+        });
+
+        return promise.future();
+    }
+
+    /**
+     * Converts a completable future into a VAVR future that runs its steps by the given executor.
+     * Unlike {@link Future#fromCompletableFuture(java.util.concurrent.Executor, java.util.concurrent.CompletableFuture)},
+     * which (in VAVR 0.9.2) ignores the executor and completes the VAVR future by the default VAVR executor.
+     * Cancelling the returned VAVR future also cancels the completable future.
+     */
+    public static <T> Future<T> fromCompletableFuture(final ExecutorService executor,
+                                                      final CompletableFuture<T> completableFuture) {
+        final var promise = Promise.<T>make(executor);
+        completableFuture.whenComplete((value, failure) -> promise.tryComplete(failure == null
+                ? Try.success(value)
+                // Unwrap the actual failure, the completable future wraps it when a dependent stage failed
+                : Try.failure(failure instanceof CompletionException && failure.getCause() != null ? failure.getCause() : failure)));
+
+        promise.future().onFailure(failure -> {
+            if (failure instanceof CancellationException) {
+                completableFuture.cancel(true);
+            }
+        });
+
+        return promise.future();
+    }
+
+    /**
+     * Processes all items asynchronously, like {@link Future#sequence} of a Future per item,
+     * but with no more than the given number of items in progress at the same time.
+     * So a request with many items does not flood the executors with the continuations of all its items at once.
+     * The next item is started from the continuation of a completed item, which the executor runs as a task of its own.
+     *
+     * @return the results in the order of the items, or the first failure
+     */
+    public static <T, R> Future<List<R>> sequenceBounded(final ExecutorService executor,
+                                                         final List<T> items,
+                                                         final Function<T, Future<R>> processor,
+                                                         final int maxInFlight) {
+        if (maxInFlight < 1) {
+            throw new IllegalArgumentException(String.format("The max number of items in flight must be at least 1, but was %s", maxInFlight));
+        }
+        final var promise = Promise.<List<R>>make(executor);
+        if (items.isEmpty()) {
+            return promise.success(List.of()).future();
+        }
+        new BoundedSequence<>(executor, promise, items, processor).start(Math.min(maxInFlight, items.size()));
+        return promise.future();
+    }
+
+    private static class BoundedSequence<T, R> {
+        private final ExecutorService executor;
+        private final Promise<List<R>> promise;
+        private final List<T> items;
+        private final Function<T, Future<R>> processor;
+        private final Object[] results;
+
+        // Both guarded by this
+        private int nextIndex;
+        private int completed;
+
+        BoundedSequence(final ExecutorService executor,
+                        final Promise<List<R>> promise,
+                        final List<T> items,
+                        final Function<T, Future<R>> processor) {
+            this.executor = executor;
+            this.promise = promise;
+            this.items = items;
+            this.processor = processor;
+            this.results = new Object[items.size()];
+        }
+
+        void start(final int nrOfItems) {
+            for (int i = 0; i < nrOfItems; i++) {
+                startNext();
+            }
+        }
+
+        private void startNext() {
+            final int index;
+            synchronized (this) {
+                if (nextIndex == items.size() || promise.isCompleted()) {
+                    return;
+                }
+                index = nextIndex++;
+            }
+            Try.of(() -> processor.apply(items.get(index)))
+                    .getOrElseGet(failure -> Future.failed(executor, failure))
+                    .onComplete(result -> onProcessed(index, result));
+        }
+
+        @SuppressWarnings("unchecked")
+        private void onProcessed(final int index, final Try<R> result) {
+            if (result.isFailure()) {
+                promise.tryFailure(result.getCause());
+                return;
+            }
+            final boolean allCompleted;
+            synchronized (this) {
+                results[index] = result.get();
+                allCompleted = ++completed == items.size();
+            }
+            if (allCompleted) {
+                promise.trySuccess((List<R>) (List<?>) Arrays.asList(results));
+            } else {
+                startNext();
+            }
+        }
+    }
+}
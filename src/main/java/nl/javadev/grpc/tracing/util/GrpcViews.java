@@ -0,0 +1,46 @@
+package nl.javadev.grpc.tracing.util;
+
+import io.opencensus.contrib.grpc.metrics.RpcViewConstants;
+import io.opencensus.stats.Stats;
+import io.opencensus.stats.View;
+
+import java.util.List;
+
+/**
+ * The views on the measures that gRPC records for every call, per method:
+ * the latency distribution, the request and response sizes, the number of started and finished calls,
+ * and the number of errors per status code.
+ * The number of calls in flight is counted by {@link InFlightCalls}.
+ */
+public class GrpcViews {
+
+    public static final List<View> SERVER_VIEWS = List.of(
+            RpcViewConstants.RPC_SERVER_SERVER_LATENCY_VIEW,
+            RpcViewConstants.RPC_SERVER_REQUEST_BYTES_VIEW,
+            RpcViewConstants.RPC_SERVER_RESPONSE_BYTES_VIEW,
+            RpcViewConstants.RPC_SERVER_STARTED_COUNT_CUMULATIVE_VIEW,
+            RpcViewConstants.RPC_SERVER_FINISHED_COUNT_CUMULATIVE_VIEW,
+            RpcViewConstants.RPC_SERVER_ERROR_COUNT_VIEW);
+
+    public static final List<View> CLIENT_VIEWS = List.of(
+            RpcViewConstants.RPC_CLIENT_ROUNDTRIP_LATENCY_VIEW,
+            RpcViewConstants.RPC_CLIENT_REQUEST_BYTES_VIEW,
+            RpcViewConstants.RPC_CLIENT_RESPONSE_BYTES_VIEW,
+            RpcViewConstants.RPC_CLIENT_STARTED_COUNT_CUMULATIVE_VIEW,
+            RpcViewConstants.RPC_CLIENT_FINISHED_COUNT_CUMULATIVE_VIEW,
+            RpcViewConstants.RPC_CLIENT_ERROR_COUNT_VIEW);
+
+    /**
+     * Registers the server and client views, so the measures that gRPC records are aggregated.
+     * Registering the same views again has no effect.
+     */
+    public static void registerAll() {
+        register(SERVER_VIEWS);
+        register(CLIENT_VIEWS);
+    }
+
+    public static void register(final List<View> views) {
+        final var viewManager = Stats.getViewManager();
+        views.forEach(viewManager::registerView);
+    }
+}
@@ -0,0 +1,40 @@
+package nl.javadev.grpc.tracing.util;
+
+import io.opencensus.trace.Sampler;
+import io.opencensus.trace.Span;
+import io.opencensus.trace.SpanContext;
+import io.opencensus.trace.SpanId;
+import io.opencensus.trace.TraceId;
+
+import java.util.List;
+
+/**
+ * A sampler that decides whether a new trace is sampled.
+ * A span with a (local or remote) parent follows the decision of its parent, so a trace is only decided once, at its root:
+ * a sampled trace stays complete, and the downstream services never sample parts of a trace of which the root was not sampled.
+ * A new trace is also sampled when one of the spans it is linked to is sampled.
+ */
+abstract class HeadSampler extends Sampler {
+
+    @Override
+    public final boolean shouldSample(final SpanContext parentContext,
+                                      final Boolean hasRemoteParent,
+                                      final TraceId traceId,
+                                      final SpanId spanId,
+                                      final String name,
+                                      final List<Span> parentLinks) {
+        if (parentContext != null && parentContext.isValid()) {
+            return parentContext.getTraceOptions().isSampled();
+        }
+        if (parentLinks != null) {
+            for (final Span parentLink : parentLinks) {
+                if (parentLink.getContext().getTraceOptions().isSampled()) {
+                    return true;
+                }
+            }
+        }
+        return shouldSampleNewTrace(traceId);
+    }
+
+    protected abstract boolean shouldSampleNewTrace(TraceId traceId);
+}
@@ -0,0 +1,253 @@
+package nl.javadev.grpc.tracing.util;
+
+import io.opencensus.metrics.DerivedLongGauge;
+import io.opencensus.metrics.LabelKey;
+import io.opencensus.metrics.LabelValue;
+import io.opencensus.metrics.Metrics;
+import io.opencensus.trace.AttributeValue;
+import io.opencensus.trace.Span;
+import io.vavr.collection.Map;
+import io.vavr.collection.Set;
+import io.vavr.concurrent.Future;
+import io.vavr.concurrent.Promise;
+import io.vavr.control.Try;
+
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Sends a second (hedged) attempt when the first attempt of a lookup takes longer than usual,
+ * and uses whichever attempt answers first. The slower attempt is cancelled.
+ * <p>
+ * An attempt takes "longer than usual" when it takes longer than a percentile (e.g. the 95th) of the recent latencies.
+ * So roughly only the slowest few percent of the lookups are hedged, which cuts the tail latency without doubling the load.
+ * On top of that the number of hedges is capped to a ratio of the number of lookups (the hedge budget),
+ * so a downstream service that is slow across the board does not receive twice the load.
+ * <p>
+ * Every attempt is executed in its own child span. The number of lookups, hedges, hedges that won
+ * and attempts of which the result was not used (wasted work) are exposed as OpenCensus gauges.
+ */
+public class HedgingBatchLoader<K, V> implements BatchLoader<K, V> {
+
+    private static final List<LabelKey> LABEL_KEYS = List.of(LabelKey.create("loader", "Name of the hedging loader"));
+
+    private static final DerivedLongGauge LOOKUPS = Metrics.getMetricRegistry().addDerivedLongGauge(
+            "hedging/lookups", "Number of lookups", "1", LABEL_KEYS);
+    private static final DerivedLongGauge HEDGES = Metrics.getMetricRegistry().addDerivedLongGauge(
+            "hedging/hedges", "Number of hedged attempts that were sent", "1", LABEL_KEYS);
+    private static final DerivedLongGauge HEDGE_WINS = Metrics.getMetricRegistry().addDerivedLongGauge(
+            "hedging/hedge_wins", "Number of hedged attempts that answered before the first attempt", "1", LABEL_KEYS);
+    private static final DerivedLongGauge WASTED_ATTEMPTS = Metrics.getMetricRegistry().addDerivedLongGauge(
+            "hedging/wasted_attempts", "Number of attempts of which the result was not used", "1", LABEL_KEYS);
+
+    /**
+     * Until this many latencies have been recorded, the initial hedge delay is used
+     */
+    private static final int MIN_SAMPLES = 20;
+    private static final double MAX_HEDGE_BUDGET = 10;
+
+    private final String name;
+    private final BatchLoader<K, V> delegate;
+    private final double hedgeDelayPercentile;
+    private final long minHedgeDelayNanos;
+    private final long initialHedgeDelayNanos;
+    private final double maxHedgeRatio;
+    private final ExecutorService executor;
+    private final ScheduledExecutorService scheduler;
+
+    private final LatencyWindow latencies = new LatencyWindow(1_000);
+    private final AtomicLong lookups = new AtomicLong();
+    private final AtomicLong hedges = new AtomicLong();
+    private final AtomicLong hedgeWins = new AtomicLong();
+    private final AtomicLong wastedAttempts = new AtomicLong();
+
+    // Guarded by this
+    private double hedgeBudget;
+
+    /**
+     * @param hedgeDelayPercentile   the percentile (0 - 1) of the recent latencies after which a hedged attempt is sent
+     * @param minHedgeDelayMillis    a hedged attempt is never sent sooner than this
+     * @param initialHedgeDelayMillis the delay that is used while there are not enough recent latencies
+     * @param maxHedgeRatio          the maximum number of hedged attempts per lookup (0 - 1), e.g. 0.1 for at most 10%
+     */
+    public HedgingBatchLoader(final String name,
+                              final BatchLoader<K, V> delegate,
+                              final double hedgeDelayPercentile,
+                              final long minHedgeDelayMillis,
+                              final long initialHedgeDelayMillis,
+                              final double maxHedgeRatio,
+                              final ExecutorService executor) {
+        if (hedgeDelayPercentile <= 0 || hedgeDelayPercentile >= 1) {
+            throw new IllegalArgumentException(String.format("The hedge delay percentile must be > 0 and < 1, but was %s", hedgeDelayPercentile));
+        }
+        this.name = name;
+        this.delegate = delegate;
+        this.hedgeDelayPercentile = hedgeDelayPercentile;
+        this.minHedgeDelayNanos = TimeUnit.MILLISECONDS.toNanos(minHedgeDelayMillis);
+        this.initialHedgeDelayNanos = TimeUnit.MILLISECONDS.toNanos(initialHedgeDelayMillis);
+        this.maxHedgeRatio = maxHedgeRatio;
+        this.executor = executor;
+        final var scheduler = new ScheduledThreadPoolExecutor(1, runnable -> {
+            final var thread = new Thread(runnable, String.format("%s-hedging", name));
+            thread.setDaemon(true);
+            return thread;
+        });
+        // Most lookups answer before their hedge is due, their timers should not pile up until then
+        scheduler.setRemoveOnCancelPolicy(true);
+        this.scheduler = scheduler;
+
+        final var labelValues = List.of(LabelValue.create(name));
+        LOOKUPS.createTimeSeries(labelValues, lookups, AtomicLong::get);
+        HEDGES.createTimeSeries(labelValues, hedges, AtomicLong::get);
+        HEDGE_WINS.createTimeSeries(labelValues, hedgeWins, AtomicLong::get);
+        WASTED_ATTEMPTS.createTimeSeries(labelValues, wastedAttempts, AtomicLong::get);
+    }
+
+    @Override
+    public Future<Map<K, V>> loadAll(final Set<K> keys, final Span span) {
+        lookups.incrementAndGet();
+        synchronized (this) {
+            hedgeBudget = Math.min(MAX_HEDGE_BUDGET, hedgeBudget + maxHedgeRatio);
+        }
+
+        final var lookup = new Lookup(keys, span);
+        lookup.sendAttempt(false);
+        lookup.scheduleHedge(currentHedgeDelayNanos());
+        return lookup.result.future();
+    }
+
+    public long getLookupCount() {
+        return lookups.get();
+    }
+
+    public long getHedgeCount() {
+        return hedges.get();
+    }
+
+    public long getHedgeWinCount() {
+        return hedgeWins.get();
+    }
+
+    public long getWastedAttemptCount() {
+        return wastedAttempts.get();
+    }
+
+    private long currentHedgeDelayNanos() {
+        if (latencies.size() < MIN_SAMPLES) {
+            return initialHedgeDelayNanos;
+        }
+        return Math.max(minHedgeDelayNanos, latencies.percentileNanos(hedgeDelayPercentile));
+    }
+
+    private synchronized boolean takeFromHedgeBudget() {
+        if (hedgeBudget < 1) {
+            return false;
+        }
+        hedgeBudget--;
+        return true;
+    }
+
+    /**
+     * The (at most two) attempts of one lookup
+     */
+    private class Lookup {
+        private final Set<K> keys;
+        private final Span span;
+        private final Promise<Map<K, V>> result = Promise.make(executor);
+        private final AtomicInteger attemptsInFlight = new AtomicInteger();
+        private volatile Future<Map<K, V>> firstAttempt;
+        private volatile Future<Map<K, V>> hedgedAttempt;
+        private volatile ScheduledFuture<?> hedgeTimer;
+
+        Lookup(final Set<K> keys, final Span span) {
+            this.keys = keys;
+            this.span = span;
+        }
+
+        void scheduleHedge(final long delayNanos) {
+            hedgeTimer = scheduler.schedule(this::hedgeIfStillWaiting, delayNanos, TimeUnit.NANOSECONDS);
+            // The first attempt may already have answered
+            if (result.isCompleted()) {
+                cancelHedge();
+            }
+        }
+
+        void hedgeIfStillWaiting() {
+            if (result.isCompleted() || !takeFromHedgeBudget()) {
+                return;
+            }
+            hedges.incrementAndGet();
+            sendAttempt(true);
+        }
+
+        void sendAttempt(final boolean hedged) {
+            final var attemptSpan = TracingUtil.createNewChildSpan(
+                    String.format("%s#%s", name, hedged ? "hedgedAttempt" : "firstAttempt"), span);
+            attemptSpan.putAttribute("hedged", AttributeValue.booleanAttributeValue(hedged));
+
+            attemptsInFlight.incrementAndGet();
+            final var startNanos = System.nanoTime();
+            final var attempt = Try.of(() -> delegate.loadAll(keys, attemptSpan))
+                    .getOrElseGet(failure -> Future.failed(executor, failure));
+            if (hedged) {
+                hedgedAttempt = attempt;
+            } else {
+                firstAttempt = attempt;
+            }
+
+            attempt.onComplete(attemptResult -> {
+                attemptSpan.end();
+                final var lastAttempt = attemptsInFlight.decrementAndGet() == 0;
+
+                if (attemptResult.isSuccess()) {
+                    latencies.record(System.nanoTime() - startNanos);
+                    if (result.trySuccess(attemptResult.get())) {
+                        if (hedged) {
+                            hedgeWins.incrementAndGet();
+                        }
+                        cancelHedge();
+                        cancelOtherAttempt(hedged);
+                    } else {
+                        wastedAttempts.incrementAndGet();
+                    }
+                    return;
+                }
+
+                // A slower attempt that was cancelled took at least this long. Leaving it out would make the recent
+                // latencies look faster than they are, so the hedge delay would keep dropping and hedging would fire more often
+                if (attemptResult.getCause() instanceof CancellationException) {
+                    latencies.record(System.nanoTime() - startNanos);
+                }
+                if (lastAttempt && !result.isCompleted()) {
+                    // Only fail when no other attempt can still succeed
+                    if (result.tryFailure(attemptResult.getCause())) {
+                        cancelHedge();
+                    }
+                } else if (result.isCompleted()) {
+                    wastedAttempts.incrementAndGet();
+                }
+            });
+        }
+
+        private void cancelHedge() {
+            final var timer = hedgeTimer;
+            if (timer != null) {
+                timer.cancel(false);
+            }
+        }
+
+        private void cancelOtherAttempt(final boolean hedged) {
+            final var otherAttempt = hedged ? firstAttempt : hedgedAttempt;
+            if (otherAttempt != null && !otherAttempt.isCompleted()) {
+                otherAttempt.cancel();
+            }
+        }
+    }
+}
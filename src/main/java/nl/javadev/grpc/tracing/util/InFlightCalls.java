@@ -0,0 +1,115 @@
+package nl.javadev.grpc.tracing.util;
+
+import io.grpc.CallOptions;
+import io.grpc.Channel;
+import io.grpc.ClientCall;
+import io.grpc.ClientInterceptor;
+import io.grpc.ForwardingClientCall.SimpleForwardingClientCall;
+import io.grpc.ForwardingClientCallListener.SimpleForwardingClientCallListener;
+import io.grpc.ForwardingServerCall.SimpleForwardingServerCall;
+import io.grpc.ForwardingServerCallListener.SimpleForwardingServerCallListener;
+import io.grpc.Metadata;
+import io.grpc.MethodDescriptor;
+import io.grpc.ServerCall;
+import io.grpc.ServerCallHandler;
+import io.grpc.ServerInterceptor;
+import io.grpc.Status;
+import io.opencensus.metrics.DerivedLongGauge;
+import io.opencensus.metrics.LabelKey;
+import io.opencensus.metrics.LabelValue;
+import io.opencensus.metrics.Metrics;
+
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Counts the calls that have been started but not finished yet, per method, exposed as OpenCensus gauges.
+ * The latencies, sizes and status codes of the calls are recorded by gRPC itself, see {@link GrpcViews}.
+ */
+public class InFlightCalls {
+
+    private static final List<LabelKey> LABEL_KEYS = List.of(LabelKey.create("method", "Full name of the gRPC method"));
+
+    private static final InFlightCalls SERVER = new InFlightCalls(Metrics.getMetricRegistry().addDerivedLongGauge(
+            "grpc/server/in_flight_calls", "Number of calls that are being handled", "1", LABEL_KEYS));
+    private static final InFlightCalls CLIENT = new InFlightCalls(Metrics.getMetricRegistry().addDerivedLongGauge(
+            "grpc/client/in_flight_calls", "Number of calls that are waiting for a response", "1", LABEL_KEYS));
+
+    private final DerivedLongGauge gauge;
+    private final ConcurrentMap<String, AtomicLong> inFlightPerMethod = new ConcurrentHashMap<>();
+
+    private InFlightCalls(final DerivedLongGauge gauge) {
+        this.gauge = gauge;
+    }
+
+    public static ServerInterceptor serverInterceptor() {
+        return new ServerInterceptor() {
+            @Override
+            public <ReqT, RespT> ServerCall.Listener<ReqT> interceptCall(final ServerCall<ReqT, RespT> call,
+                                                                         final Metadata headers,
+                                                                         final ServerCallHandler<ReqT, RespT> next) {
+                final var inFlight = SERVER.forMethod(call.getMethodDescriptor());
+                final var finished = new AtomicBoolean();
+                inFlight.incrementAndGet();
+
+                final var listener = next.startCall(new SimpleForwardingServerCall<>(call) {
+                    @Override
+                    public void close(final Status status, final Metadata trailers) {
+                        finish(inFlight, finished);
+                        super.close(status, trailers);
+                    }
+                }, headers);
+
+                return new SimpleForwardingServerCallListener<>(listener) {
+                    @Override
+                    public void onCancel() {
+                        finish(inFlight, finished);
+                        super.onCancel();
+                    }
+                };
+            }
+        };
+    }
+
+    public static ClientInterceptor clientInterceptor() {
+        return new ClientInterceptor() {
+            @Override
+            public <ReqT, RespT> ClientCall<ReqT, RespT> interceptCall(final MethodDescriptor<ReqT, RespT> method,
+                                                                       final CallOptions callOptions,
+                                                                       final Channel next) {
+                final var inFlight = CLIENT.forMethod(method);
+                return new SimpleForwardingClientCall<>(next.newCall(method, callOptions)) {
+                    @Override
+                    public void start(final Listener<RespT> responseListener, final Metadata headers) {
+                        // Once started, the listener is always closed
+                        inFlight.incrementAndGet();
+                        super.start(new SimpleForwardingClientCallListener<>(responseListener) {
+                            @Override
+                            public void onClose(final Status status, final Metadata trailers) {
+                                inFlight.decrementAndGet();
+                                super.onClose(status, trailers);
+                            }
+                        }, headers);
+                    }
+                };
+            }
+        };
+    }
+
+    private AtomicLong forMethod(final MethodDescriptor<?, ?> method) {
+        return inFlightPerMethod.computeIfAbsent(method.getFullMethodName(), methodName -> {
+            final var inFlight = new AtomicLong();
+            gauge.createTimeSeries(List.of(LabelValue.create(methodName)), inFlight, AtomicLong::get);
+            return inFlight;
+        });
+    }
+
+    private static void finish(final AtomicLong inFlight, final AtomicBoolean finished) {
+        if (finished.compareAndSet(false, true)) {
+            inFlight.decrementAndGet();
+        }
+    }
+}
@@ -0,0 +1,73 @@
+package nl.javadev.grpc.tracing.util;
+
+import java.util.Arrays;
+
+/**
+ * Keeps the most recent latencies, so percentiles of the recent latency can be determined.
+ * <p>
+ * A percentile is looked up far more often than it changes noticeably, so it is cached:
+ * it is only determined again after a number of new latencies has been recorded,
+ * by sorting the latencies in an array that is reused, so looking it up does not allocate.
+ */
+public class LatencyWindow {
+
+    private final long[] latenciesNanos;
+    private final long[] sortedNanos;
+    private final int recomputeEvery;
+    private int nextIndex;
+    private int size;
+
+    private double cachedPercentile = Double.NaN;
+    private long cachedPercentileNanos;
+    private int recordedSinceComputed;
+
+    public LatencyWindow(final int capacity) {
+        this(capacity, Math.max(1, capacity / 20));
+    }
+
+    /**
+     * @param recomputeEvery the number of recorded latencies after which a percentile is determined again
+     */
+    public LatencyWindow(final int capacity, final int recomputeEvery) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException(String.format("The capacity must be at least 1, but was %s", capacity));
+        }
+        if (recomputeEvery < 1) {
+            throw new IllegalArgumentException(String.format("The number of latencies after which a percentile is determined again must be at least 1, but was %s", recomputeEvery));
+        }
+        this.latenciesNanos = new long[capacity];
+        this.sortedNanos = new long[capacity];
+        this.recomputeEvery = recomputeEvery;
+    }
+
+    public synchronized void record(final long latencyNanos) {
+        latenciesNanos[nextIndex] = latencyNanos;
+        nextIndex = (nextIndex + 1) % latenciesNanos.length;
+        size = Math.min(size + 1, latenciesNanos.length);
+        recordedSinceComputed++;
+    }
+
+    public synchronized int size() {
+        return size;
+    }
+
+    /**
+     * @param percentile between 0 and 1, e.g. 0.95 for the 95th percentile
+     * @return the latency at the given percentile, or 0 when no latency has been recorded yet
+     */
+    public synchronized long percentileNanos(final double percentile) {
+        if (size == 0) {
+            return 0;
+        }
+        // While the window is still filling up, the percentile is determined again sooner
+        if (percentile != cachedPercentile || recordedSinceComputed >= Math.min(recomputeEvery, size)) {
+            System.arraycopy(latenciesNanos, 0, sortedNanos, 0, size);
+            Arrays.sort(sortedNanos, 0, size);
+            final var index = (int) Math.ceil(percentile * size) - 1;
+            cachedPercentileNanos = sortedNanos[Math.max(0, Math.min(index, size - 1))];
+            cachedPercentile = percentile;
+            recordedSinceComputed = 0;
+        }
+        return cachedPercentileNanos;
+    }
+}
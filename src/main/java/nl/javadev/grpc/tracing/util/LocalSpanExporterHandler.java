@@ -0,0 +1,38 @@
+package nl.javadev.grpc.tracing.util;
+
+import io.opencensus.trace.export.SpanData;
+import io.opencensus.trace.export.SpanExporter;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Only counts the exported spans per span name, so the services can run without a tracing backend
+ */
+public class LocalSpanExporterHandler extends SpanExporter.Handler {
+
+    private final ConcurrentMap<String, LongAdder> exportedSpansByName = new ConcurrentHashMap<>();
+
+    @Override
+    public void export(final Collection<SpanData> spanDataList) {
+        spanDataList.forEach(spanData ->
+                exportedSpansByName.computeIfAbsent(spanData.getName(), name -> new LongAdder()).increment());
+    }
+
+    /**
+     * @return the number of exported spans per span name, sorted by name
+     */
+    public Map<String, Long> getExportedSpansByName() {
+        final var result = new TreeMap<String, Long>();
+        exportedSpansByName.forEach((name, count) -> result.put(name, count.sum()));
+        return result;
+    }
+
+    public long getExportedSpans() {
+        return exportedSpansByName.values().stream().mapToLong(LongAdder::sum).sum();
+    }
+}
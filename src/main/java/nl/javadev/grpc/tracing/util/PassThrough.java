@@ -0,0 +1,112 @@
+package nl.javadev.grpc.tracing.util;
+
+import com.google.common.io.ByteStreams;
+import io.grpc.CallOptions;
+import io.grpc.Channel;
+import io.grpc.Drainable;
+import io.grpc.KnownLength;
+import io.grpc.MethodDescriptor;
+import io.grpc.MethodDescriptor.MethodType;
+import io.grpc.ServerMethodDefinition;
+import io.grpc.ServerServiceDefinition;
+import io.grpc.Status;
+import io.grpc.stub.ClientCalls;
+import io.grpc.stub.ServerCalls;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * Forwards the calls of a method to a method of another service with the same wire format, without parsing the messages.
+ * The request and response are only copied as bytes from the incoming to the outgoing buffers,
+ * instead of being parsed into protobuf objects, copied into another message and serialized again.
+ * <p>
+ * Only the messages are passed through: the forwarded call is still started within the context of the incoming call,
+ * so the span, the deadline and the cancellation of the incoming call are passed on as usual.
+ */
+public class PassThrough {
+
+    /**
+     * Passes on the serialized message as is
+     */
+    public static final MethodDescriptor.Marshaller<byte[]> MARSHALLER = new RawMarshaller();
+
+    /**
+     * Returns the service, but with the unary method replaced by one that forwards its calls to the target method
+     *
+     * @param targetMethod must accept the request, and return a response, that can be read as the request and response of the method
+     */
+    public static ServerServiceDefinition forwardUnaryCalls(final ServerServiceDefinition service,
+                                                            final MethodDescriptor<?, ?> method,
+                                                            final Channel channel,
+                                                            final MethodDescriptor<?, ?> targetMethod) {
+        if (method.getType() != MethodType.UNARY || targetMethod.getType() != MethodType.UNARY) {
+            throw new IllegalArgumentException(String.format("Only calls of a unary method can be forwarded to a unary method, not %s to %s",
+                    method.getFullMethodName(), targetMethod.getFullMethodName()));
+        }
+
+        final var rawTargetMethod = raw(targetMethod);
+        // The service descriptor refers to the parsing methods, so it is rebuilt from the methods that are bound
+        final var builder = ServerServiceDefinition.builder(service.getServiceDescriptor().getName());
+        for (final ServerMethodDefinition<?, ?> methodDefinition : service.getMethods()) {
+            if (methodDefinition.getMethodDescriptor().getFullMethodName().equals(method.getFullMethodName())) {
+                builder.addMethod(raw(method), ServerCalls.asyncUnaryCall((request, responseObserver) ->
+                        ClientCalls.asyncUnaryCall(channel.newCall(rawTargetMethod, CallOptions.DEFAULT), request, responseObserver)));
+            } else {
+                builder.addMethod(methodDefinition);
+            }
+        }
+        return builder.build();
+    }
+
+    /**
+     * The method, but with its messages passed on as bytes
+     */
+    public static MethodDescriptor<byte[], byte[]> raw(final MethodDescriptor<?, ?> method) {
+        return method.toBuilder(MARSHALLER, MARSHALLER).build();
+    }
+
+    private static class RawMarshaller implements MethodDescriptor.Marshaller<byte[]> {
+
+        @Override
+        public InputStream stream(final byte[] value) {
+            return new RawMessageStream(value);
+        }
+
+        @Override
+        public byte[] parse(final InputStream stream) {
+            try {
+                // The buffers of a received message know their length, so they are copied into an array of the right size at once
+                if (stream instanceof KnownLength) {
+                    final var bytes = new byte[stream.available()];
+                    ByteStreams.readFully(stream, bytes);
+                    return bytes;
+                }
+                return ByteStreams.toByteArray(stream);
+            } catch (final IOException e) {
+                throw Status.INTERNAL.withDescription("Failed to read the message").withCause(e).asRuntimeException();
+            }
+        }
+    }
+
+    /**
+     * Tells gRPC the length of the message up front and lets it write the bytes straight into its buffers,
+     * like the streams of protobuf messages do
+     */
+    private static class RawMessageStream extends ByteArrayInputStream implements KnownLength, Drainable {
+
+        RawMessageStream(final byte[] bytes) {
+            super(bytes);
+        }
+
+        @Override
+        public synchronized int drainTo(final OutputStream target) throws IOException {
+            final var length = count - pos;
+            target.write(buf, pos, length);
+            pos = count;
+            return length;
+        }
+    }
+}
@@ -0,0 +1,226 @@
+package nl.javadev.grpc.tracing.util;
+
+import io.grpc.Attributes;
+import io.grpc.CallOptions;
+import io.grpc.ClientStreamTracer;
+import io.grpc.ConnectivityState;
+import io.grpc.ConnectivityStateInfo;
+import io.grpc.EquivalentAddressGroup;
+import io.grpc.LoadBalancer;
+import io.grpc.Metadata;
+import io.grpc.Status;
+import nl.javadev.grpc.tracing.util.ChannelConfig.LoadBalancing;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Opens a pool of connections to every address of a downstream service and spreads the calls over the connections
+ * that are ready, round-robin or to the connection with the fewest outstanding calls (see {@link LoadBalancing}).
+ * <p>
+ * The state of the connections is handled by the channel, one event at a time,
+ * the picker is called by every thread that starts a call.
+ */
+public class PoolingLoadBalancer extends LoadBalancer {
+
+    private static final Attributes.Key<AtomicReference<ConnectivityStateInfo>> STATE_KEY = Attributes.Key.create("state");
+    private static final Attributes.Key<AtomicInteger> OUTSTANDING_KEY = Attributes.Key.create("outstanding");
+
+    private final Helper helper;
+    private final int connectionsPerAddress;
+    private final LoadBalancing loadBalancing;
+    private final Map<EquivalentAddressGroup, List<Subchannel>> subchannelsPerAddress = new LinkedHashMap<>();
+    // Spread over the pickers of this balancer, so a new picker does not start at the first connection again
+    private final AtomicInteger nextIndex = new AtomicInteger();
+
+    private PoolingLoadBalancer(final Helper helper, final int connectionsPerAddress, final LoadBalancing loadBalancing) {
+        this.helper = helper;
+        this.connectionsPerAddress = connectionsPerAddress;
+        this.loadBalancing = loadBalancing;
+    }
+
+    public static LoadBalancer.Factory factory(final int connectionsPerAddress, final LoadBalancing loadBalancing) {
+        if (connectionsPerAddress < 1) {
+            throw new IllegalArgumentException("At least one connection per address is needed");
+        }
+        return new LoadBalancer.Factory() {
+            @Override
+            public LoadBalancer newLoadBalancer(final Helper helper) {
+                return new PoolingLoadBalancer(helper, connectionsPerAddress, loadBalancing);
+            }
+        };
+    }
+
+    @Override
+    public void handleResolvedAddressGroups(final List<EquivalentAddressGroup> addressGroups, final Attributes attributes) {
+        final Map<EquivalentAddressGroup, List<Subchannel>> removed = new HashMap<>(subchannelsPerAddress);
+        for (final var addressGroup : addressGroups) {
+            // The attributes of an address do not make it another address
+            final var address = new EquivalentAddressGroup(addressGroup.getAddresses());
+            if (removed.remove(address) == null && !subchannelsPerAddress.containsKey(address)) {
+                final List<Subchannel> pool = new ArrayList<>(connectionsPerAddress);
+                for (int i = 0; i < connectionsPerAddress; i++) {
+                    final var subchannel = helper.createSubchannel(address, Attributes.newBuilder()
+                            .set(STATE_KEY, new AtomicReference<>(ConnectivityStateInfo.forNonError(ConnectivityState.IDLE)))
+                            .set(OUTSTANDING_KEY, new AtomicInteger())
+                            .build());
+                    // The connections are opened right away, so the first calls do not wait for them
+                    subchannel.requestConnection();
+                    pool.add(subchannel);
+                }
+                subchannelsPerAddress.put(address, pool);
+            }
+        }
+
+        // The calls that are still running on the connections to an address that is no longer there, are finished first
+        removed.forEach((address, pool) -> {
+            subchannelsPerAddress.remove(address);
+            pool.forEach(Subchannel::shutdown);
+        });
+        updateBalancingState(null);
+    }
+
+    @Override
+    public void handleNameResolutionError(final Status error) {
+        if (subchannelsPerAddress.isEmpty()) {
+            helper.updateBalancingState(ConnectivityState.TRANSIENT_FAILURE, new FailingPicker(error));
+        }
+    }
+
+    @Override
+    public void handleSubchannelState(final Subchannel subchannel, final ConnectivityStateInfo stateInfo) {
+        final var pool = subchannelsPerAddress.get(subchannel.getAddresses());
+        if (pool == null || !pool.contains(subchannel)) {
+            return;
+        }
+        if (stateInfo.getState() == ConnectivityState.IDLE) {
+            // E.g. the server closed the connection, it is opened again so the pool stays complete
+            subchannel.requestConnection();
+        }
+        subchannel.getAttributes().get(STATE_KEY).set(stateInfo);
+        updateBalancingState(stateInfo.getStatus());
+    }
+
+    @Override
+    public void shutdown() {
+        subchannelsPerAddress.values().forEach(pool -> pool.forEach(Subchannel::shutdown));
+        subchannelsPerAddress.clear();
+    }
+
+    private void updateBalancingState(final Status lastError) {
+        final List<Subchannel> ready = new ArrayList<>();
+        var connecting = false;
+        for (final var pool : subchannelsPerAddress.values()) {
+            for (final var subchannel : pool) {
+                final var state = subchannel.getAttributes().get(STATE_KEY).get().getState();
+                if (state == ConnectivityState.READY) {
+                    ready.add(subchannel);
+                } else if (state == ConnectivityState.CONNECTING || state == ConnectivityState.IDLE) {
+                    connecting = true;
+                }
+            }
+        }
+
+        if (!ready.isEmpty()) {
+            helper.updateBalancingState(ConnectivityState.READY, loadBalancing == LoadBalancing.LEAST_OUTSTANDING_REQUESTS
+                    ? new LeastOutstandingRequestsPicker(ready, nextIndex)
+                    : new RoundRobinPicker(ready, nextIndex));
+        } else if (connecting || subchannelsPerAddress.isEmpty()) {
+            // The calls wait until a connection is ready
+            helper.updateBalancingState(ConnectivityState.CONNECTING, new WaitingPicker());
+        } else {
+            helper.updateBalancingState(ConnectivityState.TRANSIENT_FAILURE, new FailingPicker(lastError != null && !lastError.isOk()
+                    ? lastError
+                    : Status.UNAVAILABLE.withDescription("None of the connections is ready")));
+        }
+    }
+
+    private static class RoundRobinPicker extends SubchannelPicker {
+        final List<Subchannel> ready;
+        final AtomicInteger nextIndex;
+
+        RoundRobinPicker(final List<Subchannel> ready, final AtomicInteger nextIndex) {
+            this.ready = ready;
+            this.nextIndex = nextIndex;
+        }
+
+        @Override
+        public PickResult pickSubchannel(final PickSubchannelArgs args) {
+            return PickResult.withSubchannel(ready.get(Math.floorMod(nextIndex.getAndIncrement(), ready.size())));
+        }
+    }
+
+    /**
+     * Picks the connection with the fewest calls that have been sent but not answered yet.
+     * The search starts at the next connection every time, so equally busy connections get their turn
+     */
+    private static class LeastOutstandingRequestsPicker extends RoundRobinPicker {
+
+        LeastOutstandingRequestsPicker(final List<Subchannel> ready, final AtomicInteger nextIndex) {
+            super(ready, nextIndex);
+        }
+
+        @Override
+        public PickResult pickSubchannel(final PickSubchannelArgs args) {
+            final var start = nextIndex.getAndIncrement();
+            Subchannel least = null;
+            var leastOutstanding = Integer.MAX_VALUE;
+            for (int i = 0; i < ready.size(); i++) {
+                final var subchannel = ready.get(Math.floorMod(start + i, ready.size()));
+                final var outstanding = subchannel.getAttributes().get(OUTSTANDING_KEY).get();
+                if (outstanding < leastOutstanding) {
+                    least = subchannel;
+                    leastOutstanding = outstanding;
+                }
+            }
+            return PickResult.withSubchannel(least, new OutstandingCallsTracerFactory(least.getAttributes().get(OUTSTANDING_KEY)));
+        }
+    }
+
+    /**
+     * Counts the call as outstanding from the moment it is sent over the connection until it is closed
+     */
+    private static class OutstandingCallsTracerFactory extends ClientStreamTracer.Factory {
+        private final AtomicInteger outstanding;
+
+        OutstandingCallsTracerFactory(final AtomicInteger outstanding) {
+            this.outstanding = outstanding;
+        }
+
+        @Override
+        public ClientStreamTracer newClientStreamTracer(final CallOptions callOptions, final Metadata headers) {
+            outstanding.incrementAndGet();
+            return new ClientStreamTracer() {
+                @Override
+                public void streamClosed(final Status status) {
+                    outstanding.decrementAndGet();
+                }
+            };
+        }
+    }
+
+    private static class WaitingPicker extends SubchannelPicker {
+        @Override
+        public PickResult pickSubchannel(final PickSubchannelArgs args) {
+            return PickResult.withNoResult();
+        }
+    }
+
+    private static class FailingPicker extends SubchannelPicker {
+        private final Status error;
+
+        FailingPicker(final Status error) {
+            this.error = error;
+        }
+
+        @Override
+        public PickResult pickSubchannel(final PickSubchannelArgs args) {
+            return PickResult.withError(error);
+        }
+    }
+}
@@ -0,0 +1,227 @@
+package nl.javadev.grpc.tracing.util;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import io.opencensus.metrics.LabelKey;
+import io.opencensus.metrics.LabelValue;
+import io.opencensus.metrics.Metrics;
+import io.opencensus.metrics.export.Metric;
+import io.opencensus.metrics.export.MetricDescriptor;
+import io.opencensus.stats.Aggregation;
+import io.opencensus.stats.AggregationData;
+import io.opencensus.stats.Stats;
+import io.opencensus.stats.View;
+import io.opencensus.tags.TagKey;
+import io.opencensus.tags.TagValue;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.stream.Collectors;
+
+/**
+ * Serves the OpenCensus views and gauges of this JVM at <code>/metrics</code>, in the text format that Prometheus scrapes.
+ * Can also serve the health of the server, see {@link #serveHealth(ServiceHealth)}
+ */
+public class PrometheusMetricsServer implements AutoCloseable {
+
+    private static final String CONTENT_TYPE = "text/plain; version=0.0.4; charset=utf-8";
+
+    private final HttpServer httpServer;
+
+    private PrometheusMetricsServer(final HttpServer httpServer) {
+        this.httpServer = httpServer;
+    }
+
+    public static PrometheusMetricsServer start(final int port) throws IOException {
+        final var httpServer = HttpServer.create(new InetSocketAddress(port), 0);
+        httpServer.createContext("/metrics", PrometheusMetricsServer::handle);
+        httpServer.setExecutor(Executors.newSingleThreadExecutor(runnable -> {
+            final var thread = new Thread(runnable, "metrics-http");
+            thread.setDaemon(true);
+            return thread;
+        }));
+        httpServer.start();
+        return new PrometheusMetricsServer(httpServer);
+    }
+
+    /**
+     * Serves <code>/health/live</code>, which answers 200 as long as the server runs,
+     * and <code>/health/ready</code>, which answers 200 when the server is ready to handle calls and 503 otherwise (e.g. while it drains)
+     */
+    public PrometheusMetricsServer serveHealth(final ServiceHealth health) {
+        httpServer.createContext("/health/live", exchange -> respond(exchange, 200, "live"));
+        httpServer.createContext("/health/ready", exchange -> {
+            if (health.isReady()) {
+                respond(exchange, 200, "ready");
+            } else {
+                respond(exchange, 503, "not ready");
+            }
+        });
+        return this;
+    }
+
+    public int getPort() {
+        return httpServer.getAddress().getPort();
+    }
+
+    @Override
+    public void close() {
+        httpServer.stop(0);
+    }
+
+    private static void handle(final HttpExchange exchange) throws IOException {
+        respond(exchange, 200, scrape());
+    }
+
+    private static void respond(final HttpExchange exchange, final int statusCode, final String text) throws IOException {
+        final var body = text.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", CONTENT_TYPE);
+        exchange.sendResponseHeaders(statusCode, body.length);
+        try (var responseBody = exchange.getResponseBody()) {
+            responseBody.write(body);
+        }
+    }
+
+    /**
+     * Renders all registered views and all gauges
+     */
+    public static String scrape() {
+        final var out = new StringBuilder();
+        final Set<String> viewNames = new HashSet<>();
+        final var viewManager = Stats.getViewManager();
+        for (final View view : viewManager.getAllExportedViews()) {
+            viewNames.add(view.getName().asString());
+            final var viewData = viewManager.getView(view.getName());
+            if (viewData != null) {
+                appendView(out, view, viewData.getAggregationMap());
+            }
+        }
+        for (final var producer : Metrics.getExportComponent().getMetricProducerManager().getAllMetricProducer()) {
+            for (final Metric metric : producer.getMetrics()) {
+                // Views may be exported as metrics as well
+                if (!viewNames.contains(metric.getMetricDescriptor().getName())) {
+                    appendMetric(out, metric);
+                }
+            }
+        }
+        return out.toString();
+    }
+
+    private static void appendView(final StringBuilder out, final View view,
+                                   final Map<List<TagValue>, AggregationData> aggregationMap) {
+        final var name = sanitize(view.getName().asString());
+        final var labelNames = view.getColumns().stream().map(TagKey::getName).collect(Collectors.toList());
+        final List<Double> boundaries = view.getAggregation() instanceof Aggregation.Distribution
+                ? ((Aggregation.Distribution) view.getAggregation()).getBucketBoundaries().getBoundaries()
+                : List.of();
+        final var type = view.getAggregation() instanceof Aggregation.Distribution ? "histogram"
+                : view.getAggregation() instanceof Aggregation.LastValue ? "gauge" : "counter";
+        appendHeader(out, name, view.getDescription(), type);
+
+        aggregationMap.forEach((tagValues, data) -> {
+            final var labelValues = tagValues.stream()
+                    .map(tagValue -> tagValue == null ? "" : tagValue.asString())
+                    .collect(Collectors.toList());
+            final var labels = labels(labelNames, labelValues);
+            data.match(
+                    sumDouble -> appendSample(out, name, labels, sumDouble.getSum()),
+                    sumLong -> appendSample(out, name, labels, sumLong.getSum()),
+                    count -> appendSample(out, name, labels, count.getCount()),
+                    distribution -> appendHistogram(out, name, labelNames, labelValues, boundaries,
+                            distribution.getBucketCounts(), distribution.getCount(), distribution.getMean() * distribution.getCount()),
+                    lastDouble -> appendSample(out, name, labels, lastDouble.getLastValue()),
+                    lastLong -> appendSample(out, name, labels, lastLong.getLastValue()),
+                    other -> null);
+        });
+    }
+
+    private static void appendMetric(final StringBuilder out, final Metric metric) {
+        final var descriptor = metric.getMetricDescriptor();
+        final var name = sanitize(descriptor.getName());
+        final var labelNames = descriptor.getLabelKeys().stream().map(LabelKey::getKey).collect(Collectors.toList());
+        final var type = descriptor.getType() == MetricDescriptor.Type.CUMULATIVE_INT64
+                || descriptor.getType() == MetricDescriptor.Type.CUMULATIVE_DOUBLE ? "counter" : "gauge";
+        appendHeader(out, name, descriptor.getDescription(), type);
+
+        for (final var timeSeries : metric.getTimeSeriesList()) {
+            final var labels = labels(labelNames, timeSeries.getLabelValues().stream()
+                    .map(LabelValue::getValue)
+                    .map(value -> value == null ? "" : value)
+                    .collect(Collectors.toList()));
+            for (final var point : timeSeries.getPoints()) {
+                // Only the gauges and counters are rendered, there are no distributions among the metrics
+                point.getValue().match(
+                        doubleValue -> appendSample(out, name, labels, doubleValue),
+                        longValue -> appendSample(out, name, labels, longValue),
+                        distribution -> null,
+                        summary -> null,
+                        other -> null);
+            }
+        }
+    }
+
+    private static Void appendHistogram(final StringBuilder out, final String name,
+                                        final List<String> labelNames, final List<String> labelValues,
+                                        final List<Double> boundaries, final List<Long> bucketCounts,
+                                        final long count, final double sum) {
+        final var bucketLabelNames = new ArrayList<>(labelNames);
+        bucketLabelNames.add("le");
+        long cumulativeCount = 0;
+        for (int i = 0; i < bucketCounts.size(); i++) {
+            cumulativeCount += bucketCounts.get(i);
+            final var bucketLabelValues = new ArrayList<>(labelValues);
+            bucketLabelValues.add(i < boundaries.size() ? String.valueOf(boundaries.get(i)) : "+Inf");
+            appendSample(out, name + "_bucket", labels(bucketLabelNames, bucketLabelValues), cumulativeCount);
+        }
+        final var labels = labels(labelNames, labelValues);
+        appendSample(out, name + "_sum", labels, sum);
+        return appendSample(out, name + "_count", labels, count);
+    }
+
+    private static void appendHeader(final StringBuilder out, final String name, final String description, final String type) {
+        out.append("# HELP ").append(name).append(' ').append(description.replace("\\", "\\\\").replace("\n", "\\n")).append('\n');
+        out.append("# TYPE ").append(name).append(' ').append(type).append('\n');
+    }
+
+    private static Void appendSample(final StringBuilder out, final String name, final String labels, final double value) {
+        out.append(name).append(labels).append(' ').append(value).append('\n');
+        return null;
+    }
+
+    private static Void appendSample(final StringBuilder out, final String name, final String labels, final long value) {
+        out.append(name).append(labels).append(' ').append(value).append('\n');
+        return null;
+    }
+
+    private static String labels(final List<String> names, final List<String> values) {
+        if (names.isEmpty()) {
+            return "";
+        }
+        final var labels = new StringBuilder("{");
+        for (int i = 0; i < names.size(); i++) {
+            if (i > 0) {
+                labels.append(',');
+            }
+            labels.append(sanitize(names.get(i))).append("=\"")
+                    .append(values.get(i).replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n"))
+                    .append('"');
+        }
+        return labels.append('}').toString();
+    }
+
+    /**
+     * Prometheus only allows letters, digits, underscores and colons in names, e.g. grpc.io/client/roundtrip_latency
+     * becomes grpc_io_client_roundtrip_latency
+     */
+    private static String sanitize(final String name) {
+        final var sanitized = name.replaceAll("[^a-zA-Z0-9_:]", "_");
+        return Character.isDigit(sanitized.charAt(0)) ? "_" + sanitized : sanitized;
+    }
+}
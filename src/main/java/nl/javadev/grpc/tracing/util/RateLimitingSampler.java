@@ -0,0 +1,48 @@
+package nl.javadev.grpc.tracing.util;
+
+import io.opencensus.trace.TraceId;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Samples at most the given number of new traces per second, no matter how many requests come in.
+ * Short bursts are allowed up to one second worth of traces.
+ */
+public class RateLimitingSampler extends HeadSampler {
+
+    private final double tracesPerSecond;
+    private final double maxBalance;
+
+    // A token bucket: every sampled trace takes one token, the bucket is refilled at the allowed rate
+    private double balance;
+    private long lastRefillNanos;
+
+    public RateLimitingSampler(final double tracesPerSecond) {
+        if (tracesPerSecond < 0) {
+            throw new IllegalArgumentException(String.format("The traces per second cannot be negative, but was %s", tracesPerSecond));
+        }
+        this.tracesPerSecond = tracesPerSecond;
+        this.maxBalance = Math.max(1, tracesPerSecond);
+        this.balance = maxBalance;
+        this.lastRefillNanos = System.nanoTime();
+    }
+
+    @Override
+    protected synchronized boolean shouldSampleNewTrace(final TraceId traceId) {
+        final var nowNanos = System.nanoTime();
+        final var elapsedSeconds = (nowNanos - lastRefillNanos) / (double) TimeUnit.SECONDS.toNanos(1);
+        balance = Math.min(maxBalance, balance + elapsedSeconds * tracesPerSecond);
+        lastRefillNanos = nowNanos;
+
+        if (balance < 1) {
+            return false;
+        }
+        balance -= 1;
+        return true;
+    }
+
+    @Override
+    public String getDescription() {
+        return String.format("RateLimitingSampler{%s}", tracesPerSecond);
+    }
+}
@@ -0,0 +1,191 @@
+package nl.javadev.grpc.tracing.util;
+
+import io.grpc.Context;
+import io.opencensus.trace.AttributeValue;
+import io.opencensus.trace.Link;
+import io.opencensus.trace.Span;
+import io.vavr.collection.LinkedHashMap;
+import io.vavr.collection.List;
+import io.vavr.collection.Map;
+import io.vavr.collection.Set;
+import io.vavr.concurrent.Future;
+import io.vavr.concurrent.Promise;
+import io.vavr.control.Option;
+import io.vavr.control.Try;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongConsumer;
+
+/**
+ * Coalesces the lookups of concurrent callers into shared batches.
+ * <p>
+ * Keys are collected until either the batch is full or the batch window has passed since the first key was added.
+ * The batch is then loaded with a single call to the delegate and the results are handed to every waiting caller.
+ * Keys that are requested by multiple callers within the same window are only looked up once.
+ * <p>
+ * The batch is loaded in its own span. This span is linked to the spans of all the callers that are waiting for it,
+ * and the other way around, so the trace of every caller shows which (shared) batch it was part of.
+ * <p>
+ * The batch is not part of the call of any one caller: it is loaded and its results are handed out outside of the gRPC context
+ * of the caller that happened to fill it, so the deadline or cancellation of that caller does not fail the batch for the others.
+ * The delegate should therefore set the deadline of its downstream call itself.
+ * <p>
+ * The results are handed to the callers by the given executor, which should not be used for blocking work.
+ * <p>
+ * A caller that wants to know how long its keys waited for their batch to be sent can set a {@link #BATCH_SENT_LISTENER}
+ * in its gRPC context. It is told the moment every batch with its keys is sent.
+ */
+public class RequestCoalescer<K, V> implements BatchLoader<K, V> {
+
+    /**
+     * Is told the moment (System.nanoTime) a batch with keys of the caller is sent, on the thread that sends it
+     */
+    public static final Context.Key<LongConsumer> BATCH_SENT_LISTENER = Context.key("batchSentListener");
+
+    private final String name;
+    private final BatchLoader<K, V> delegate;
+    private final int maxBatchSize;
+    private final long batchWindowMillis;
+    private final ExecutorService executor;
+    private final ScheduledExecutorService scheduler;
+
+    private PendingBatch currentBatch;
+
+    public RequestCoalescer(final String name,
+                            final BatchLoader<K, V> delegate,
+                            final int maxBatchSize,
+                            final long batchWindowMillis,
+                            final ExecutorService executor) {
+        if (maxBatchSize < 1) {
+            throw new IllegalArgumentException(String.format("The max batch size must be at least 1, but was %s", maxBatchSize));
+        }
+        if (batchWindowMillis < 0) {
+            throw new IllegalArgumentException(String.format("The batch window must not be negative, but was %s", batchWindowMillis));
+        }
+        this.name = name;
+        this.delegate = delegate;
+        this.maxBatchSize = maxBatchSize;
+        this.batchWindowMillis = batchWindowMillis;
+        this.executor = executor;
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            final var thread = new Thread(runnable, String.format("%s-coalescer", name));
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    @Override
+    public Future<Map<K, V>> loadAll(final Set<K> keys, final Span span) {
+        var futures = List.<Future<Option<V>>>empty();
+        var fullBatches = List.<PendingBatch>empty();
+        final var batchSentListener = BATCH_SENT_LISTENER.get();
+
+        synchronized (this) {
+            for (final K key : keys) {
+                if (currentBatch == null) {
+                    currentBatch = startNewBatch();
+                }
+                futures = futures.prepend(currentBatch.add(key, span, batchSentListener));
+                if (currentBatch.size() >= maxBatchSize) {
+                    fullBatches = fullBatches.prepend(currentBatch);
+                    currentBatch = null;
+                }
+            }
+        }
+
+        // Flush outside of the lock, the delegate may take a while to start its call
+        fullBatches.reverse().forEach(this::flushDetached);
+
+        return Future.sequence(executor, futures.reverse())
+                .map(optionalValues -> keys.toList()
+                        .zip(optionalValues)
+                        .filter(keyAndValue -> keyAndValue._2.isDefined())
+                        .toMap(keyAndValue -> keyAndValue._1, keyAndValue -> keyAndValue._2.get()));
+    }
+
+    private PendingBatch startNewBatch() {
+        final var batch = new PendingBatch();
+        // Without a window the batch is flushed as soon as the caller that started it has added its keys
+        batch.timer = scheduler.schedule(() -> flushIfCurrent(batch), batchWindowMillis, TimeUnit.MILLISECONDS);
+        return batch;
+    }
+
+    private void flushIfCurrent(final PendingBatch batch) {
+        synchronized (this) {
+            if (currentBatch != batch) {
+                // Already flushed because it was full
+                return;
+            }
+            currentBatch = null;
+        }
+        flushDetached(batch);
+    }
+
+    /**
+     * Flushes the batch outside of the gRPC context of the current thread, both when the batch was filled by a caller
+     * and when its window passed (on the scheduler thread, which has no context anyway).
+     * So the downstream call only has its own deadline, and the promises of all callers are completed in the same, neutral, context
+     */
+    private void flushDetached(final PendingBatch batch) {
+        Context.ROOT.run(() -> flush(batch));
+    }
+
+    private void flush(final PendingBatch batch) {
+        batch.timer.cancel(false);
+
+        // The first caller becomes the parent of the batch span, all callers are linked to it
+        final var callerSpans = batch.callerSpans.distinct();
+        final var batchSpan = TracingUtil.createNewChildSpan(name, callerSpans.last());
+        callerSpans.forEach(callerSpan -> {
+            batchSpan.addLink(Link.fromSpanContext(callerSpan.getContext(), Link.Type.PARENT_LINKED_SPAN));
+            callerSpan.addLink(Link.fromSpanContext(batchSpan.getContext(), Link.Type.CHILD_LINKED_SPAN));
+        });
+
+        batchSpan.putAttribute("batchSize", AttributeValue.longAttributeValue(batch.size()));
+        batchSpan.putAttribute("nrOfCallers", AttributeValue.longAttributeValue(callerSpans.size()));
+
+        final var sentNanos = System.nanoTime();
+        batch.batchSentListeners.forEach(listener -> listener.accept(sentNanos));
+        Try.of(() -> delegate.loadAll(batch.promises.keySet(), batchSpan))
+                .getOrElseGet(failure -> Future.failed(executor, failure))
+                .onComplete(result -> {
+                    batchSpan.end();
+                    // Whichever thread completed the call, the steps of the callers are not started in its context
+                    Context.ROOT.run(() -> batch.promises.forEach((key, promise) -> promise.complete(result.map(values -> values.get(key)))));
+                });
+    }
+
+    /**
+     * The keys and callers collected for a batch that has not yet been sent
+     */
+    private class PendingBatch {
+        private Map<K, Promise<Option<V>>> promises = LinkedHashMap.empty();
+        private List<Span> callerSpans = List.empty();
+        private List<LongConsumer> batchSentListeners = List.empty();
+        private ScheduledFuture<?> timer;
+
+        Future<Option<V>> add(final K key, final Span callerSpan, final LongConsumer batchSentListener) {
+            if (callerSpans.isEmpty() || callerSpans.head() != callerSpan) {
+                callerSpans = callerSpans.prepend(callerSpan);
+            }
+            if (batchSentListener != null && (batchSentListeners.isEmpty() || batchSentListeners.head() != batchSentListener)) {
+                batchSentListeners = batchSentListeners.prepend(batchSentListener);
+            }
+            final var existingPromise = promises.get(key);
+            if (existingPromise.isDefined()) {
+                return existingPromise.get().future();
+            }
+            final var promise = Promise.<Option<V>>make(executor);
+            promises = promises.put(key, promise);
+            return promise.future();
+        }
+
+        int size() {
+            return promises.size();
+        }
+    }
+}
@@ -0,0 +1,77 @@
+package nl.javadev.grpc.tracing.util;
+
+import io.opencensus.trace.Sampler;
+import io.opencensus.trace.Tracing;
+import io.opencensus.trace.samplers.Samplers;
+
+import java.util.Locale;
+
+/**
+ * Decides which sampler is used for new traces, both for the traces started by {@link TracingUtil}
+ * and for calls that come in without a sampled parent span.
+ */
+public class Sampling {
+
+    public enum Mode {
+        // Every trace is sampled, useful for the demo but far too expensive in production
+        ALWAYS,
+        NEVER,
+        // Every trace is sampled with a fixed probability
+        PROBABILITY,
+        // At most a fixed number of traces per second is sampled
+        RATE_LIMITED,
+        // The probability is adjusted to sample about a fixed number of traces per second
+        ADAPTIVE
+    }
+
+    public static final double DEFAULT_PROBABILITY = 0.01;
+    public static final double DEFAULT_TRACES_PER_SECOND = 10;
+
+    public static Sampler createSampler(final Mode mode, final double probability, final double tracesPerSecond) {
+        switch (mode) {
+            case ALWAYS:
+                return Samplers.alwaysSample();
+            case NEVER:
+                return Samplers.neverSample();
+            case PROBABILITY:
+                return Samplers.probabilitySampler(probability);
+            case RATE_LIMITED:
+                return new RateLimitingSampler(tracesPerSecond);
+            case ADAPTIVE:
+                return new AdaptiveSampler(tracesPerSecond);
+            default:
+                throw new IllegalArgumentException(String.format("Unknown sampling mode: %s", mode));
+        }
+    }
+
+    /**
+     * Creates the sampler from the system properties: -Dtracing.sampler=always|never|probability|rateLimited|adaptive
+     * (default: always), -Dtracing.samplingProbability=... and -Dtracing.tracesPerSecond=...
+     */
+    public static Sampler fromSystemProperties() {
+        final var mode = Mode.valueOf(System.getProperty("tracing.sampler", Mode.ALWAYS.name())
+                .replaceAll("([a-z])([A-Z])", "$1_$2")
+                .toUpperCase(Locale.ROOT));
+        final var probability = Double.parseDouble(System.getProperty("tracing.samplingProbability",
+                String.valueOf(DEFAULT_PROBABILITY)));
+        final var tracesPerSecond = Double.parseDouble(System.getProperty("tracing.tracesPerSecond",
+                String.valueOf(DEFAULT_TRACES_PER_SECOND)));
+        return createSampler(mode, probability, tracesPerSecond);
+    }
+
+    /**
+     * Makes the sampler the one that decides about new traces in this JVM
+     */
+    public static void install(final Sampler sampler) {
+        final var traceConfig = Tracing.getTraceConfig();
+        traceConfig.updateActiveTraceParams(traceConfig.getActiveTraceParams().toBuilder()
+                .setSampler(sampler)
+                .build());
+    }
+
+    public static Sampler installFromSystemProperties() {
+        final var sampler = fromSystemProperties();
+        install(sampler);
+        return sampler;
+    }
+}
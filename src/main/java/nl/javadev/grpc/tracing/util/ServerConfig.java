@@ -0,0 +1,88 @@
+package nl.javadev.grpc.tracing.util;
+
+import lombok.Builder;
+import lombok.Value;
+
+/**
+ * Options of the server of a service: the address it listens on, the Netty event loops and the executor
+ * that handles the calls, and how long it takes to stop
+ */
+@Value
+@Builder
+public class ServerConfig {
+
+    /**
+     * The address to listen on, empty for all addresses
+     */
+    @Builder.Default
+    private String host = "";
+
+    /**
+     * The number of event loop threads that accept the connections
+     */
+    @Builder.Default
+    private int bossThreads = 1;
+
+    /**
+     * The number of event loop threads that read and write the connections (0 for the Netty default: twice the number of cores)
+     */
+    @Builder.Default
+    private int workerThreads = 0;
+
+    /**
+     * The number of threads that handle the calls (0 for the gRPC default: an unbounded, cached thread pool).
+     * Ignored when the calls are handled on virtual threads, see {@link ExecutionMode}
+     */
+    @Builder.Default
+    private int executorThreads = 0;
+
+    /**
+     * Whether the calls are handled on the event loop threads themselves, which saves a thread hop per message.
+     * Only for services that never block
+     */
+    @Builder.Default
+    private boolean directExecutor = false;
+
+    /**
+     * How often a client may send keepalive pings, see {@link Channels#permitKeepAlive}
+     */
+    @Builder.Default
+    private long permitKeepAliveTimeMillis = ChannelConfig.defaults().getKeepAliveTimeMillis();
+
+    /**
+     * How long the server is reported as not ready before it stops accepting calls,
+     * so the load balancers have stopped sending it calls by then
+     */
+    @Builder.Default
+    private long drainDelayMillis = 0;
+
+    /**
+     * How long the calls that are still running are awaited when the server stops, before they are cancelled
+     */
+    @Builder.Default
+    private long drainTimeoutMillis = 10_000;
+
+    public static ServerConfig defaults() {
+        return ServerConfig.builder().build();
+    }
+
+    /**
+     * Reads the options of the server of a service from: -D[serviceName].host=..., -D[serviceName].bossThreads=...,
+     * -D[serviceName].workerThreads=..., -D[serviceName].executorThreads=..., -D[serviceName].directExecutor=...,
+     * -D[serviceName].permitKeepAliveTimeMillis=..., -D[serviceName].drainDelayMillis=... and -D[serviceName].drainTimeoutMillis=...
+     */
+    public static ServerConfig fromSystemProperties(final String serviceName) {
+        final var defaults = defaults();
+        return ServerConfig.builder()
+                .host(System.getProperty(serviceName + ".host", defaults.getHost()))
+                .bossThreads(Integer.getInteger(serviceName + ".bossThreads", defaults.getBossThreads()))
+                .workerThreads(Integer.getInteger(serviceName + ".workerThreads", defaults.getWorkerThreads()))
+                .executorThreads(Integer.getInteger(serviceName + ".executorThreads", defaults.getExecutorThreads()))
+                .directExecutor(Boolean.parseBoolean(System.getProperty(serviceName + ".directExecutor",
+                        String.valueOf(defaults.isDirectExecutor()))))
+                .permitKeepAliveTimeMillis(Long.getLong(serviceName + ".permitKeepAliveTimeMillis", defaults.getPermitKeepAliveTimeMillis()))
+                .drainDelayMillis(Long.getLong(serviceName + ".drainDelayMillis", defaults.getDrainDelayMillis()))
+                .drainTimeoutMillis(Long.getLong(serviceName + ".drainTimeoutMillis", defaults.getDrainTimeoutMillis()))
+                .build();
+    }
+}
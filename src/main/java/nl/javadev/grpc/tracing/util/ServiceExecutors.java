@@ -0,0 +1,102 @@
+package nl.javadev.grpc.tracing.util;
+
+import io.grpc.Status;
+import io.grpc.stub.StreamObserver;
+import lombok.Value;
+
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+
+/**
+ * The executors used by a service for its asynchronous work.
+ * <p>
+ * Blocking work (calls to a database or a legacy system) is executed by the blocking executor,
+ * so it cannot starve the executor that runs the (short, non-blocking) continuations of the futures.
+ * <p>
+ * Both executors run their tasks within the context (and thus the current span) of the thread that submitted them,
+ * see {@link ContextPropagatingExecutorService}.
+ * <p>
+ * A request is only admitted while the queues of the bounded executors have room, see {@link #admit}.
+ */
+@Value
+public class ServiceExecutors {
+
+    public static final int DEFAULT_BLOCKING_THREADS = 64;
+    public static final int DEFAULT_BLOCKING_QUEUE_CAPACITY = 1_000;
+    public static final int DEFAULT_CPU_THREADS = Runtime.getRuntime().availableProcessors();
+    public static final int DEFAULT_CPU_QUEUE_CAPACITY = 10_000;
+
+    /**
+     * Executes blocking I/O
+     */
+    private ExecutorService blocking;
+
+    /**
+     * Executes the non-blocking continuations of futures
+     */
+    private ExecutorService cpu;
+
+    /**
+     * Creates bounded executors with default sizes, named after the service
+     */
+    public static ServiceExecutors create(final String serviceName) {
+        return propagatingContext(
+                new BoundedExecutor(String.format("%s-blocking", serviceName), DEFAULT_BLOCKING_THREADS, DEFAULT_BLOCKING_QUEUE_CAPACITY),
+                new BoundedExecutor(String.format("%s-cpu", serviceName), DEFAULT_CPU_THREADS, DEFAULT_CPU_QUEUE_CAPACITY));
+    }
+
+    /**
+     * Creates executors, named after the service, of which the sizes can be tuned with system properties:
+     * [serviceName].blockingThreads, [serviceName].blockingQueueCapacity, [serviceName].cpuThreads and [serviceName].cpuQueueCapacity
+     * <p>
+     * When the execution mode is {@link ExecutionMode#VIRTUAL}, then the blocking work is executed on virtual threads instead.
+     * The continuations are always executed by a bounded pool of platform threads.
+     */
+    public static ServiceExecutors fromSystemProperties(final String serviceName) {
+        final var blockingExecutorName = String.format("%s-blocking", serviceName);
+        final ExecutorService blockingExecutor = ExecutionMode.fromSystemProperties() == ExecutionMode.VIRTUAL
+                ? VirtualThreads.newVirtualThreadPerTaskExecutor(blockingExecutorName)
+                : new BoundedExecutor(blockingExecutorName,
+                        Integer.getInteger(serviceName + ".blockingThreads", DEFAULT_BLOCKING_THREADS),
+                        Integer.getInteger(serviceName + ".blockingQueueCapacity", DEFAULT_BLOCKING_QUEUE_CAPACITY));
+
+        return propagatingContext(
+                blockingExecutor,
+                new BoundedExecutor(String.format("%s-cpu", serviceName),
+                        Integer.getInteger(serviceName + ".cpuThreads", DEFAULT_CPU_THREADS),
+                        Integer.getInteger(serviceName + ".cpuQueueCapacity", DEFAULT_CPU_QUEUE_CAPACITY)));
+    }
+
+    /**
+     * Admits a new request, unless the queue of one of the bounded executors is full.
+     * Then the call is failed right away with <code>RESOURCE_EXHAUSTED</code>, so the caller can back off or try another instance,
+     * instead of adding even more work to the queue
+     *
+     * @return whether the request was admitted, if not the call has already been completed
+     */
+    public boolean admit(final StreamObserver<?> responseObserver) {
+        for (final ExecutorService executor : List.of(blocking, cpu)) {
+            final var delegate = unwrap(executor);
+            if (delegate instanceof BoundedExecutor && !((BoundedExecutor) delegate).tryAdmit()) {
+                responseObserver.onError(Status.RESOURCE_EXHAUSTED
+                        .withDescription(String.format("The executor %s cannot keep up", ((BoundedExecutor) delegate).getName()))
+                        .asRuntimeException());
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static ExecutorService unwrap(final ExecutorService executor) {
+        return executor instanceof ContextPropagatingExecutorService ? ((ContextPropagatingExecutorService) executor).getDelegate() : executor;
+    }
+
+    private static ServiceExecutors propagatingContext(final ExecutorService blocking, final ExecutorService cpu) {
+        return new ServiceExecutors(ContextPropagatingExecutorService.wrap(blocking), ContextPropagatingExecutorService.wrap(cpu));
+    }
+
+    public void shutdown() {
+        blocking.shutdown();
+        cpu.shutdown();
+    }
+}
@@ -0,0 +1,65 @@
+package nl.javadev.grpc.tracing.util;
+
+import io.grpc.Status;
+import io.grpc.stub.StreamObserver;
+import nl.javadev.grpc.tracing.util.HealthGrpc.HealthImplBase;
+import nl.javadev.grpc.tracing.util.HealthOuterClass.HealthCheckRequest;
+import nl.javadev.grpc.tracing.util.HealthOuterClass.HealthCheckResponse;
+import nl.javadev.grpc.tracing.util.HealthOuterClass.HealthCheckResponse.ServingStatus;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The health of the services of a server, served with the standard gRPC health checking protocol
+ * and at <code>/health/live</code> and <code>/health/ready</code> (see {@link PrometheusMetricsServer#serveHealth}).
+ * <p>
+ * A server is live as long as it runs. It is ready once it has started, and no longer when it drains:
+ * then all its services are reported as not serving, so the load balancers stop sending it calls
+ * while the calls that are still running complete.
+ */
+public class ServiceHealth extends HealthImplBase {
+
+    // The empty name is the server as a whole
+    private static final String SERVER = "";
+
+    private final Map<String, ServingStatus> statuses = new ConcurrentHashMap<>();
+
+    public ServiceHealth() {
+        statuses.put(SERVER, ServingStatus.NOT_SERVING);
+    }
+
+    /**
+     * Reports the server and the services as serving
+     *
+     * @param serviceNames the full names of the services, e.g. nl.javadev.grpc.tracing.example.ProductService
+     */
+    public void ready(final Iterable<String> serviceNames) {
+        serviceNames.forEach(serviceName -> statuses.put(serviceName, ServingStatus.SERVING));
+        statuses.put(SERVER, ServingStatus.SERVING);
+    }
+
+    /**
+     * Reports the server and all of its services as not serving, before the server stops accepting calls
+     */
+    public void drain() {
+        statuses.replaceAll((serviceName, status) -> ServingStatus.NOT_SERVING);
+    }
+
+    public boolean isReady() {
+        return statuses.get(SERVER) == ServingStatus.SERVING;
+    }
+
+    @Override
+    public void check(final HealthCheckRequest request, final StreamObserver<HealthCheckResponse> responseObserver) {
+        final var status = statuses.get(request.getService());
+        if (status == null) {
+            responseObserver.onError(Status.NOT_FOUND
+                    .withDescription(String.format("Unknown service: %s", request.getService()))
+                    .asRuntimeException());
+            return;
+        }
+        responseObserver.onNext(HealthCheckResponse.newBuilder().setStatus(status).build());
+        responseObserver.onCompleted();
+    }
+}
@@ -0,0 +1,145 @@
+package nl.javadev.grpc.tracing.util;
+
+import io.opencensus.exporter.trace.stackdriver.StackdriverExporterHandlerExposer;
+import io.opencensus.exporter.trace.stackdriver.StackdriverTraceConfiguration;
+import io.opencensus.trace.Tracing;
+import io.opencensus.trace.export.SpanData;
+import io.opencensus.trace.export.SpanExporter;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Locale;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Sets up where the sampled spans of this process are exported to:
+ * <pre>
+ *     spans -> (tail sampling) -> batching queue -> Stackdriver, a local file, a local counter or nowhere
+ * </pre>
+ */
+public class SpanExporters {
+
+    private static final Logger LOGGER = Logger.getLogger(SpanExporters.class.getName());
+
+    private static final String REGISTER_NAME = SpanExporters.class.getName();
+
+    public enum Type {
+        STACKDRIVER,
+        // Length-delimited protobuf messages in a local file, see FileSpanExporterHandler
+        FILE,
+        // Only counted, see LocalSpanExporterHandler
+        LOCAL,
+        NONE
+    }
+
+    public static final int DEFAULT_QUEUE_CAPACITY = 2_048;
+    public static final int DEFAULT_MAX_BATCH_SIZE = 512;
+    public static final long DEFAULT_MAX_BATCH_DELAY_MILLIS = 1_000;
+
+    /**
+     * Creates the handler that actually exports the spans
+     */
+    public static SpanExporter.Handler createHandler(final Type type, final String serviceName) throws IOException {
+        switch (type) {
+            case STACKDRIVER:
+                return StackdriverExporterHandlerExposer.createHandler(StackdriverTraceConfiguration.builder().build());
+            case FILE:
+                final var file = Path.of(System.getProperty("tracing.exporter.file", String.format("spans-%s.pb", serviceName)));
+                return new FileSpanExporterHandler(file, serviceName);
+            case LOCAL:
+                return new LocalSpanExporterHandler();
+            case NONE:
+                return new SpanExporter.Handler() {
+                    @Override
+                    public void export(final Collection<SpanData> spanDataList) {
+                    }
+                };
+            default:
+                throw new IllegalArgumentException(String.format("Unknown exporter type: %s", type));
+        }
+    }
+
+    /**
+     * Registers the exporter configured with the system properties: -Dtracing.exporter=stackdriver|file|local|none,
+     * -Dtracing.exporter.file=... (default: spans-[service name].pb), -Dtracing.exporter.queueCapacity=...,
+     * -Dtracing.exporter.maxBatchSize=..., -Dtracing.exporter.maxBatchDelayMillis=...
+     * and -Dtracing.tailSampling=true (see {@link TailSamplingConfig#fromSystemProperties()}).
+     *
+     * @return the registration, which must be closed when the process stops so the queued spans are exported
+     */
+    public static Registration registerFromSystemProperties(final String serviceName,
+                                                            final Type defaultType) throws IOException {
+        final var type = Type.valueOf(System.getProperty("tracing.exporter", defaultType.name()).toUpperCase(Locale.ROOT));
+        final var handler = createHandler(type, serviceName);
+
+        SpanExporter.Handler registeredHandler = new BatchingSpanExporterHandler(serviceName, handler,
+                Integer.getInteger("tracing.exporter.queueCapacity", DEFAULT_QUEUE_CAPACITY),
+                Integer.getInteger("tracing.exporter.maxBatchSize", DEFAULT_MAX_BATCH_SIZE),
+                Long.getLong("tracing.exporter.maxBatchDelayMillis", DEFAULT_MAX_BATCH_DELAY_MILLIS));
+        final var handlers = new ArrayList<>(List.of(registeredHandler, handler));
+
+        // With -Dtracing.tailSampling=true only the slow, failed and a baseline of the other traces are exported
+        if (Boolean.getBoolean("tracing.tailSampling")) {
+            registeredHandler = new TailSamplingSpanExporterHandler(registeredHandler, TailSamplingConfig.fromSystemProperties());
+            handlers.add(0, registeredHandler);
+        }
+
+        register(registeredHandler);
+        return new Registration(handlers);
+    }
+
+    public static void register(final SpanExporter.Handler handler) {
+        Tracing.getExportComponent().getSpanExporter().registerHandler(REGISTER_NAME, handler);
+    }
+
+    public static void unregister() {
+        Tracing.getExportComponent().getSpanExporter().unregisterHandler(REGISTER_NAME);
+    }
+
+    /**
+     * The registered chain of handlers, from the registered handler to the handler that actually exports the spans
+     */
+    public static class Registration implements AutoCloseable {
+
+        private final List<SpanExporter.Handler> handlers;
+
+        private Registration(final List<SpanExporter.Handler> handlers) {
+            this.handlers = List.copyOf(handlers);
+        }
+
+        /**
+         * @return the handler that actually exports the spans
+         */
+        public SpanExporter.Handler getHandler() {
+            return handlers.get(handlers.size() - 1);
+        }
+
+        /**
+         * Passes on the spans that OpenCensus still buffers, unregisters the handlers and closes them from the outside in,
+         * so every handler has passed on its spans (e.g. the batching queue is drained) before the next one is closed
+         */
+        @Override
+        public void close() {
+            Tracing.getExportComponent().shutdown();
+            unregister();
+            handlers.forEach(Registration::close);
+        }
+
+        private static void close(final SpanExporter.Handler handler) {
+            if (!(handler instanceof AutoCloseable)) {
+                return;
+            }
+            try {
+                ((AutoCloseable) handler).close();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (Exception e) {
+                LOGGER.log(Level.WARNING, String.format("Failed to close %s", handler), e);
+            }
+        }
+    }
+}
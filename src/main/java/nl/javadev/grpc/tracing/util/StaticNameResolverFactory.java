@@ -0,0 +1,104 @@
+package nl.javadev.grpc.tracing.util;
+
+import io.grpc.Attributes;
+import io.grpc.EquivalentAddressGroup;
+import io.grpc.NameResolver;
+import io.grpc.Status;
+
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Resolves a target to a fixed list of addresses (e.g. <code>localhost:10003,localhost:10013</code>),
+ * one for every instance of the downstream service, without a service registry or DNS records with multiple addresses.
+ * <p>
+ * The host names are looked up again when the channel asks for it, e.g. when a connection failed.
+ */
+public class StaticNameResolverFactory extends NameResolver.Factory {
+
+    public static final String SCHEME = "static";
+
+    private final List<String> addresses;
+
+    /**
+     * @param addresses host:port of every instance
+     */
+    public StaticNameResolverFactory(final List<String> addresses) {
+        if (addresses.isEmpty()) {
+            throw new IllegalArgumentException("At least one address is needed");
+        }
+        addresses.forEach(StaticNameResolverFactory::parse);
+        this.addresses = List.copyOf(addresses);
+    }
+
+    /**
+     * @return the target to pass to {@link io.grpc.ManagedChannelBuilder#forTarget(String)}
+     */
+    public String getTarget() {
+        return String.format("%s:///%s", SCHEME, String.join(",", addresses));
+    }
+
+    @Override
+    public NameResolver newNameResolver(final URI targetUri, final Attributes params) {
+        if (!SCHEME.equals(targetUri.getScheme())) {
+            return null;
+        }
+        return new NameResolver() {
+            private Listener listener;
+
+            @Override
+            public String getServiceAuthority() {
+                // The calls are made to the same service, whichever instance handles them
+                return addresses.get(0);
+            }
+
+            @Override
+            public synchronized void start(final Listener listener) {
+                this.listener = listener;
+                resolve();
+            }
+
+            @Override
+            public synchronized void refresh() {
+                if (listener != null) {
+                    resolve();
+                }
+            }
+
+            @Override
+            public void shutdown() {
+            }
+
+            private void resolve() {
+                final List<EquivalentAddressGroup> addressGroups = new ArrayList<>();
+                for (final var address : addresses) {
+                    final var socketAddress = parse(address);
+                    if (!socketAddress.isUnresolved()) {
+                        addressGroups.add(new EquivalentAddressGroup(socketAddress));
+                    }
+                }
+                if (addressGroups.isEmpty()) {
+                    listener.onError(Status.UNAVAILABLE.withDescription(String.format("Could not resolve any of: %s", addresses)));
+                } else {
+                    listener.onAddresses(addressGroups, Attributes.EMPTY);
+                }
+            }
+        };
+    }
+
+    @Override
+    public String getDefaultScheme() {
+        return SCHEME;
+    }
+
+    private static InetSocketAddress parse(final String address) {
+        final var separator = address.lastIndexOf(':');
+        if (separator <= 0) {
+            throw new IllegalArgumentException(String.format("Not a host:port address: %s", address));
+        }
+        // Resolves the host name right away, so the address is looked up again every time it is parsed
+        return new InetSocketAddress(address.substring(0, separator).trim(), Integer.parseInt(address.substring(separator + 1).trim()));
+    }
+}
@@ -0,0 +1,56 @@
+package nl.javadev.grpc.tracing.util;
+
+import lombok.Builder;
+import lombok.Value;
+
+/**
+ * Options of the {@link TailSamplingSpanExporterHandler}
+ */
+@Value
+@Builder
+public class TailSamplingConfig {
+
+    /**
+     * Traces with a span that took at least this long are kept
+     */
+    @Builder.Default
+    private long latencyThresholdMillis = 500;
+
+    /**
+     * The part of the other traces that is kept as well, so there is a baseline of normal traces (0 - 1).
+     * It is based on the trace id, so every service keeps the same traces.
+     */
+    @Builder.Default
+    private double baselineProbability = 0.01;
+
+    /**
+     * How long the spans of a trace are buffered when its root span does not complete
+     */
+    @Builder.Default
+    private long decisionTimeoutMillis = 10_000;
+
+    /**
+     * The maximum number of buffered spans, the oldest traces are dropped when more spans come in
+     */
+    @Builder.Default
+    private int maxBufferedSpans = 10_000;
+
+    public static TailSamplingConfig defaults() {
+        return TailSamplingConfig.builder().build();
+    }
+
+    /**
+     * Reads the options from: -Dtracing.tailSampling.latencyThresholdMillis=..., -Dtracing.tailSampling.baselineProbability=...,
+     * -Dtracing.tailSampling.decisionTimeoutMillis=... and -Dtracing.tailSampling.maxBufferedSpans=...
+     */
+    public static TailSamplingConfig fromSystemProperties() {
+        final var defaults = defaults();
+        return TailSamplingConfig.builder()
+                .latencyThresholdMillis(Long.getLong("tracing.tailSampling.latencyThresholdMillis", defaults.getLatencyThresholdMillis()))
+                .baselineProbability(Double.parseDouble(System.getProperty("tracing.tailSampling.baselineProbability",
+                        String.valueOf(defaults.getBaselineProbability()))))
+                .decisionTimeoutMillis(Long.getLong("tracing.tailSampling.decisionTimeoutMillis", defaults.getDecisionTimeoutMillis()))
+                .maxBufferedSpans(Integer.getInteger("tracing.tailSampling.maxBufferedSpans", defaults.getMaxBufferedSpans()))
+                .build();
+    }
+}
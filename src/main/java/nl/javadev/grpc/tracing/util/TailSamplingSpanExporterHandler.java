@@ -0,0 +1,342 @@
+package nl.javadev.grpc.tracing.util;
+
+import io.opencensus.metrics.DerivedLongGauge;
+import io.opencensus.metrics.LabelKey;
+import io.opencensus.metrics.LabelValue;
+import io.opencensus.metrics.Metrics;
+import io.opencensus.trace.SpanId;
+import io.opencensus.trace.TraceId;
+import io.opencensus.trace.export.SpanData;
+import io.opencensus.trace.export.SpanExporter;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Buffers the sampled spans per trace and only passes on the traces that are interesting to the delegate handler:
+ * traces with an error, traces with a slow span and a small baseline of the other traces.
+ * <p>
+ * The spans are decided on per local root span (a span without a parent or with a remote parent): as soon as a local root has ended,
+ * it is decided on together with the spans below it, up to the next local roots. Spans that end after that follow the decision
+ * of their parent. The spans of a trace that are left when the decision timeout expires are decided on all at once.
+ * So every service decides on its own spans, also when several services run in one process and share this handler
+ * (like in the {@link nl.javadev.grpc.tracing.load.LocalCluster}), and a service may keep only the part of a trace that was slow there.
+ * <p>
+ * This only sees the spans that have been sampled, so it should be combined with a (high) head sampling rate.
+ */
+public class TailSamplingSpanExporterHandler extends SpanExporter.Handler implements AutoCloseable {
+
+    // The number of decisions that are remembered for the spans that end after their trace, respectively parent, has been decided on
+    private static final int MAX_REMEMBERED_TRACE_DECISIONS = 10_000;
+    private static final int MAX_REMEMBERED_SPAN_DECISIONS = 100_000;
+
+    // A rough estimate of the memory used by a span and by every attribute, annotation, link or message event of it
+    private static final long ESTIMATED_SPAN_BYTES = 512;
+    private static final long ESTIMATED_EVENT_BYTES = 96;
+
+    private static final List<LabelKey> REASON_LABEL_KEYS = List.of(LabelKey.create("reason", "Why the trace was kept or dropped"));
+
+    private static final DerivedLongGauge BUFFERED_SPANS = Metrics.getMetricRegistry().addDerivedLongGauge(
+            "tail_sampling/buffered_spans", "Number of spans waiting for the decision on their trace", "1", List.of());
+    private static final DerivedLongGauge BUFFERED_BYTES = Metrics.getMetricRegistry().addDerivedLongGauge(
+            "tail_sampling/buffered_bytes", "Estimated memory used by the buffered spans", "By", List.of());
+    private static final DerivedLongGauge KEPT_TRACES = Metrics.getMetricRegistry().addDerivedLongGauge(
+            "tail_sampling/kept_traces", "Number of traces (per local root) that were passed on to the exporter", "1", REASON_LABEL_KEYS);
+    private static final DerivedLongGauge DROPPED_TRACES = Metrics.getMetricRegistry().addDerivedLongGauge(
+            "tail_sampling/dropped_traces", "Number of traces (per local root) that were dropped", "1", REASON_LABEL_KEYS);
+
+    private final SpanExporter.Handler delegate;
+    private final TailSamplingConfig config;
+    private final ScheduledExecutorService scheduler;
+
+    // All guarded by this. The buffered traces are ordered by the moment the first span of a trace came in, so the oldest trace comes first
+    private final Map<TraceId, BufferedTrace> bufferedTraces = new LinkedHashMap<>();
+    // The decisions on whole traces (because their decision timeout expired), and on the spans that were decided on with their local root
+    private final Map<TraceId, Boolean> traceDecisions = rememberingAtMost(MAX_REMEMBERED_TRACE_DECISIONS);
+    private final Map<SpanId, Boolean> spanDecisions = rememberingAtMost(MAX_REMEMBERED_SPAN_DECISIONS);
+
+    private final AtomicLong bufferedSpans = new AtomicLong();
+    private final AtomicLong bufferedBytes = new AtomicLong();
+    private final AtomicLong keptWithError = new AtomicLong();
+    private final AtomicLong keptSlow = new AtomicLong();
+    private final AtomicLong keptBaseline = new AtomicLong();
+    private final AtomicLong droppedNotSelected = new AtomicLong();
+    private final AtomicLong droppedBufferFull = new AtomicLong();
+    private final AtomicLong droppedLateSpans = new AtomicLong();
+
+    public TailSamplingSpanExporterHandler(final SpanExporter.Handler delegate, final TailSamplingConfig config) {
+        this.delegate = delegate;
+        this.config = config;
+
+        BUFFERED_SPANS.createTimeSeries(List.of(), bufferedSpans, AtomicLong::get);
+        BUFFERED_BYTES.createTimeSeries(List.of(), bufferedBytes, AtomicLong::get);
+        KEPT_TRACES.createTimeSeries(List.of(LabelValue.create("error")), keptWithError, AtomicLong::get);
+        KEPT_TRACES.createTimeSeries(List.of(LabelValue.create("slow")), keptSlow, AtomicLong::get);
+        KEPT_TRACES.createTimeSeries(List.of(LabelValue.create("baseline")), keptBaseline, AtomicLong::get);
+        DROPPED_TRACES.createTimeSeries(List.of(LabelValue.create("not_selected")), droppedNotSelected, AtomicLong::get);
+        DROPPED_TRACES.createTimeSeries(List.of(LabelValue.create("buffer_full")), droppedBufferFull, AtomicLong::get);
+        DROPPED_TRACES.createTimeSeries(List.of(LabelValue.create("late_span")), droppedLateSpans, AtomicLong::get);
+
+        // Decides on the traces of which the root span did not end in time
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            final var thread = new Thread(runnable, "tailSampling");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.scheduleWithFixedDelay(this::decideOnExpiredTraces, 1, 1, TimeUnit.SECONDS);
+    }
+
+    @Override
+    public void export(final Collection<SpanData> spanDataList) {
+        final var spansToExport = new ArrayList<SpanData>();
+
+        synchronized (this) {
+            spanDataList.forEach(spanData -> {
+                final var traceId = spanData.getContext().getTraceId();
+
+                // A span that ended after its whole trace was decided on
+                final var traceDecision = traceDecisions.get(traceId);
+                if (traceDecision != null) {
+                    follow(traceDecision, List.of(spanData), spansToExport);
+                    return;
+                }
+
+                final var trace = bufferedTraces.computeIfAbsent(traceId, id -> new BufferedTrace(System.nanoTime()));
+                bufferedBytes.addAndGet(trace.add(spanData));
+                bufferedSpans.incrementAndGet();
+
+                if (isLocalRoot(spanData)) {
+                    decide(traceId, removeBufferedSpans(traceId, spanData.getContext().getSpanId()), spansToExport);
+                    return;
+                }
+                // A span that ended after its parent was decided on, it follows that decision together with the spans below it
+                final var parentDecision = spanDecisions.get(spanData.getParentSpanId());
+                if (parentDecision != null) {
+                    follow(parentDecision, removeBufferedSpans(traceId, spanData.getContext().getSpanId()), spansToExport);
+                }
+            });
+
+            // Bound the memory use by dropping the oldest traces
+            while (bufferedSpans.get() > config.getMaxBufferedSpans() && !bufferedTraces.isEmpty()) {
+                final var oldestTraceId = bufferedTraces.keySet().iterator().next();
+                removeBufferedTrace(oldestTraceId);
+                traceDecisions.put(oldestTraceId, false);
+                droppedBufferFull.incrementAndGet();
+            }
+        }
+
+        exportToDelegate(spansToExport);
+    }
+
+    private void decideOnExpiredTraces() {
+        final var spansToExport = new ArrayList<SpanData>();
+        final var expiredBeforeNanos = System.nanoTime() - TimeUnit.MILLISECONDS.toNanos(config.getDecisionTimeoutMillis());
+
+        synchronized (this) {
+            final var expiredTraceIds = new ArrayList<TraceId>();
+            for (final var entry : bufferedTraces.entrySet()) {
+                if (entry.getValue().firstSpanNanos > expiredBeforeNanos) {
+                    // The traces are ordered by their first span, so the remaining traces have not expired either
+                    break;
+                }
+                expiredTraceIds.add(entry.getKey());
+            }
+            expiredTraceIds.forEach(traceId -> decideOnWholeTrace(traceId, spansToExport));
+        }
+
+        exportToDelegate(spansToExport);
+    }
+
+    /**
+     * Decides on all the spans of the trace that are still buffered, and on the spans of the trace that end later.
+     * Must be called while holding the lock
+     */
+    private void decideOnWholeTrace(final TraceId traceId, final List<SpanData> spansToExport) {
+        traceDecisions.put(traceId, decide(traceId, removeBufferedTrace(traceId).spans.values(), spansToExport));
+    }
+
+    /**
+     * Decides on the spans of a local root, the spans that end later below them follow this decision.
+     * Must be called while holding the lock
+     */
+    private boolean decide(final TraceId traceId, final Collection<SpanData> spans, final List<SpanData> spansToExport) {
+        final var hasError = spans.stream().anyMatch(spanData -> spanData.getStatus() != null && !spanData.getStatus().isOk());
+        final var maxDurationMillis = spans.stream()
+                .filter(spanData -> spanData.getEndTimestamp() != null)
+                .mapToLong(spanData -> spanData.getEndTimestamp().subtractTimestamp(spanData.getStartTimestamp()).toMillis())
+                .max()
+                .orElse(0);
+
+        final boolean keep;
+        if (hasError) {
+            keep = true;
+            keptWithError.incrementAndGet();
+        } else if (maxDurationMillis >= config.getLatencyThresholdMillis()) {
+            keep = true;
+            keptSlow.incrementAndGet();
+        } else if (isInBaseline(traceId)) {
+            keep = true;
+            keptBaseline.incrementAndGet();
+        } else {
+            keep = false;
+            droppedNotSelected.incrementAndGet();
+        }
+
+        spans.forEach(spanData -> spanDecisions.put(spanData.getContext().getSpanId(), keep));
+        if (keep) {
+            spansToExport.addAll(spans);
+        }
+        return keep;
+    }
+
+    /**
+     * Applies the decision that was made earlier to spans that ended afterwards.
+     * Must be called while holding the lock
+     */
+    private void follow(final boolean keep, final Collection<SpanData> spans, final List<SpanData> spansToExport) {
+        spans.forEach(spanData -> spanDecisions.put(spanData.getContext().getSpanId(), keep));
+        if (keep) {
+            spansToExport.addAll(spans);
+        } else {
+            droppedLateSpans.addAndGet(spans.size());
+        }
+    }
+
+    /**
+     * Removes the span and the (buffered) spans below it from the buffer, up to the next local roots
+     */
+    private List<SpanData> removeBufferedSpans(final TraceId traceId, final SpanId spanId) {
+        final var trace = bufferedTraces.get(traceId);
+        final var spans = trace.removeSpanAndDescendants(spanId);
+        final var bytes = spans.stream().mapToLong(TailSamplingSpanExporterHandler::estimateBytes).sum();
+        trace.estimatedBytes -= bytes;
+        bufferedSpans.addAndGet(-spans.size());
+        bufferedBytes.addAndGet(-bytes);
+        if (trace.spans.isEmpty()) {
+            bufferedTraces.remove(traceId);
+        }
+        return spans;
+    }
+
+    private BufferedTrace removeBufferedTrace(final TraceId traceId) {
+        final var trace = bufferedTraces.remove(traceId);
+        bufferedSpans.addAndGet(-trace.spans.size());
+        bufferedBytes.addAndGet(-trace.estimatedBytes);
+        return trace;
+    }
+
+    private void exportToDelegate(final List<SpanData> spansToExport) {
+        if (!spansToExport.isEmpty()) {
+            delegate.export(spansToExport);
+        }
+    }
+
+    private boolean isInBaseline(final TraceId traceId) {
+        // The same way as the probability sampler, so every service keeps the same baseline traces
+        return Math.abs(traceId.getLowerLong()) < (long) (config.getBaselineProbability() * Long.MAX_VALUE);
+    }
+
+    private static boolean isLocalRoot(final SpanData spanData) {
+        return spanData.getParentSpanId() == null
+                || !spanData.getParentSpanId().isValid()
+                || Boolean.TRUE.equals(spanData.getHasRemoteParent());
+    }
+
+    private static long estimateBytes(final SpanData spanData) {
+        final var nrOfEvents = spanData.getAttributes().getAttributeMap().size()
+                + spanData.getAnnotations().getEvents().size()
+                + spanData.getMessageEvents().getEvents().size()
+                + spanData.getLinks().getLinks().size();
+        return ESTIMATED_SPAN_BYTES + nrOfEvents * ESTIMATED_EVENT_BYTES;
+    }
+
+    public long getBufferedSpans() {
+        return bufferedSpans.get();
+    }
+
+    public long getKeptTraces() {
+        return keptWithError.get() + keptSlow.get() + keptBaseline.get();
+    }
+
+    public long getDroppedTraces() {
+        return droppedNotSelected.get() + droppedBufferFull.get();
+    }
+
+    /**
+     * Stops the timeout checks and passes on the buffered traces that should be kept
+     */
+    @Override
+    public void close() {
+        scheduler.shutdownNow();
+        final var spansToExport = new ArrayList<SpanData>();
+        synchronized (this) {
+            new ArrayList<>(bufferedTraces.keySet()).forEach(traceId -> decideOnWholeTrace(traceId, spansToExport));
+        }
+        exportToDelegate(spansToExport);
+    }
+
+    private static <K> Map<K, Boolean> rememberingAtMost(final int maxSize) {
+        return new LinkedHashMap<>() {
+            @Override
+            protected boolean removeEldestEntry(final Map.Entry<K, Boolean> eldest) {
+                return size() > maxSize;
+            }
+        };
+    }
+
+    /**
+     * The spans of a trace that have not been decided on yet
+     */
+    private static class BufferedTrace {
+        private final long firstSpanNanos;
+        private final Map<SpanId, SpanData> spans = new LinkedHashMap<>();
+        private long estimatedBytes;
+
+        private BufferedTrace(final long firstSpanNanos) {
+            this.firstSpanNanos = firstSpanNanos;
+        }
+
+        /**
+         * @return the estimated memory used by the span
+         */
+        private long add(final SpanData spanData) {
+            final var bytes = estimateBytes(spanData);
+            spans.put(spanData.getContext().getSpanId(), spanData);
+            estimatedBytes += bytes;
+            return bytes;
+        }
+
+        /**
+         * Removes the span and the spans below it. A local root below it (e.g. of another service in the same process)
+         * is decided on by itself, so it is left in the buffer together with the spans below it
+         */
+        private List<SpanData> removeSpanAndDescendants(final SpanId spanId) {
+            final var removed = new ArrayList<SpanData>();
+            final var root = spans.remove(spanId);
+            if (root == null) {
+                return removed;
+            }
+            removed.add(root);
+
+            final var childrenByParentId = new HashMap<SpanId, List<SpanData>>();
+            spans.values().stream()
+                    .filter(spanData -> !isLocalRoot(spanData))
+                    .forEach(spanData -> childrenByParentId.computeIfAbsent(spanData.getParentSpanId(), id -> new ArrayList<>()).add(spanData));
+            for (int i = 0; i < removed.size(); i++) {
+                childrenByParentId.getOrDefault(removed.get(i).getContext().getSpanId(), List.of()).forEach(child -> {
+                    spans.remove(child.getContext().getSpanId());
+                    removed.add(child);
+                });
+            }
+            return removed;
+        }
+    }
+}
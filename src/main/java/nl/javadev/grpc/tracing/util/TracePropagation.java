@@ -0,0 +1,187 @@
+package nl.javadev.grpc.tracing.util;
+
+import io.grpc.Context;
+import io.grpc.ManagedChannelBuilder;
+import io.grpc.Metadata;
+import io.grpc.ServerBuilder;
+import io.grpc.internal.AbstractManagedChannelImplBuilder;
+import io.grpc.internal.AbstractServerImplBuilder;
+import io.grpc.internal.CensusTracingExposer;
+import io.opencensus.trace.SpanContext;
+import io.opencensus.trace.SpanId;
+import io.opencensus.trace.TraceId;
+import io.opencensus.trace.TraceOptions;
+import io.opencensus.trace.Tracestate;
+import io.opencensus.trace.Tracing;
+import io.opencensus.trace.propagation.SpanContextParseException;
+
+import java.util.Locale;
+
+/**
+ * Propagates the span context between the services, in the binary format of gRPC (the <code>grpc-trace-bin</code> header)
+ * and/or as a W3C <code>traceparent</code> header, by means of {@link TracePropagationClientInterceptor}
+ * and {@link TracePropagationServerInterceptor}.
+ * <p>
+ * These interceptors take over from the tracing module that is built into gRPC,
+ * see {@link #install(ServerBuilder)} and {@link #install(ManagedChannelBuilder)}.
+ */
+public class TracePropagation {
+
+    public enum Format {
+        // The binary format that the gRPC tracing module uses, so calls from and to other gRPC services are continued
+        BINARY,
+        // The W3C trace context format, understood by most other tracing systems
+        TRACEPARENT,
+        // Both headers are sent, on an incoming call the binary header is preferred
+        BOTH;
+
+        boolean usesBinary() {
+            return this != TRACEPARENT;
+        }
+
+        boolean usesTraceparent() {
+            return this != BINARY;
+        }
+    }
+
+    // The headers are read and written as raw values,
+    // so the span context is encoded only once per call and parsed only once per call
+    public static final Metadata.Key<byte[]> BINARY_HEADER =
+            Metadata.Key.of("grpc-trace-bin", Metadata.BINARY_BYTE_MARSHALLER);
+    public static final Metadata.Key<String> TRACEPARENT_HEADER =
+            Metadata.Key.of("traceparent", Metadata.ASCII_STRING_MARSHALLER);
+
+    /**
+     * The span context of the caller, as parsed by the {@link TracePropagationServerInterceptor}
+     */
+    public static final Context.Key<SpanContext> REMOTE_PARENT_KEY = Context.key("remote-parent-span-context");
+
+    private static final String TRACEPARENT_VERSION = "00";
+    private static final int TRACEPARENT_LENGTH = 55;
+    private static final Tracestate EMPTY_TRACESTATE = Tracestate.builder().build();
+
+    /**
+     * Reads the format from the system property: -Dtracing.propagation=binary|traceparent|both (default: both)
+     */
+    public static Format fromSystemProperties() {
+        return Format.valueOf(System.getProperty("tracing.propagation", Format.BOTH.name()).toUpperCase(Locale.ROOT));
+    }
+
+    /**
+     * Propagates the span context of the calls that the server receives, instead of the tracing module of gRPC
+     */
+    public static <T extends ServerBuilder<T>> T install(final ServerBuilder<T> serverBuilder, final Format format) {
+        // The Netty as well as the in-process builders, otherwise gRPC starts a second span for every call
+        if (serverBuilder instanceof AbstractServerImplBuilder) {
+            CensusTracingExposer.disableTracing((AbstractServerImplBuilder<?>) serverBuilder);
+        }
+        return serverBuilder.intercept(new TracePropagationServerInterceptor(format));
+    }
+
+    public static <T extends ServerBuilder<T>> T install(final ServerBuilder<T> serverBuilder) {
+        return install(serverBuilder, fromSystemProperties());
+    }
+
+    /**
+     * Propagates the span context of the calls that are made over the channel, instead of the tracing module of gRPC
+     */
+    public static <T extends ManagedChannelBuilder<T>> T install(final ManagedChannelBuilder<T> channelBuilder, final Format format) {
+        // The Netty as well as the in-process builders, otherwise gRPC starts a second span for every call
+        // and overwrites the grpc-trace-bin header with the span context of that span
+        if (channelBuilder instanceof AbstractManagedChannelImplBuilder) {
+            CensusTracingExposer.disableTracing((AbstractManagedChannelImplBuilder<?>) channelBuilder);
+        }
+        return channelBuilder.intercept(new TracePropagationClientInterceptor(format));
+    }
+
+    public static <T extends ManagedChannelBuilder<T>> T install(final ManagedChannelBuilder<T> channelBuilder) {
+        return install(channelBuilder, fromSystemProperties());
+    }
+
+    /**
+     * Adds the span context to the headers, in the given format. Nothing is added for an invalid (blank) span context.
+     */
+    public static void inject(final SpanContext spanContext, final Metadata headers, final Format format) {
+        if (!spanContext.isValid()) {
+            return;
+        }
+        if (format.usesBinary()) {
+            headers.discardAll(BINARY_HEADER);
+            headers.put(BINARY_HEADER, Tracing.getPropagationComponent().getBinaryFormat().toByteArray(spanContext));
+        }
+        if (format.usesTraceparent()) {
+            headers.discardAll(TRACEPARENT_HEADER);
+            headers.put(TRACEPARENT_HEADER, toTraceparent(spanContext));
+        }
+    }
+
+    /**
+     * Reads the span context from the headers, or returns null when the headers contain no (valid) span context
+     */
+    public static SpanContext extract(final Metadata headers, final Format format) {
+        if (format.usesBinary()) {
+            final var binary = headers.get(BINARY_HEADER);
+            if (binary != null) {
+                try {
+                    final var spanContext = Tracing.getPropagationComponent().getBinaryFormat().fromByteArray(binary);
+                    if (spanContext.isValid()) {
+                        return spanContext;
+                    }
+                } catch (SpanContextParseException e) {
+                    // Try the traceparent header instead
+                }
+            }
+        }
+        if (format.usesTraceparent()) {
+            final var traceparent = headers.get(TRACEPARENT_HEADER);
+            if (traceparent != null) {
+                return fromTraceparent(traceparent);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return the span context of the caller of the current call, or null when the caller did not send one
+     */
+    public static SpanContext getRemoteParent() {
+        return REMOTE_PARENT_KEY.get();
+    }
+
+    /**
+     * Formats the span context as a W3C traceparent: <code>00-{trace id}-{span id}-{flags}</code>
+     */
+    public static String toTraceparent(final SpanContext spanContext) {
+        return new StringBuilder(TRACEPARENT_LENGTH)
+                .append(TRACEPARENT_VERSION)
+                .append('-').append(spanContext.getTraceId().toLowerBase16())
+                .append('-').append(spanContext.getSpanId().toLowerBase16())
+                .append('-').append(spanContext.getTraceOptions().isSampled() ? "01" : "00")
+                .toString();
+    }
+
+    /**
+     * Parses a W3C traceparent, or returns null when it is not valid
+     */
+    public static SpanContext fromTraceparent(final String traceparent) {
+        // Later versions may append fields, but always start in the same way
+        if (traceparent.length() < TRACEPARENT_LENGTH
+                || (traceparent.length() > TRACEPARENT_LENGTH && traceparent.charAt(TRACEPARENT_LENGTH) != '-')
+                || traceparent.charAt(2) != '-' || traceparent.charAt(35) != '-' || traceparent.charAt(52) != '-'
+                || traceparent.startsWith("ff")) {
+            return null;
+        }
+        try {
+            final var traceId = TraceId.fromLowerBase16(traceparent.subSequence(3, 35));
+            final var spanId = SpanId.fromLowerBase16(traceparent.subSequence(36, 52));
+            final var flags = Integer.parseInt(traceparent, 53, 55, 16);
+            if (!traceId.isValid() || !spanId.isValid()) {
+                return null;
+            }
+            return SpanContext.create(traceId, spanId, TraceOptions.fromByte((byte) (flags & 1)), EMPTY_TRACESTATE);
+        } catch (IllegalArgumentException e) {
+            // Not hexadecimal
+            return null;
+        }
+    }
+}
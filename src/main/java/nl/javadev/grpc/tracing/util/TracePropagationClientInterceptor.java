@@ -0,0 +1,73 @@
+package nl.javadev.grpc.tracing.util;
+
+import io.grpc.CallOptions;
+import io.grpc.Channel;
+import io.grpc.ClientCall;
+import io.grpc.ClientInterceptor;
+import io.grpc.ForwardingClientCall.SimpleForwardingClientCall;
+import io.grpc.ForwardingClientCallListener.SimpleForwardingClientCallListener;
+import io.grpc.Metadata;
+import io.grpc.MethodDescriptor;
+import io.grpc.Status;
+import io.opencensus.trace.EndSpanOptions;
+import io.opencensus.trace.Span;
+import io.opencensus.trace.Tracing;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Starts a client span for every call, as a child of the current span,
+ * and sends its span context along with the call (see {@link TracePropagation}).
+ */
+public class TracePropagationClientInterceptor implements ClientInterceptor {
+
+    private final TracePropagation.Format format;
+
+    public TracePropagationClientInterceptor(final TracePropagation.Format format) {
+        this.format = format;
+    }
+
+    @Override
+    public <ReqT, RespT> ClientCall<ReqT, RespT> interceptCall(final MethodDescriptor<ReqT, RespT> method,
+                                                               final CallOptions callOptions,
+                                                               final Channel next) {
+        // Named in the same way as the tracing module of gRPC does
+        final var span = Tracing.getTracer()
+                .spanBuilder(String.format("Sent.%s", method.getFullMethodName().replace('/', '.')))
+                .setRecordEvents(true)
+                .startSpan();
+        final var ended = new AtomicBoolean();
+
+        return new SimpleForwardingClientCall<>(next.newCall(method, callOptions)) {
+            @Override
+            public void start(final Listener<RespT> responseListener, final Metadata headers) {
+                TracePropagation.inject(span.getContext(), headers, format);
+                super.start(new SimpleForwardingClientCallListener<>(responseListener) {
+                    @Override
+                    public void onClose(final Status status, final Metadata trailers) {
+                        endSpan(span, status, ended);
+                        super.onClose(status, trailers);
+                    }
+                }, headers);
+            }
+
+            @Override
+            public void cancel(final String message, final Throwable cause) {
+                // The listener is closed as well, but not when the call was never started
+                endSpan(span, Status.CANCELLED, ended);
+                super.cancel(message, cause);
+            }
+        };
+    }
+
+    static void endSpan(final Span span, final Status status, final AtomicBoolean ended) {
+        if (ended.compareAndSet(false, true)) {
+            span.end(EndSpanOptions.builder().setStatus(toSpanStatus(status)).build());
+        }
+    }
+
+    static io.opencensus.trace.Status toSpanStatus(final Status status) {
+        final var spanStatus = io.opencensus.trace.Status.CanonicalCode.valueOf(status.getCode().name()).toStatus();
+        return status.getDescription() == null ? spanStatus : spanStatus.withDescription(status.getDescription());
+    }
+}
@@ -0,0 +1,73 @@
+package nl.javadev.grpc.tracing.util;
+
+import io.grpc.Context;
+import io.grpc.Contexts;
+import io.grpc.ForwardingServerCall.SimpleForwardingServerCall;
+import io.grpc.ForwardingServerCallListener.SimpleForwardingServerCallListener;
+import io.grpc.Metadata;
+import io.grpc.ServerCall;
+import io.grpc.ServerCallHandler;
+import io.grpc.ServerInterceptor;
+import io.grpc.Status;
+import io.opencensus.trace.BlankSpan;
+import io.opencensus.trace.Tracing;
+import io.opencensus.trace.unsafe.ContextUtils;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Continues the trace of the caller: starts a server span for every call, with the span context
+ * that the caller sent along (see {@link TracePropagation}) as its parent, and makes it the current span of the call.
+ * <p>
+ * The span context of the caller is parsed once, and kept in the context of the call ({@link TracePropagation#getRemoteParent()}).
+ */
+public class TracePropagationServerInterceptor implements ServerInterceptor {
+
+    private final TracePropagation.Format format;
+
+    public TracePropagationServerInterceptor(final TracePropagation.Format format) {
+        this.format = format;
+    }
+
+    @Override
+    public <ReqT, RespT> ServerCall.Listener<ReqT> interceptCall(final ServerCall<ReqT, RespT> call,
+                                                                 final Metadata headers,
+                                                                 final ServerCallHandler<ReqT, RespT> next) {
+        final var remoteParent = TracePropagation.extract(headers, format);
+        var context = Context.current();
+        if (remoteParent != null) {
+            context = context.withValue(TracePropagation.REMOTE_PARENT_KEY, remoteParent);
+        }
+
+        // The in-process transport of this gRPC version cannot do without the tracing module of gRPC,
+        // which then already started the span of this call
+        if (Tracing.getTracer().getCurrentSpan() != BlankSpan.INSTANCE) {
+            return Contexts.interceptCall(context, call, headers, next);
+        }
+
+        // Named in the same way as the tracing module of gRPC does
+        final var span = Tracing.getTracer()
+                .spanBuilderWithRemoteParent(String.format("Recv.%s", call.getMethodDescriptor().getFullMethodName().replace('/', '.')),
+                        remoteParent)
+                .setRecordEvents(true)
+                .startSpan();
+        final var ended = new AtomicBoolean();
+
+        final var listener = Contexts.interceptCall(context.withValue(ContextUtils.CONTEXT_SPAN_KEY, span),
+                new SimpleForwardingServerCall<>(call) {
+                    @Override
+                    public void close(final Status status, final Metadata trailers) {
+                        TracePropagationClientInterceptor.endSpan(span, status, ended);
+                        super.close(status, trailers);
+                    }
+                }, headers, next);
+
+        return new SimpleForwardingServerCallListener<>(listener) {
+            @Override
+            public void onCancel() {
+                TracePropagationClientInterceptor.endSpan(span, Status.CANCELLED, ended);
+                super.onCancel();
+            }
+        };
+    }
+}
@@ -1,5 +1,6 @@
 package nl.javadev.grpc.tracing.util;
 
+import io.opencensus.common.Scope;
 import io.opencensus.trace.Span;
 import io.opencensus.trace.Tracing;
 import io.opencensus.trace.samplers.Samplers;
@@ -7,6 +8,7 @@ import io.opencensus.trace.samplers.Samplers;
 import java.util.concurrent.Callable;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
 
 public class TracingUtil {
 
@@ -35,11 +37,13 @@ public class TracingUtil {
 
     /**
      * Creates a new child span around the provided callable
-     * and executes the callable asynchronously
+     * and executes the callable asynchronously by the given executor.
+     * Pass an executor that is meant for blocking work when the callable blocks.
      */
     public static <V> CompletableFuture<V> executeAsyncInNewChildSpan(final Span parentSpan,
                                                                       final String nameForTheChildSpan,
-                                                                      final Callable<V> callable) {
+                                                                      final Callable<V> callable,
+                                                                      final Executor executor) {
 
         return CompletableFuture.supplyAsync(() -> {
             try {
@@ -47,22 +51,41 @@ public class TracingUtil {
             } catch (Exception e) {
                 throw new CompletionException(e);
             }
-        });
+        }, executor);
     }
 
-    public static Span startNewParentSamplingSpan(final String spanName, final boolean makeItTheActiveSpan) {
-        final var tracer = Tracing.getTracer();
+    /**
+     * Starts a new trace, whether it is sampled is decided by the installed sampler (see {@link Sampling})
+     */
+    public static Span startNewParentSamplingSpan(final String spanName) {
+        return Tracing.getTracer()
+                .spanBuilderWithExplicitParent(spanName, null)
+                .startSpan();
+    }
 
-        final var span = tracer.spanBuilderWithExplicitParent(spanName, null)
+    /**
+     * Starts a new trace that is always sampled, regardless of the installed sampler (e.g. to capture a trace for debugging)
+     */
+    public static Span startNewForcedSamplingSpan(final String spanName) {
+        return Tracing.getTracer()
+                .spanBuilderWithExplicitParent(spanName, null)
                 .setSampler(Samplers.alwaysSample())
                 .setRecordEvents(true)
                 .startSpan();
+    }
 
-        if (makeItTheActiveSpan) {
-            tracer.withSpan(span);
-        }
-
-        return span;
+    /**
+     * Starts a new trace and makes it the active span on the current thread.
+     * Closing the returned scope ends the span and restores the span that was active before,
+     * so nothing is left behind on the thread.
+     */
+    public static Scope startScopedParentSamplingSpan(final String spanName) {
+        final var span = startNewParentSamplingSpan(spanName);
+        final var scope = Tracing.getTracer().withSpan(span);
+        return () -> {
+            scope.close();
+            span.end();
+        };
     }
 
     public static Span createNewChildSpan(final String spanName, final Span parentSpan) {
@@ -0,0 +1,58 @@
+package nl.javadev.grpc.tracing.util;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Creates executors that run every task on a new virtual thread.
+ * <p>
+ * This code is compiled for Java 11, so the virtual thread API (Java 21+) is looked up reflectively.
+ * <p>
+ * The span does not get lost when a virtual thread is moved to a different carrier thread:
+ * the gRPC context (which holds the span) is bound to the virtual thread itself and not to its carrier.
+ */
+public class VirtualThreads {
+
+    private static final boolean SUPPORTED = canCreateVirtualThreads();
+
+    public static boolean isSupported() {
+        return SUPPORTED;
+    }
+
+    /**
+     * Creates an executor that starts a new virtual thread for every task.
+     * The threads are named [name]-[sequence number].
+     */
+    public static ExecutorService newVirtualThreadPerTaskExecutor(final String name) {
+        if (!SUPPORTED) {
+            throw new UnsupportedOperationException(String.format("Virtual threads are not supported by Java %s",
+                    System.getProperty("java.version")));
+        }
+        try {
+            final var threadFactory = createVirtualThreadFactory(name);
+            return (ExecutorService) Executors.class
+                    .getMethod("newThreadPerTaskExecutor", ThreadFactory.class)
+                    .invoke(null, threadFactory);
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("Could not create an executor for virtual threads", e);
+        }
+    }
+
+    private static ThreadFactory createVirtualThreadFactory(final String name) throws ReflectiveOperationException {
+        final var builderClass = Class.forName("java.lang.Thread$Builder");
+        final var builder = Thread.class.getMethod("ofVirtual").invoke(null);
+        final var namedBuilder = builderClass.getMethod("name", String.class, long.class)
+                .invoke(builder, String.format("%s-", name), 1L);
+        return (ThreadFactory) builderClass.getMethod("factory").invoke(namedBuilder);
+    }
+
+    private static boolean canCreateVirtualThreads() {
+        try {
+            createVirtualThreadFactory("probe");
+            return true;
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            return false;
+        }
+    }
+}
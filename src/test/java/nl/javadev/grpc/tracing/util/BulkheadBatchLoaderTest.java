@@ -0,0 +1,94 @@
+package nl.javadev.grpc.tracing.util;
+
+import com.google.common.util.concurrent.MoreExecutors;
+import io.grpc.Status;
+import io.grpc.StatusRuntimeException;
+import io.opencensus.trace.BlankSpan;
+import io.vavr.collection.HashSet;
+import io.vavr.collection.Map;
+import io.vavr.concurrent.Future;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class BulkheadBatchLoaderTest {
+
+    // Every loader registers its gauges, which requires a name of its own
+    private static final AtomicInteger LOADERS = new AtomicInteger();
+
+    private static final int MAX_CONCURRENT_LOOKUPS = 3;
+
+    // The steps of the futures run right away, so a permit is released as soon as a lookup completes
+    private final ExecutorService executor = MoreExecutors.newDirectExecutorService();
+
+    private StubBatchLoader downstream;
+    private BulkheadBatchLoader<String, String> bulkhead;
+
+    @Before
+    public void setUp() {
+        downstream = new StubBatchLoader(executor);
+        bulkhead = new BulkheadBatchLoader<>(String.format("bulkhead-%s", LOADERS.incrementAndGet()), downstream,
+                MAX_CONCURRENT_LOOKUPS, executor);
+    }
+
+    @Test
+    public void rejectsLookupsWithoutCallingTheDownstreamServiceWhenFull() {
+        for (int i = 0; i < MAX_CONCURRENT_LOOKUPS; i++) {
+            assertFalse(lookup().isCompleted());
+        }
+        assertEquals(MAX_CONCURRENT_LOOKUPS, bulkhead.getLookupsInFlight());
+
+        final var rejected = lookup();
+
+        assertTrue(rejected.isCompleted());
+        assertEquals(Status.Code.RESOURCE_EXHAUSTED, ((StatusRuntimeException) rejected.getCause().get()).getStatus().getCode());
+        assertEquals(MAX_CONCURRENT_LOOKUPS, downstream.getLookupCount());
+        assertEquals(1, bulkhead.getRejectedLookupCount());
+    }
+
+    @Test
+    public void letsLookupsThroughAgainOnceLookupsInFlightComplete() {
+        for (int i = 0; i < MAX_CONCURRENT_LOOKUPS; i++) {
+            lookup();
+        }
+
+        // Whether the lookup succeeded, failed or was cancelled, its permit is released
+        downstream.succeed(0);
+        downstream.fail(1);
+        assertEquals(1, bulkhead.getLookupsInFlight());
+        final var cancelled = lookup();
+        cancelled.cancel();
+        assertEquals(1, bulkhead.getLookupsInFlight());
+
+        for (int i = 0; i < MAX_CONCURRENT_LOOKUPS - 1; i++) {
+            assertFalse(lookup().isCompleted());
+        }
+        assertEquals(MAX_CONCURRENT_LOOKUPS + MAX_CONCURRENT_LOOKUPS, downstream.getLookupCount());
+        assertEquals(0, bulkhead.getRejectedLookupCount());
+    }
+
+    @Test
+    public void releasesThePermitWhenTheDownstreamServiceThrows() {
+        final var throwing = new BulkheadBatchLoader<String, String>(String.format("bulkhead-%s", LOADERS.incrementAndGet()),
+                (keys, span) -> {
+                    throw new IllegalStateException("Injected failure");
+                }, 1, executor);
+
+        for (int i = 0; i < 3; i++) {
+            final var lookup = throwing.loadAll(HashSet.of("key"), BlankSpan.INSTANCE);
+            assertTrue(lookup.getCause().get() instanceof IllegalStateException);
+        }
+        assertEquals(0, throwing.getLookupsInFlight());
+        assertEquals(0, throwing.getRejectedLookupCount());
+    }
+
+    private Future<Map<String, String>> lookup() {
+        return bulkhead.loadAll(HashSet.of("key"), BlankSpan.INSTANCE);
+    }
+}
@@ -0,0 +1,169 @@
+package nl.javadev.grpc.tracing.util;
+
+import com.google.common.util.concurrent.MoreExecutors;
+import io.grpc.Status;
+import io.grpc.StatusRuntimeException;
+import io.opencensus.trace.BlankSpan;
+import io.vavr.collection.HashSet;
+import io.vavr.collection.Map;
+import io.vavr.concurrent.Future;
+import nl.javadev.grpc.tracing.util.CircuitBreakingBatchLoader.State;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class CircuitBreakingBatchLoaderTest {
+
+    // Every loader registers its gauges, which requires a name of its own
+    private static final AtomicInteger LOADERS = new AtomicInteger();
+
+    private static final int WINDOW_SIZE = 4;
+    private static final long SLOW_LOOKUP_MILLIS = 50;
+    private static final long OPEN_MILLIS = 100;
+    private static final int HALF_OPEN_LOOKUPS = 2;
+
+    // The steps of the futures run right away, so the breaker has recorded a lookup as soon as it completes
+    private final ExecutorService executor = MoreExecutors.newDirectExecutorService();
+
+    private StubBatchLoader downstream;
+    private CircuitBreakingBatchLoader<String, String> breaker;
+
+    @Before
+    public void setUp() {
+        downstream = new StubBatchLoader(executor);
+        breaker = new CircuitBreakingBatchLoader<>(String.format("breaker-%s", LOADERS.incrementAndGet()), downstream,
+                0.5, SLOW_LOOKUP_MILLIS, WINDOW_SIZE, OPEN_MILLIS, HALF_OPEN_LOOKUPS, executor);
+    }
+
+    @Test
+    public void opensOnceTheFailureRateOfAFullWindowReachesTheThreshold() {
+        trip();
+
+        assertEquals(State.OPEN, breaker.getState());
+    }
+
+    @Test
+    public void staysClosedWhileTheFailureRateIsBelowTheThreshold() {
+        for (int i = 0; i < WINDOW_SIZE * 3; i++) {
+            lookup();
+            if (i % WINDOW_SIZE == 0) {
+                downstream.fail(i);
+            } else {
+                downstream.succeed(i);
+            }
+        }
+
+        assertEquals(State.CLOSED, breaker.getState());
+    }
+
+    @Test
+    public void countsSlowLookupsAsFailed() throws InterruptedException {
+        for (int i = 0; i < WINDOW_SIZE; i++) {
+            lookup();
+            downstream.succeedAfter(i, i < WINDOW_SIZE / 2 ? SLOW_LOOKUP_MILLIS * 2 : 0);
+        }
+
+        assertEquals(State.OPEN, breaker.getState());
+    }
+
+    @Test
+    public void rejectsLookupsWithoutCallingTheDownstreamServiceWhileOpen() {
+        trip();
+
+        final var lookup = lookup();
+
+        assertEquals(Status.Code.UNAVAILABLE, statusOf(lookup));
+        assertEquals(WINDOW_SIZE, downstream.getLookupCount());
+        assertEquals(1, breaker.getRejectedLookupCount());
+    }
+
+    @Test
+    public void closesAgainWhenTheTrialLookupsSucceed() throws InterruptedException {
+        trip();
+        Thread.sleep(OPEN_MILLIS * 2);
+
+        // Only the trial lookups are let through
+        lookup();
+        assertEquals(State.HALF_OPEN, breaker.getState());
+        lookup();
+        assertEquals(Status.Code.UNAVAILABLE, statusOf(lookup()));
+        assertEquals(WINDOW_SIZE + HALF_OPEN_LOOKUPS, downstream.getLookupCount());
+
+        downstream.succeed(WINDOW_SIZE);
+        assertEquals(State.HALF_OPEN, breaker.getState());
+        downstream.succeed(WINDOW_SIZE + 1);
+        assertEquals(State.CLOSED, breaker.getState());
+
+        // Recovered, so the lookups reach the downstream service again
+        lookup();
+        assertEquals(WINDOW_SIZE + HALF_OPEN_LOOKUPS + 1, downstream.getLookupCount());
+    }
+
+    @Test
+    public void opensAgainWhenATrialLookupFails() throws InterruptedException {
+        trip();
+        Thread.sleep(OPEN_MILLIS * 2);
+
+        lookup();
+        downstream.fail(WINDOW_SIZE);
+
+        assertEquals(State.OPEN, breaker.getState());
+        assertEquals(Status.Code.UNAVAILABLE, statusOf(lookup()));
+        assertEquals(WINDOW_SIZE + 1, downstream.getLookupCount());
+    }
+
+    @Test
+    public void doesNotCountCancelledLookups() throws InterruptedException {
+        // E.g. the losing attempts of hedged lookups
+        for (int i = 0; i < WINDOW_SIZE * 2; i++) {
+            lookup().cancel();
+        }
+        assertEquals(State.CLOSED, breaker.getState());
+
+        trip(WINDOW_SIZE * 2);
+        Thread.sleep(OPEN_MILLIS * 2);
+
+        // A cancelled trial lookup makes room for another one
+        lookup().cancel();
+        lookup();
+        lookup();
+        assertEquals(WINDOW_SIZE * 3 + HALF_OPEN_LOOKUPS + 1, downstream.getLookupCount());
+        assertEquals(State.HALF_OPEN, breaker.getState());
+    }
+
+    private void trip() {
+        trip(0);
+    }
+
+    /**
+     * Fills the window with lookups of which half fail
+     *
+     * @param firstLookup the number of lookups that were made before
+     */
+    private void trip(final int firstLookup) {
+        for (int i = firstLookup; i < firstLookup + WINDOW_SIZE; i++) {
+            lookup();
+            assertEquals(State.CLOSED, breaker.getState());
+            if (i % 2 == 0) {
+                downstream.succeed(i);
+            } else {
+                downstream.fail(i);
+            }
+        }
+    }
+
+    private Future<Map<String, String>> lookup() {
+        return breaker.loadAll(HashSet.of("key"), BlankSpan.INSTANCE);
+    }
+
+    private static Status.Code statusOf(final Future<?> lookup) {
+        assertTrue(lookup.isCompleted());
+        assertTrue(lookup.getCause().get() instanceof StatusRuntimeException);
+        return ((StatusRuntimeException) lookup.getCause().get()).getStatus().getCode();
+    }
+}
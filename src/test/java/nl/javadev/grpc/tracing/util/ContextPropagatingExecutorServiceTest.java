@@ -0,0 +1,125 @@
+package nl.javadev.grpc.tracing.util;
+
+import io.grpc.Context;
+import io.vavr.concurrent.Promise;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class ContextPropagatingExecutorServiceTest {
+
+    private static final Context.Key<Integer> CALL = Context.key("call");
+
+    private static final int POOL_THREADS = 4;
+    private static final int SUBMITTING_THREADS = 4;
+    private static final int TASKS = 20_000;
+
+    private ExecutorService pool;
+    private ExecutorService executor;
+
+    @Before
+    public void setUp() {
+        pool = Executors.newFixedThreadPool(POOL_THREADS);
+        executor = ContextPropagatingExecutorService.wrap(pool);
+    }
+
+    @After
+    public void tearDown() throws InterruptedException {
+        pool.shutdownNow();
+        pool.awaitTermination(10, TimeUnit.SECONDS);
+    }
+
+    @Test
+    public void everyTaskRunsInTheContextOfItsSubmitter() throws InterruptedException {
+        final var done = new CountDownLatch(TASKS);
+        final var wrongContexts = new AtomicInteger();
+
+        final var submitters = new ArrayList<Thread>();
+        for (int s = 0; s < SUBMITTING_THREADS; s++) {
+            final var first = s;
+            submitters.add(new Thread(() -> {
+                for (int call = first; call < TASKS; call += SUBMITTING_THREADS) {
+                    final var expectedCall = call;
+                    Context.current().withValue(CALL, call).run(() -> executor.execute(() -> {
+                        if (!Integer.valueOf(expectedCall).equals(CALL.get())) {
+                            wrongContexts.incrementAndGet();
+                        }
+                        done.countDown();
+                    }));
+                }
+            }));
+        }
+        submitters.forEach(Thread::start);
+
+        assertTrue("Not all tasks ran", done.await(30, TimeUnit.SECONDS));
+        assertEquals("Tasks that ran in the context of another call", 0, wrongContexts.get());
+        assertNoContextLeftOnPooledThreads();
+    }
+
+    @Test
+    public void theStepsOfASharedPromiseCompletedInTheRootContextDoNotRunInTheContextOfAnotherCall() throws InterruptedException {
+        final var done = new CountDownLatch(TASKS);
+        final var wrongContexts = new AtomicInteger();
+
+        final var promises = new ArrayList<Promise<Integer>>();
+        for (int call = 0; call < TASKS; call++) {
+            final Promise<Integer> promise = Promise.make(executor);
+            // The step is added by the waiting call
+            Context.current().withValue(CALL, call).run(() -> promise.future().onComplete(result -> {
+                if (CALL.get() != null) {
+                    wrongContexts.incrementAndGet();
+                }
+                done.countDown();
+            }));
+            promises.add(promise);
+        }
+        // The call that completes the shared promises, like a batch or cache load
+        Context.current().withValue(CALL, -1).run(() -> Context.ROOT.run(() -> promises.forEach(promise -> promise.success(1))));
+
+        assertTrue("Not all steps ran", done.await(30, TimeUnit.SECONDS));
+        assertEquals("Steps that ran in the context of the completing call", 0, wrongContexts.get());
+        assertNoContextLeftOnPooledThreads();
+    }
+
+    /**
+     * Runs enough tasks directly on the pool to reach every thread, and checks that none of them has a context attached
+     */
+    private void assertNoContextLeftOnPooledThreads() throws InterruptedException {
+        final var threads = Collections.synchronizedSet(new HashSet<Thread>());
+        final List<Integer> leftBehind = Collections.synchronizedList(new ArrayList<>());
+        final var barrier = new CountDownLatch(POOL_THREADS);
+        for (int i = 0; i < POOL_THREADS; i++) {
+            pool.execute(() -> {
+                // Keep every thread busy until all threads have taken a task, so each thread is checked
+                barrier.countDown();
+                try {
+                    barrier.await(10, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                threads.add(Thread.currentThread());
+                if (Context.current() != Context.ROOT) {
+                    leftBehind.add(CALL.get());
+                }
+            });
+        }
+
+        pool.shutdown();
+        assertTrue(pool.awaitTermination(10, TimeUnit.SECONDS));
+        assertEquals(POOL_THREADS, threads.size());
+        assertEquals("Contexts left behind on the pooled threads", List.of(), leftBehind);
+    }
+}
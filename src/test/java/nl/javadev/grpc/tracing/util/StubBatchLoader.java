@@ -0,0 +1,54 @@
+package nl.javadev.grpc.tracing.util;
+
+import io.grpc.Status;
+import io.opencensus.trace.Span;
+import io.vavr.collection.HashMap;
+import io.vavr.collection.Map;
+import io.vavr.collection.Set;
+import io.vavr.concurrent.Future;
+import io.vavr.concurrent.Promise;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+
+/**
+ * A stand-in for a downstream service: every lookup waits until the test lets it succeed, fail or answer slowly
+ */
+class StubBatchLoader implements BatchLoader<String, String> {
+
+    private final ExecutorService executor;
+    private final List<Promise<Map<String, String>>> lookups = new ArrayList<>();
+
+    StubBatchLoader(final ExecutorService executor) {
+        this.executor = executor;
+    }
+
+    @Override
+    public synchronized Future<Map<String, String>> loadAll(final Set<String> keys, final Span span) {
+        final Promise<Map<String, String>> lookup = Promise.make(executor);
+        lookups.add(lookup);
+        return lookup.future();
+    }
+
+    synchronized int getLookupCount() {
+        return lookups.size();
+    }
+
+    void succeed(final int lookup) {
+        lookup(lookup).success(HashMap.of("key", "value"));
+    }
+
+    void succeedAfter(final int lookup, final long millis) throws InterruptedException {
+        Thread.sleep(millis);
+        succeed(lookup);
+    }
+
+    void fail(final int lookup) {
+        lookup(lookup).failure(Status.UNAVAILABLE.withDescription("Injected failure").asRuntimeException());
+    }
+
+    private synchronized Promise<Map<String, String>> lookup(final int lookup) {
+        return lookups.get(lookup);
+    }
+}